@@ -0,0 +1,135 @@
+package org.example.kv;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.raft.util.Json;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Стоимость KeyValueStateMachine.apply для PUT/GET/DELETE: десериализация команды,
+ * операция над картой и сериализация результата.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dorg.slf4j.simpleLogger.defaultLogLevel=warn")
+@State(Scope.Thread)
+public class KeyValueStateMachineBenchmark {
+    private static final int KEYS = 1024;
+
+    @Param({"16", "256"})
+    public int keySize;
+
+    @Param({"16", "1024", "16384"})
+    public int valueSize;
+
+    private KeyValueStateMachine machine;
+    private byte[][] puts;
+    private byte[][] gets;
+    private byte[][] deletes;
+    private byte[] missingGet;
+    private List<byte[]> putBatch;
+    private String[] keys;
+    private int cursor;
+
+    @Setup
+    public void setUp() throws Exception {
+        ObjectMapper mapper = Json.mapper();
+        machine = new KeyValueStateMachine();
+        puts = new byte[KEYS][];
+        gets = new byte[KEYS][];
+        deletes = new byte[KEYS][];
+        keys = new String[KEYS];
+        String value = fill('v', valueSize);
+        for (int i = 0; i < KEYS; i++) {
+            String key = key(i);
+            keys[i] = key;
+            puts[i] = mapper.writeValueAsBytes(new KeyValueCommand(KeyValueCommand.Type.PUT, key, value));
+            gets[i] = mapper.writeValueAsBytes(new KeyValueCommand(KeyValueCommand.Type.GET, key, null));
+            deletes[i] = mapper.writeValueAsBytes(new KeyValueCommand(KeyValueCommand.Type.DELETE, key, null));
+            machine.apply(puts[i]);
+        }
+        putBatch = Arrays.asList(puts);
+        missingGet = mapper.writeValueAsBytes(new KeyValueCommand(KeyValueCommand.Type.GET, fill('m', keySize), null));
+    }
+
+    @Benchmark
+    public byte[] put() {
+        return machine.apply(puts[next()]);
+    }
+
+    @Benchmark
+    public byte[] get() {
+        return machine.apply(gets[next()]);
+    }
+
+    // Быстрый путь /kv/get: StateMachineQuery и сборка ответа из закодированного значения
+    @Benchmark
+    public byte[] query() {
+        return KeyValueResult.encodeGet(machine.query(keys[next()]));
+    }
+
+    @Benchmark
+    public byte[] getMissing() {
+        return machine.apply(missingGet);
+    }
+
+    // Удаление существующего ключа; ключ сразу возвращается обратно, поэтому время включает PUT
+    @Benchmark
+    public byte[] deleteAndReinsert() {
+        int i = next();
+        byte[] result = machine.apply(deletes[i]);
+        machine.apply(puts[i]);
+        return result;
+    }
+
+    // Догон фолловера: KEYS записей одним applyBatch против того же пакета через apply по одной
+    @Benchmark
+    @OperationsPerInvocation(KEYS)
+    public List<byte[]> applyBatch() {
+        return machine.applyBatch(putBatch);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(KEYS)
+    public List<byte[]> applyOneByOne() {
+        List<byte[]> results = new ArrayList<>(KEYS);
+        for (byte[] put : putBatch) {
+            results.add(machine.apply(put));
+        }
+        return results;
+    }
+
+    private int next() {
+        int i = cursor;
+        cursor = (cursor + 1) & (KEYS - 1);
+        return i;
+    }
+
+    private String key(int i) {
+        String suffix = Integer.toString(i);
+        return fill('k', Math.max(0, keySize - suffix.length())) + suffix;
+    }
+
+    private static String fill(char c, int length) {
+        char[] chars = new char[length];
+        Arrays.fill(chars, c);
+        return new String(chars);
+    }
+}
@@ -0,0 +1,219 @@
+package org.example.raft;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.example.kv.KeyValueCommand;
+import org.example.kv.KeyValueStateMachine;
+import org.example.raft.cluster.ClusterConfig;
+import org.example.raft.cluster.PeerEndpoint;
+import org.example.raft.transport.LinkProfile;
+import org.example.raft.transport.LoopbackNetwork;
+import org.example.raft.util.Json;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Макробенчмарк кластера в одной JVM поверх LoopbackNetwork.
+ * Открытая нагрузка (фиксированная частота запросов) на лидера; латентность считается
+ * от запланированного момента отправки, поэтому отставание генератора не прячется.
+ *
+ * mvn -Pbench compile exec:exec -Dbench.main=org.example.raft.ClusterThroughputBenchmark \
+ *     -Dbench.args="--nodes 3,5,7 --rate 5000 --duration 10 --latency-us 200"
+ */
+public final class ClusterThroughputBenchmark {
+    private static final ObjectMapper MAPPER = Json.mapper();
+
+    private final int rate; // запросов в секунду
+    private final Duration warmup;
+    private final Duration duration;
+    private final double readRatio;
+    private final int keys;
+    private final int valueSize;
+    private final LinkProfile link;
+
+    private ClusterThroughputBenchmark(Map<String, String> params) {
+        this.rate = Integer.parseInt(params.getOrDefault("rate", "2000"));
+        this.warmup = Duration.ofSeconds(Long.parseLong(params.getOrDefault("warmup", "3")));
+        this.duration = Duration.ofSeconds(Long.parseLong(params.getOrDefault("duration", "10")));
+        this.readRatio = Double.parseDouble(params.getOrDefault("read-ratio", "0.5"));
+        this.keys = Integer.parseInt(params.getOrDefault("keys", "10000"));
+        this.valueSize = Integer.parseInt(params.getOrDefault("value-size", "128"));
+        long bandwidthMbps = Long.parseLong(params.getOrDefault("bandwidth-mbps", "0"));
+        this.link = new LinkProfile(
+                Duration.ofNanos(Long.parseLong(params.getOrDefault("latency-us", "100")) * 1000),
+                bandwidthMbps * 1_000_000 / 8,
+                Double.parseDouble(params.getOrDefault("loss", "0")));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> params = parseArgs(args);
+        ClusterThroughputBenchmark benchmark = new ClusterThroughputBenchmark(params);
+        List<Map<String, Object>> results = new ArrayList<>();
+        for (String size : params.getOrDefault("nodes", "3,5,7").split(",")) {
+            results.add(benchmark.run(Integer.parseInt(size.trim())));
+        }
+        String output = params.getOrDefault("json", "target/cluster-bench.json");
+        MAPPER.writerWithDefaultPrettyPrinter().writeValue(new File(output), results);
+        System.out.println("Results written to " + output);
+    }
+
+    private Map<String, Object> run(int size) throws Exception {
+        try (LoopbackNetwork network = new LoopbackNetwork(link, Duration.ofSeconds(2))) {
+            List<RaftNode> nodes = startCluster(network, size);
+            try {
+                RaftNode leader = awaitLeader(nodes, Duration.ofSeconds(10));
+                drive(nodes, leader, warmup, null, null, new AtomicLong());
+                Histogram writes = new ConcurrentHistogram(3);
+                Histogram reads = new ConcurrentHistogram(3);
+                AtomicLong rejected = new AtomicLong();
+                AtomicLong errors = drive(nodes, leader, duration, writes, reads, rejected);
+                return report(size, writes, reads, errors.get(), rejected.get());
+            } finally {
+                nodes.forEach(RaftNode::close);
+            }
+        }
+    }
+
+    private List<RaftNode> startCluster(LoopbackNetwork network, int size) {
+        List<PeerEndpoint> endpoints = new ArrayList<>(size);
+        for (int i = 1; i <= size; i++) {
+            endpoints.add(new PeerEndpoint("node" + i, "127.0.0.1", 9000 + i));
+        }
+        List<RaftNode> nodes = new ArrayList<>(size);
+        for (PeerEndpoint endpoint : endpoints) {
+            ClusterConfig config = new ClusterConfig(endpoint.getId(), endpoint, endpoints);
+            RaftNode node = new RaftNode(config, network.transportFor(endpoint.getId()), new KeyValueStateMachine());
+            network.register(node);
+            nodes.add(node);
+        }
+        nodes.forEach(RaftNode::start);
+        return nodes;
+    }
+
+    private static RaftNode awaitLeader(List<RaftNode> nodes, Duration timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (System.nanoTime() < deadline) {
+            for (RaftNode node : nodes) {
+                if (node.getState() == RaftState.LEADER) {
+                    return node;
+                }
+            }
+            Thread.sleep(10);
+        }
+        throw new IllegalStateException("No leader elected within " + timeout);
+    }
+
+    // Генератор открытой нагрузки: i-й запрос запланирован на start + i * interval.
+    // Отказ по перегрузке — тоже ответ клиенту: он считается в rejected и попадает в латентность записи
+    private AtomicLong drive(List<RaftNode> nodes, RaftNode initialLeader, Duration length,
+                             Histogram writes, Histogram reads, AtomicLong rejected) throws Exception {
+        Random random = new Random(7);
+        String value = "v".repeat(valueSize);
+        long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+        long start = System.nanoTime();
+        long end = start + length.toNanos();
+        AtomicLong errors = new AtomicLong();
+        List<CompletableFuture<byte[]>> outstanding = new ArrayList<>();
+        RaftNode leader = initialLeader;
+        for (long i = 0; ; i++) {
+            long intended = start + i * interval;
+            if (intended >= end) {
+                break;
+            }
+            long wait = intended - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            String key = "key" + random.nextInt(keys);
+            if (random.nextDouble() < readRatio) {
+                leader.readFromStateMachine(MAPPER.writeValueAsBytes(new KeyValueCommand(KeyValueCommand.Type.GET, key, null)));
+                record(reads, intended);
+                continue;
+            }
+            try {
+                CompletableFuture<byte[]> future = leader.submitCommand(
+                        MAPPER.writeValueAsBytes(new KeyValueCommand(KeyValueCommand.Type.PUT, key, value)));
+                future.whenComplete((result, error) -> {
+                    if (error != null) {
+                        errors.incrementAndGet();
+                    } else {
+                        record(writes, intended);
+                    }
+                });
+                outstanding.add(future);
+            } catch (OverloadedException e) {
+                rejected.incrementAndGet();
+                record(writes, intended);
+            } catch (NotLeaderException e) {
+                errors.incrementAndGet();
+                leader = awaitLeader(nodes, Duration.ofSeconds(10));
+            }
+        }
+        for (CompletableFuture<byte[]> future : outstanding) {
+            try {
+                future.get(5, TimeUnit.SECONDS);
+            } catch (Exception e) {
+                // уже учтено в errors либо запрос завис и будет виден по счетчику операций
+            }
+        }
+        return errors;
+    }
+
+    private static void record(Histogram histogram, long intendedNanos) {
+        if (histogram != null) {
+            histogram.recordValue(Math.max(0, System.nanoTime() - intendedNanos) / 1000);
+        }
+    }
+
+    private Map<String, Object> report(int size, Histogram writes, Histogram reads, long errors, long rejected) {
+        double seconds = duration.toNanos() / 1e9;
+        long committed = writes.getTotalCount() - rejected; // в гистограмме записи есть и отказы
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("nodes", size);
+        result.put("offeredOpsPerSec", rate);
+        result.put("writeOpsPerSec", committed / seconds);
+        result.put("readOpsPerSec", reads.getTotalCount() / seconds);
+        result.put("errors", errors);
+        result.put("rejected", rejected);
+        result.put("writeLatencyMicros", percentiles(writes));
+        result.put("readLatencyMicros", percentiles(reads));
+        System.out.printf("nodes=%d offered=%d ops/s writes=%.0f ops/s reads=%.0f ops/s errors=%d rejected=%d%n",
+                size, rate, committed / seconds, reads.getTotalCount() / seconds, errors, rejected);
+        System.out.printf("  commit latency us: p50=%d p99=%d p999=%d max=%d%n",
+                writes.getValueAtPercentile(50), writes.getValueAtPercentile(99),
+                writes.getValueAtPercentile(99.9), writes.getMaxValue());
+        return result;
+    }
+
+    private static Map<String, Long> percentiles(Histogram histogram) {
+        Map<String, Long> values = new LinkedHashMap<>();
+        values.put("p50", histogram.getValueAtPercentile(50));
+        values.put("p99", histogram.getValueAtPercentile(99));
+        values.put("p999", histogram.getValueAtPercentile(99.9));
+        values.put("max", histogram.getMaxValue());
+        return values;
+    }
+
+    private static Map<String, String> parseArgs(String[] args) {
+        Map<String, String> params = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].startsWith("--") && i + 1 < args.length) {
+                params.put(args[i].substring(2), args[i + 1]);
+                i++;
+            }
+        }
+        return params;
+    }
+}
@@ -0,0 +1,350 @@
+package org.example.raft;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.kv.KeyValueCommand;
+import org.example.kv.KeyValueStateMachine;
+import org.example.raft.cluster.ClusterConfig;
+import org.example.raft.cluster.PeerEndpoint;
+import org.example.raft.transport.FaultInjector;
+import org.example.raft.transport.FaultScenario;
+import org.example.raft.transport.LinkProfile;
+import org.example.raft.transport.LoopbackNetwork;
+import org.example.raft.util.Json;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Макробенчмарк отказоустойчивости кластера в одной JVM: LoopbackNetwork + FaultInjector.
+ * Для каждого размера кластера и сценария отказа лидера измеряется время до нового лидера и окно
+ * недоступности записи (самый длинный промежуток между успешными записями после отказа),
+ * для отставшего фолловера — скорость догоняющей репликации.
+ *
+ * mvn -Pbench compile exec:exec -Dbench.main=org.example.raft.FailoverBenchmark \
+ *     -Dbench.args="--nodes 3,5 --runs 5 --fault-millis 2000 --catch-up-entries 20000"
+ */
+public final class FailoverBenchmark {
+    private static final ObjectMapper MAPPER = Json.mapper();
+    private static final Duration WRITE_TIMEOUT = Duration.ofMillis(500);
+    private static final int CATCH_UP_BATCH = 1000;
+
+    private final int runs;
+    private final Duration fault; // сколько держится отказ до восстановления
+    private final int catchUpEntries;
+    private final LinkProfile link;
+    private final boolean adaptiveTimeouts;
+
+    private FailoverBenchmark(Map<String, String> params) {
+        this.runs = Integer.parseInt(params.getOrDefault("runs", "3"));
+        this.fault = Duration.ofMillis(Long.parseLong(params.getOrDefault("fault-millis", "2000")));
+        this.catchUpEntries = Integer.parseInt(params.getOrDefault("catch-up-entries", "20000"));
+        this.link = new LinkProfile(
+                Duration.ofNanos(Long.parseLong(params.getOrDefault("latency-us", "200")) * 1000), 0, 0.0);
+        this.adaptiveTimeouts = Boolean.parseBoolean(params.getOrDefault("adaptive-timeouts", "false"));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> params = parseArgs(args);
+        FailoverBenchmark benchmark = new FailoverBenchmark(params);
+        List<Map<String, Object>> results = new ArrayList<>();
+        for (String size : params.getOrDefault("nodes", "3,5").split(",")) {
+            int nodes = Integer.parseInt(size.trim());
+            results.add(benchmark.failover(nodes, "leader-crash", Fault.CRASH));
+            results.add(benchmark.failover(nodes, "leader-pause", Fault.PAUSE));
+            results.add(benchmark.failover(nodes, "leader-partition", Fault.PARTITION));
+            results.add(benchmark.failover(nodes, "leader-outbound-drop", Fault.OUTBOUND_DROP));
+            results.add(benchmark.catchUp(nodes));
+        }
+        String output = params.getOrDefault("json", "target/failover-bench.json");
+        MAPPER.writerWithDefaultPrettyPrinter().writeValue(new File(output), results);
+        System.out.println("Results written to " + output);
+    }
+
+    private enum Fault {
+        CRASH, // нода остановлена и больше не отвечает
+        PAUSE, // процесс заморожен на время отказа, затем продолжает работу
+        PARTITION, // лидер отрезан от остальных в обе стороны
+        OUTBOUND_DROP // сообщения лидера теряются, до него сообщения доходят
+    }
+
+    private Map<String, Object> failover(int size, String name, Fault kind) throws Exception {
+        List<Long> toLeader = new ArrayList<>();
+        List<Long> unavailable = new ArrayList<>();
+        for (int run = 0; run < runs; run++) {
+            try (Cluster cluster = new Cluster(size)) {
+                RaftNode leader = cluster.awaitLeader(null, Duration.ofSeconds(10));
+                Writer writer = cluster.startWriter();
+                Thread.sleep(500); // стабильный поток записей до отказа
+
+                String leaderId = leader.getLocalId();
+                long term = leader.getCurrentTerm();
+                FaultScenario scenario = new FaultScenario()
+                        .at(Duration.ZERO, "fault", faults -> inject(cluster, leaderId, kind))
+                        .at(fault, "heal", FaultInjector::heal);
+                CompletableFuture<Map<String, Long>> playback = scenario.play(cluster.faults);
+                RaftNode newLeader = cluster.awaitLeader(node -> node != leader && node.getCurrentTerm() > term,
+                        Duration.ofSeconds(10));
+                long elected = System.nanoTime();
+                Map<String, Long> steps = playback.get(fault.toMillis() + 5000, TimeUnit.MILLISECONDS);
+                Thread.sleep(500); // записи после восстановления
+                writer.stop();
+
+                long faultAt = steps.get("fault");
+                toLeader.add(TimeUnit.NANOSECONDS.toMillis(elected - faultAt));
+                unavailable.add(TimeUnit.NANOSECONDS.toMillis(writer.longestGapAfter(faultAt)));
+                System.out.printf("nodes=%d %s run=%d new leader %s in %d ms, writes unavailable %d ms%n", size, name,
+                        run, newLeader.getLocalId(), toLeader.get(run), unavailable.get(run));
+            }
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("nodes", size);
+        result.put("scenario", name);
+        result.put("timeToLeaderMillis", summary(toLeader));
+        result.put("writeUnavailableMillis", summary(unavailable));
+        return result;
+    }
+
+    private static void inject(Cluster cluster, String leaderId, Fault kind) {
+        switch (kind) {
+            case CRASH:
+                cluster.crash(leaderId);
+                break;
+            case PAUSE:
+                cluster.faults.pause(leaderId);
+                break;
+            case PARTITION:
+                cluster.faults.isolate(leaderId, cluster.ids());
+                break;
+            case OUTBOUND_DROP:
+            default:
+                for (String other : cluster.ids()) {
+                    if (!other.equals(leaderId)) {
+                        cluster.faults.drop(leaderId, other);
+                    }
+                }
+        }
+    }
+
+    // Фолловер отрезан, пока лидер пишет catchUpEntries записей; после восстановления сети
+    // измеряется, за сколько он применит их все
+    private Map<String, Object> catchUp(int size) throws Exception {
+        List<Long> rates = new ArrayList<>();
+        for (int run = 0; run < runs; run++) {
+            try (Cluster cluster = new Cluster(size)) {
+                RaftNode leader = cluster.awaitLeader(null, Duration.ofSeconds(10));
+                RaftNode follower = cluster.nodes.stream().filter(node -> node != leader).findFirst().orElseThrow();
+                cluster.faults.isolate(follower.getLocalId(), cluster.ids());
+                int from = follower.getLastApplied();
+                // пачками, чтобы не упереться в лимит admission control
+                for (int i = 0; i < catchUpEntries; i += CATCH_UP_BATCH) {
+                    List<CompletableFuture<byte[]>> writes = new ArrayList<>(CATCH_UP_BATCH);
+                    for (int j = i; j < Math.min(catchUpEntries, i + CATCH_UP_BATCH); j++) {
+                        writes.add(leader.submitCommand(put("key" + j)));
+                    }
+                    CompletableFuture.allOf(writes.toArray(new CompletableFuture[0])).get(60, TimeUnit.SECONDS);
+                }
+                int target = leader.getCommitIndex();
+
+                long healed = System.nanoTime();
+                cluster.faults.heal();
+                long deadline = healed + TimeUnit.SECONDS.toNanos(60);
+                while (follower.getLastApplied() < target && System.nanoTime() < deadline) {
+                    Thread.sleep(1);
+                }
+                long elapsed = Math.max(1, System.nanoTime() - healed);
+                long rate = (follower.getLastApplied() - from) * TimeUnit.SECONDS.toNanos(1) / elapsed;
+                rates.add(rate);
+                System.out.printf("nodes=%d follower-catch-up run=%d %d entries in %d ms, %d entries/s%n", size, run,
+                        follower.getLastApplied() - from, TimeUnit.NANOSECONDS.toMillis(elapsed), rate);
+            }
+        }
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("nodes", size);
+        result.put("scenario", "follower-catch-up");
+        result.put("entries", catchUpEntries);
+        result.put("catchUpEntriesPerSec", summary(rates));
+        return result;
+    }
+
+    private static byte[] put(String key) {
+        try {
+            return MAPPER.writeValueAsBytes(new KeyValueCommand(KeyValueCommand.Type.PUT, key, "v"));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Map<String, Long> summary(List<Long> values) {
+        List<Long> sorted = new ArrayList<>(values);
+        Collections.sort(sorted);
+        Map<String, Long> result = new LinkedHashMap<>();
+        result.put("min", sorted.get(0));
+        result.put("p50", sorted.get(sorted.size() / 2));
+        result.put("max", sorted.get(sorted.size() - 1));
+        return result;
+    }
+
+    private final class Cluster implements AutoCloseable {
+        private final LoopbackNetwork network = new LoopbackNetwork(link, Duration.ofSeconds(1));
+        private final FaultInjector faults = new FaultInjector(Duration.ofSeconds(1));
+        private final List<RaftNode> nodes = new ArrayList<>();
+        private final List<RaftNode> crashed = Collections.synchronizedList(new ArrayList<>());
+        private Writer writer;
+
+        private Cluster(int size) {
+            List<PeerEndpoint> endpoints = new ArrayList<>(size);
+            for (int i = 1; i <= size; i++) {
+                endpoints.add(new PeerEndpoint("node" + i, "127.0.0.1", 9000 + i));
+            }
+            RaftOptions options = new RaftOptions()
+                    .setPreVote(true)
+                    .setCheckQuorum(true)
+                    .setAdaptiveTimeouts(adaptiveTimeouts);
+            for (PeerEndpoint endpoint : endpoints) {
+                ClusterConfig config = new ClusterConfig(endpoint.getId(), endpoint, endpoints);
+                RaftNode node = new RaftNode(config, faults.wrap(endpoint.getId(), network.transportFor(endpoint.getId())),
+                        new KeyValueStateMachine(), options);
+                network.register(node);
+                faults.attach(endpoint.getId(), node::pause, node::resume); // пауза лидера замораживает и его таймеры
+                nodes.add(node);
+            }
+            nodes.forEach(RaftNode::start);
+        }
+
+        List<String> ids() {
+            return nodes.stream().map(RaftNode::getLocalId).collect(Collectors.toList());
+        }
+
+        void crash(String nodeId) {
+            network.unregister(nodeId);
+            for (RaftNode node : nodes) {
+                if (node.getLocalId().equals(nodeId)) {
+                    crashed.add(node);
+                    node.close();
+                }
+            }
+        }
+
+        // Лидер с наибольшим термом среди работающих нод
+        RaftNode currentLeader() {
+            RaftNode leader = null;
+            for (RaftNode node : nodes) {
+                if (!crashed.contains(node) && !faults.isPaused(node.getLocalId()) && node.getState() == RaftState.LEADER
+                        && (leader == null || node.getCurrentTerm() > leader.getCurrentTerm())) {
+                    leader = node;
+                }
+            }
+            return leader;
+        }
+
+        RaftNode awaitLeader(Function<RaftNode, Boolean> condition, Duration timeout) throws InterruptedException {
+            long deadline = System.nanoTime() + timeout.toNanos();
+            while (System.nanoTime() < deadline) {
+                for (RaftNode node : nodes) {
+                    if (node.getState() == RaftState.LEADER && !crashed.contains(node)
+                            && (condition == null || condition.apply(node))) {
+                        return node;
+                    }
+                }
+                Thread.sleep(1);
+            }
+            throw new IllegalStateException("No leader elected within " + timeout);
+        }
+
+        Writer startWriter() {
+            writer = new Writer(this);
+            writer.thread.start();
+            return writer;
+        }
+
+        @Override
+        public void close() {
+            if (writer != null) {
+                writer.stop();
+            }
+            faults.heal();
+            for (RaftNode node : nodes) {
+                if (!crashed.contains(node)) {
+                    node.close();
+                }
+            }
+            network.close();
+        }
+    }
+
+    // Одна запись за раз на текущего лидера; сбой или таймаут — повтор на того, кто лидер сейчас
+    private static final class Writer {
+        private final List<Long> committed = Collections.synchronizedList(new ArrayList<>()); // System.nanoTime успешных записей
+        private final Thread thread;
+        private volatile boolean running = true;
+
+        private Writer(Cluster cluster) {
+            this.thread = new Thread(() -> {
+                long sequence = 0;
+                while (running) {
+                    RaftNode leader = cluster.currentLeader();
+                    if (leader == null) {
+                        Thread.onSpinWait();
+                        continue;
+                    }
+                    try {
+                        leader.submitCommand(put("w" + sequence++)).get(WRITE_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+                        committed.add(System.nanoTime());
+                    } catch (InterruptedException e) {
+                        return;
+                    } catch (Exception e) {
+                        // не лидер, отказ или таймаут — запись не состоялась
+                    }
+                }
+            }, "failover-writer");
+            thread.setDaemon(true);
+        }
+
+        void stop() {
+            running = false;
+            try {
+                thread.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        // Самый длинный промежуток без успешных записей, начиная с момента отказа
+        long longestGapAfter(long faultNanos) {
+            List<Long> times;
+            synchronized (committed) {
+                times = new ArrayList<>(committed);
+            }
+            long longest = 0;
+            long previous = faultNanos;
+            for (long time : times) {
+                if (time > faultNanos) {
+                    longest = Math.max(longest, time - previous);
+                    previous = time;
+                }
+            }
+            return longest;
+        }
+    }
+
+    private static Map<String, String> parseArgs(String[] args) {
+        Map<String, String> params = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].startsWith("--") && i + 1 < args.length) {
+                params.put(args[i].substring(2), args[i + 1]);
+                i++;
+            }
+        }
+        return params;
+    }
+}
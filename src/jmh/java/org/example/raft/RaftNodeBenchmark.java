@@ -0,0 +1,185 @@
+package org.example.raft;
+
+import org.example.raft.cluster.ClusterConfig;
+import org.example.raft.cluster.PeerEndpoint;
+import org.example.raft.log.LogEntry;
+import org.example.raft.protocol.AppendEntriesRequest;
+import org.example.raft.protocol.AppendEntriesResponse;
+import org.example.raft.protocol.ForwardRequest;
+import org.example.raft.protocol.ForwardResponse;
+import org.example.raft.protocol.RequestVoteRequest;
+import org.example.raft.protocol.RequestVoteResponse;
+import org.example.raft.protocol.TimeoutNowRequest;
+import org.example.raft.protocol.TimeoutNowResponse;
+import org.example.raft.transport.RaftTransport;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Горячие пути RaftNode: прием AppendEntries фолловером (дописывание в хвост и усечение
+ * конфликтующего хвоста) и пересчет commitIndex лидером при большом числе пиров.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dorg.slf4j.simpleLogger.defaultLogLevel=warn")
+public class RaftNodeBenchmark {
+    private static final int COMMAND_SIZE = 128;
+
+    @State(Scope.Thread)
+    public static class FollowerState {
+        private static final int MAX_LOG = 65536;
+        private static final int BASE_LOG = 1024;
+
+        @Param({"1", "16", "128"})
+        public int batch;
+
+        RaftNode node;
+        byte[] command = new byte[COMMAND_SIZE];
+        long leaderTerm;
+        int lastIndex;
+        long entryTerm;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            node = new RaftNode(cluster(2), new SilentTransport(), command -> command);
+            leaderTerm = 2;
+            entryTerm = 1;
+            lastIndex = 0;
+            append(0, 0, 1, BASE_LOG);
+        }
+
+        // Таймер выборов мог сработать между итерациями и поднять терм ноды
+        @Setup(Level.Iteration)
+        public void catchUpTerm() {
+            leaderTerm = Math.max(leaderTerm, node.getCurrentTerm() + 1);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            node.close();
+        }
+
+        AppendEntriesResponse append(int prevIndex, long prevTerm, long term, int count) {
+            List<LogEntry> entries = new ArrayList<>(count);
+            for (int i = 1; i <= count; i++) {
+                entries.add(new LogEntry(term, prevIndex + i, command));
+            }
+            AppendEntriesResponse response = node.handleAppendEntries(
+                    new AppendEntriesRequest(leaderTerm, "leader", prevIndex, prevTerm, entries, 0));
+            lastIndex = response.getMatchIndex();
+            return response;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class LeaderState {
+        @Param({"4", "16", "64"})
+        public int peers;
+
+        @Param({"16", "1024"})
+        public int uncommitted;
+
+        RaftNode node;
+        int match;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            node = new RaftNode(cluster(peers), new SilentTransport(), command -> command);
+            synchronized (node) {
+                node.becomeLeader();
+            }
+            byte[] command = new byte[COMMAND_SIZE];
+            for (int i = 0; i < uncommitted; i++) {
+                node.submitCommand(command);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            node.close();
+        }
+    }
+
+    // Новые записи дописываются в конец лога; при достижении MAX_LOG лог усекается до BASE_LOG
+    @Benchmark
+    public AppendEntriesResponse appendAtTail(FollowerState s) {
+        if (s.lastIndex + s.batch > FollowerState.MAX_LOG) {
+            s.entryTerm = s.entryTerm == 1 ? 2 : 1;
+            return s.append(0, 0, s.entryTerm, FollowerState.BASE_LOG);
+        }
+        return s.append(s.lastIndex, s.entryTerm, s.entryTerm, s.batch);
+    }
+
+    // Последние batch записей каждый раз конфликтуют по терму: хвост удаляется и пишется заново
+    @Benchmark
+    public AppendEntriesResponse truncateAndAppend(FollowerState s) {
+        int prevIndex = FollowerState.BASE_LOG - s.batch;
+        s.entryTerm = s.entryTerm == 1 ? 2 : 1;
+        AppendEntriesResponse response = s.append(prevIndex, 1, s.entryTerm, s.batch);
+        s.lastIndex = FollowerState.BASE_LOG;
+        return response;
+    }
+
+    // Кворум не набирается, поэтому каждый вызов просматривает весь незакоммиченный хвост по всем пирам
+    @Benchmark
+    public void updateCommitIndex(LeaderState s) {
+        s.match = s.match >= s.uncommitted ? 1 : s.match + 1;
+        synchronized (s.node) {
+            s.node.recordReplicationSuccess("peer0", s.match);
+        }
+    }
+
+    private static ClusterConfig cluster(int peers) {
+        List<PeerEndpoint> endpoints = new ArrayList<>(peers);
+        for (int i = 0; i < peers; i++) {
+            endpoints.add(new PeerEndpoint("peer" + i, "127.0.0.1", 10000 + i));
+        }
+        return new ClusterConfig("self", new PeerEndpoint("self", "127.0.0.1", 9999), endpoints);
+    }
+
+    // Транспорт, который никогда не отвечает: RPC остаются незавершенными
+    private static final class SilentTransport implements RaftTransport {
+        @Override
+        public CompletableFuture<AppendEntriesResponse> appendEntries(String targetNodeId, AppendEntriesRequest request) {
+            return new CompletableFuture<>();
+        }
+
+        @Override
+        public CompletableFuture<RequestVoteResponse> requestVote(String targetNodeId, RequestVoteRequest request) {
+            return new CompletableFuture<>();
+        }
+
+        @Override
+        public CompletableFuture<RequestVoteResponse> preVote(String targetNodeId, RequestVoteRequest request) {
+            return new CompletableFuture<>();
+        }
+
+        @Override
+        public CompletableFuture<TimeoutNowResponse> timeoutNow(String targetNodeId, TimeoutNowRequest request) {
+            return new CompletableFuture<>();
+        }
+
+        @Override
+        public CompletableFuture<ForwardResponse> forwardCommands(String targetNodeId, ForwardRequest request) {
+            return new CompletableFuture<>();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package org.example.raft.protocol;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.raft.log.LogEntry;
+import org.example.raft.util.Json;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson-кодек AppendEntriesRequest: именно так запрос уходит по HTTP в HttpRaftTransport
+ * и разбирается в RaftHttpServer (команды кодируются в Base64).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dorg.slf4j.simpleLogger.defaultLogLevel=warn")
+@State(Scope.Thread)
+public class AppendEntriesCodecBenchmark {
+
+    @Param({"0", "1", "16", "256"})
+    public int entries;
+
+    @Param({"64", "1024"})
+    public int commandSize;
+
+    private ObjectMapper mapper;
+    private AppendEntriesRequest request;
+    private byte[] encoded;
+
+    @Setup
+    public void setUp() throws Exception {
+        mapper = Json.mapper();
+        Random random = new Random(42);
+        List<LogEntry> batch = new ArrayList<>(entries);
+        for (int i = 0; i < entries; i++) {
+            byte[] command = new byte[commandSize];
+            random.nextBytes(command);
+            batch.add(new LogEntry(7, 1000 + i, command));
+        }
+        request = new AppendEntriesRequest(7, "node1", 999, 7, batch, 998);
+        encoded = mapper.writeValueAsBytes(request);
+    }
+
+    @Benchmark
+    public byte[] encode() throws Exception {
+        return mapper.writeValueAsBytes(request);
+    }
+
+    @Benchmark
+    public AppendEntriesRequest decode() throws Exception {
+        return mapper.readValue(encoded, AppendEntriesRequest.class);
+    }
+
+    // то же со сжатием пакета записей (--compress-entries): CPU на Deflate против Base64 каждой команды
+    @Benchmark
+    public byte[] encodeCompressed() throws Exception {
+        return mapper.writeValueAsBytes(request.compress());
+    }
+
+    @Benchmark
+    public AppendEntriesRequest roundTrip() throws Exception {
+        return mapper.readValue(mapper.writeValueAsBytes(request), AppendEntriesRequest.class);
+    }
+}
@@ -0,0 +1,262 @@
+package org.example.server;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.example.kv.KeyValueCommand;
+import org.example.kv.KeyValueStateMachine;
+import org.example.raft.RaftNode;
+import org.example.raft.RaftOptions;
+import org.example.raft.RaftState;
+import org.example.raft.cluster.ClusterConfig;
+import org.example.raft.cluster.PeerEndpoint;
+import org.example.raft.transport.LinkProfile;
+import org.example.raft.transport.LoopbackNetwork;
+import org.example.raft.util.Json;
+
+import java.io.File;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Макробенчмарк KV API по HTTP/1.1 и h2c при большом числе одновременных клиентов.
+ * Кластер из трех нод в одной JVM поверх LoopbackNetwork, RaftHttpServer с включенным h2c — на лидере.
+ * Нагрузка закрытая: concurrency клиентов отправляют следующий запрос сразу после ответа на предыдущий.
+ * HTTP/1.1-клиент держит по соединению на каждый запрос в полете, h2c-клиент мультиплексирует их
+ * в одном соединении. Результат — ops/s, p50/p99/p999 и доля ответов по запрошенному протоколу.
+ *
+ * mvn -Pbench compile exec:exec -Dbench.main=org.example.server.HttpProtocolBenchmark \
+ *     -Dbench.args="--concurrency 64,256,1024 --duration 10 --read-ratio 0.9 --server-threads 200"
+ */
+public final class HttpProtocolBenchmark {
+    private static final ObjectMapper MAPPER = Json.mapper();
+
+    private final Duration warmup;
+    private final Duration duration;
+    private final double readRatio;
+    private final int keys;
+    private final int valueSize;
+    private final HttpServerOptions serverOptions;
+
+    private HttpProtocolBenchmark(Map<String, String> params) {
+        this.warmup = Duration.ofSeconds(Long.parseLong(params.getOrDefault("warmup", "3")));
+        this.duration = Duration.ofSeconds(Long.parseLong(params.getOrDefault("duration", "10")));
+        this.readRatio = Double.parseDouble(params.getOrDefault("read-ratio", "0.9"));
+        this.keys = Integer.parseInt(params.getOrDefault("keys", "10000"));
+        this.valueSize = Integer.parseInt(params.getOrDefault("value-size", "128"));
+        this.serverOptions = new HttpServerOptions()
+                .setH2c(true)
+                .setMaxThreads(Integer.parseInt(params.getOrDefault("server-threads", "200")))
+                .setH2MaxConcurrentStreams(Integer.parseInt(params.getOrDefault("h2-max-streams", "1024")));
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> params = parseArgs(args);
+        HttpProtocolBenchmark benchmark = new HttpProtocolBenchmark(params);
+        List<Map<String, Object>> results = new ArrayList<>();
+        try (LoopbackNetwork network = new LoopbackNetwork(new LinkProfile(Duration.ofMillis(0), 0, 0), Duration.ofSeconds(2))) {
+            Map<RaftNode, KeyValueStateMachine> machines = startCluster(network);
+            List<RaftNode> nodes = new ArrayList<>(machines.keySet());
+            RaftNode leader = awaitLeader(nodes, Duration.ofSeconds(10));
+            RaftHttpServer server = new RaftHttpServer(0, leader, machines.get(leader), benchmark.serverOptions);
+            try {
+                server.start();
+                URI base = URI.create("http://127.0.0.1:" + server.getPort());
+                benchmark.load(base);
+                for (String level : params.getOrDefault("concurrency", "64,256,1024").split(",")) {
+                    int concurrency = Integer.parseInt(level.trim());
+                    for (HttpClient.Version version : new HttpClient.Version[]{HttpClient.Version.HTTP_1_1, HttpClient.Version.HTTP_2}) {
+                        Map<String, Object> result = benchmark.run(base, version, concurrency);
+                        System.out.println(result);
+                        results.add(result);
+                    }
+                }
+            } finally {
+                server.close();
+                nodes.forEach(RaftNode::close);
+            }
+        }
+        String output = params.getOrDefault("json", "target/http-bench.json");
+        MAPPER.writerWithDefaultPrettyPrinter().writeValue(new File(output), results);
+        System.out.println("Results written to " + output);
+    }
+
+    // Заполняет ключи, чтобы чтения находили значения
+    private void load(URI base) throws Exception {
+        HttpClient client = HttpClient.newHttpClient();
+        List<KeyValueCommand> batch = new ArrayList<>();
+        for (int i = 0; i < keys; i++) {
+            batch.add(new KeyValueCommand(KeyValueCommand.Type.PUT, key(i), "v".repeat(valueSize)));
+            if (batch.size() == 500 || i == keys - 1) {
+                HttpResponse<Void> response = client.send(HttpRequest.newBuilder(base.resolve("/kv/batch"))
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofByteArray(MAPPER.writeValueAsBytes(batch)))
+                        .build(), HttpResponse.BodyHandlers.discarding());
+                if (response.statusCode() != 200) {
+                    throw new IllegalStateException("Load failed with HTTP " + response.statusCode());
+                }
+                batch.clear();
+            }
+        }
+    }
+
+    private Map<String, Object> run(URI base, HttpClient.Version version, int concurrency) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(4, Runtime.getRuntime().availableProcessors()), runnable -> {
+            Thread thread = new Thread(runnable, "bench-client");
+            thread.setDaemon(true);
+            return thread;
+        });
+        HttpClient client = HttpClient.newBuilder()
+                .version(version)
+                .executor(executor)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        try {
+            // h2c поднимается через Upgrade первым запросом; до этого параллельные запросы ушли бы по HTTP/1.1
+            client.send(HttpRequest.newBuilder(base.resolve("/raft/status")).GET().build(), HttpResponse.BodyHandlers.discarding());
+            drive(client, base, concurrency, warmup, null);
+            Histogram latency = new ConcurrentHistogram(3);
+            Stats stats = drive(client, base, concurrency, duration, latency);
+            Map<String, Object> result = new LinkedHashMap<>();
+            result.put("protocol", version == HttpClient.Version.HTTP_2 ? "h2c" : "http/1.1");
+            result.put("concurrency", concurrency);
+            result.put("opsPerSecond", stats.completed.get() * 1000.0 / duration.toMillis());
+            result.put("p50Millis", latency.getValueAtPercentile(50) / 1000.0);
+            result.put("p99Millis", latency.getValueAtPercentile(99) / 1000.0);
+            result.put("p999Millis", latency.getValueAtPercentile(99.9) / 1000.0);
+            result.put("errors", stats.errors.get());
+            // доля ответов, пришедших по запрошенному протоколу (h2c мог не согласоваться)
+            result.put("negotiatedShare", stats.completed.get() == 0 ? 0.0
+                    : (double) stats.negotiated.get() / stats.completed.get());
+            return result;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Stats drive(HttpClient client, URI base, int concurrency, Duration length, Histogram latency) throws InterruptedException {
+        Stats stats = new Stats();
+        AtomicBoolean running = new AtomicBoolean(true);
+        for (int i = 0; i < concurrency; i++) {
+            next(client, base, running, stats, latency);
+        }
+        Thread.sleep(length.toMillis());
+        running.set(false);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (stats.inFlight.get() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        return stats;
+    }
+
+    // Один клиент: следующий запрос уходит после ответа на предыдущий
+    private void next(HttpClient client, URI base, AtomicBoolean running, Stats stats, Histogram latency) {
+        if (!running.get()) {
+            return;
+        }
+        HttpRequest request;
+        try {
+            request = request(base);
+        } catch (Exception e) {
+            stats.errors.incrementAndGet();
+            return;
+        }
+        stats.inFlight.incrementAndGet();
+        long started = System.nanoTime();
+        client.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray()).whenComplete((response, error) -> {
+            stats.inFlight.decrementAndGet();
+            if (error != null || response.statusCode() != 200) {
+                stats.errors.incrementAndGet();
+            } else if (running.get()) {
+                if (latency != null) {
+                    latency.recordValue(Math.max(1, (System.nanoTime() - started) / 1000));
+                }
+                stats.completed.incrementAndGet();
+                if (response.version() == client.version()) {
+                    stats.negotiated.incrementAndGet();
+                }
+            }
+            next(client, base, running, stats, latency);
+        });
+    }
+
+    private HttpRequest request(URI base) throws Exception {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String key = key(random.nextInt(keys));
+        if (random.nextDouble() < readRatio) {
+            return HttpRequest.newBuilder(base.resolve("/kv/get?key=" + key)).timeout(Duration.ofSeconds(10)).GET().build();
+        }
+        byte[] body = MAPPER.writeValueAsBytes(new KeyValueCommand(KeyValueCommand.Type.PUT, key, "v".repeat(valueSize)));
+        return HttpRequest.newBuilder(base.resolve("/kv/put"))
+                .timeout(Duration.ofSeconds(10))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build();
+    }
+
+    private static String key(int i) {
+        return "key-" + i;
+    }
+
+    private static Map<RaftNode, KeyValueStateMachine> startCluster(LoopbackNetwork network) {
+        List<PeerEndpoint> endpoints = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            endpoints.add(new PeerEndpoint("node" + i, "127.0.0.1", 9000 + i));
+        }
+        Map<RaftNode, KeyValueStateMachine> nodes = new LinkedHashMap<>();
+        for (PeerEndpoint endpoint : endpoints) {
+            ClusterConfig config = new ClusterConfig(endpoint.getId(), endpoint, endpoints);
+            KeyValueStateMachine machine = new KeyValueStateMachine();
+            RaftNode node = new RaftNode(config, network.transportFor(endpoint.getId()), machine, new RaftOptions());
+            network.register(node);
+            nodes.put(node, machine);
+        }
+        nodes.keySet().forEach(RaftNode::start);
+        return nodes;
+    }
+
+    private static RaftNode awaitLeader(List<RaftNode> nodes, Duration timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (System.nanoTime() < deadline) {
+            for (RaftNode node : nodes) {
+                if (node.getState() == RaftState.LEADER) {
+                    return node;
+                }
+            }
+            Thread.sleep(10);
+        }
+        throw new IllegalStateException("No leader elected within " + timeout);
+    }
+
+    private static final class Stats {
+        private final AtomicLong completed = new AtomicLong();
+        private final AtomicLong negotiated = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicLong inFlight = new AtomicLong();
+    }
+
+    private static Map<String, String> parseArgs(String[] args) {
+        Map<String, String> params = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].startsWith("--") && i + 1 < args.length) {
+                params.put(args[i].substring(2), args[i + 1]);
+                i++;
+            }
+        }
+        return params;
+    }
+}
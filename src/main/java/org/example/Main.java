@@ -2,13 +2,17 @@ package org.example;
 
 import org.example.kv.KeyValueStateMachine;
 import org.example.raft.RaftNode;
+import org.example.raft.RaftOptions;
 import org.example.raft.cluster.ClusterConfig;
 import org.example.raft.cluster.PeerEndpoint;
 import org.example.raft.transport.HttpRaftTransport;
+import org.example.raft.transport.TransportLane;
+import org.example.server.HttpServerOptions;
 import org.example.server.RaftHttpServer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.file.Paths;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -22,22 +26,63 @@ public final class Main {
     private static final Logger LOGGER = LoggerFactory.getLogger(Main.class);
 
     public static void main(String[] args) throws Exception {
+        long startedNanos = System.nanoTime();
         Map<String, String> params = parseArgs(args);
         String nodeId = params.getOrDefault("id", "node1");
         String host = params.getOrDefault("host", "127.0.0.1");
         int port = Integer.parseInt(params.getOrDefault("port", "9001"));
         List<PeerEndpoint> peers = parsePeers(params.getOrDefault("peers", ""));
 
-        PeerEndpoint local = new PeerEndpoint(nodeId, host, port);
+        // нода — learner, если это задано флагом или ее собственной записью в --peers
+        boolean learner = Boolean.parseBoolean(params.getOrDefault("learner", "false"))
+                || peers.stream().anyMatch(peer -> peer.getId().equals(nodeId) && peer.isLearner());
+        PeerEndpoint local = new PeerEndpoint(nodeId, host, port, learner);
         ClusterConfig config = new ClusterConfig(nodeId, local, peers);
         KeyValueStateMachine stateMachine = new KeyValueStateMachine();
-        HttpRaftTransport transport = new HttpRaftTransport(config.getPeers(), Duration.ofSeconds(2));
-        RaftNode node = new RaftNode(config, transport, stateMachine);
-        RaftHttpServer server = new RaftHttpServer(port, node);
+        // heartbeat и голосования не ждут за пакетами записей: у каждой полосы свои потоки, соединения и таймауты
+        HttpRaftTransport transport = new HttpRaftTransport(config.getPeers(),
+                TransportLane.control(Duration.ofMillis(Long.parseLong(params.getOrDefault("control-timeout", "300"))),
+                        Integer.parseInt(params.getOrDefault("control-concurrency", "8"))),
+                TransportLane.data(Duration.ofMillis(Long.parseLong(params.getOrDefault("data-timeout", "5000"))),
+                        Integer.parseInt(params.getOrDefault("data-concurrency", "16"))));
+        RaftOptions options = new RaftOptions()
+                .setForwardProposals(Boolean.parseBoolean(params.getOrDefault("forward-writes", "false")))
+                .setPreVote(Boolean.parseBoolean(params.getOrDefault("pre-vote", "true")))
+                .setCheckQuorum(Boolean.parseBoolean(params.getOrDefault("check-quorum", "true")))
+                .setCompressEntries(Boolean.parseBoolean(params.getOrDefault("compress-entries", "false")))
+                .setCompressionThreshold(Integer.parseInt(params.getOrDefault("compression-threshold", "4096")))
+                .setAdaptiveTimeouts(Boolean.parseBoolean(params.getOrDefault("adaptive-timeouts", "false")))
+                .setMinElectionTimeout(Duration.ofMillis(Long.parseLong(params.getOrDefault("min-election-timeout", "50"))))
+                .setMaxElectionTimeout(Duration.ofMillis(Long.parseLong(params.getOrDefault("max-election-timeout", "5000"))))
+                .setMaxPendingProposals(Integer.parseInt(params.getOrDefault("max-pending-proposals", "10000")))
+                .setMaxPendingBytes(Long.parseLong(params.getOrDefault("max-pending-bytes", String.valueOf(64L * 1024 * 1024))))
+                .setAdaptiveConcurrency(Boolean.parseBoolean(params.getOrDefault("adaptive-concurrency", "false")));
+        if (params.containsKey("data-dir")) {
+            options.setDataDirectory(Paths.get(params.get("data-dir")));
+        }
+        RaftNode node = new RaftNode(config, transport, stateMachine, options);
+        HttpServerOptions serverOptions = new HttpServerOptions()
+                .setTraceSampleRate(Integer.parseInt(params.getOrDefault("trace-sample", "0")))
+                .setServerTiming(Boolean.parseBoolean(params.getOrDefault("server-timing", "false")))
+                .setReadMaxLag(Long.parseLong(params.getOrDefault("read-max-lag", "-1")))
+                .setReadMaxStalenessMillis(Long.parseLong(params.getOrDefault("read-max-staleness", "-1")))
+                .setStaleReadWait(Duration.ofMillis(Long.parseLong(params.getOrDefault("stale-read-wait", "0"))))
+                // коннектор Jetty: по умолчанию как у new Server(port)
+                .setMinThreads(Integer.parseInt(params.getOrDefault("http-min-threads", "8")))
+                .setMaxThreads(Integer.parseInt(params.getOrDefault("http-max-threads", "200")))
+                .setAcceptors(Integer.parseInt(params.getOrDefault("http-acceptors", "-1")))
+                .setSelectors(Integer.parseInt(params.getOrDefault("http-selectors", "-1")))
+                .setAcceptQueueSize(Integer.parseInt(params.getOrDefault("http-accept-queue", "0")))
+                .setIdleTimeout(Duration.ofMillis(Long.parseLong(params.getOrDefault("http-idle-timeout", "30000"))))
+                .setH2c(Boolean.parseBoolean(params.getOrDefault("h2c", "false")))
+                .setH2MaxConcurrentStreams(Integer.parseInt(params.getOrDefault("h2-max-streams", "128")))
+                .setMaxRequestBodyBytes(Long.parseLong(params.getOrDefault("max-request-body", "-1")));
+        RaftHttpServer server = new RaftHttpServer(port, node, stateMachine, serverOptions);
 
         node.start();
         server.start();
-        LOGGER.info("Node {} ready", nodeId);
+        LOGGER.info("Node {} ready in {} ms, state machine at index {}", nodeId,
+                (System.nanoTime() - startedNanos) / 1_000_000, node.getLastApplied());
 
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             try {
@@ -73,11 +118,12 @@ public final class Main {
                 continue;
             }
             String id = parts[0];
+            // host:port или host:port:learner
             String[] hostPort = parts[1].split(":");
-            if (hostPort.length != 2) {
+            if (hostPort.length != 2 && !(hostPort.length == 3 && "learner".equals(hostPort[2]))) {
                 continue;
             }
-            peers.add(new PeerEndpoint(id, hostPort[0], Integer.parseInt(hostPort[1])));
+            peers.add(new PeerEndpoint(id, hostPort[0], Integer.parseInt(hostPort[1]), hostPort.length == 3));
         }
         return peers;
     }
@@ -0,0 +1,407 @@
+package org.example.client;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.kv.KeyValueCommand;
+import org.example.kv.KeyValueResult;
+import org.example.raft.util.Json;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Асинхронный клиент /kv API кластера.
+ *
+ * - запоминает текущего лидера и обновляет его по подсказке из ответа 409 или через /raft/status;
+ * - держит пул keep-alive соединений (java.net.http.HttpClient) вместо нового TCP-соединения на запрос,
+ *   а с HTTP/2 (h2c) мультиплексирует запросы в одном соединении с нодой;
+ * - позволяет держать в полете много запросов одновременно, ограничивая их число maxInFlight
+ *   (лишние запросы ждут в очереди, вызывающий поток не блокируется);
+ * - записи идут в клиентской сессии (clientId + sequence), поэтому повтор после таймаута безопасен:
+ *   state machine вернет сохраненный результат вместо повторного выполнения.
+ */
+public final class KvClient implements AutoCloseable {
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long RETRY_BACKOFF_MILLIS = 50;
+    private static final TypeReference<List<KeyValueResult>> RESULT_LIST = new TypeReference<List<KeyValueResult>>() {};
+
+    private final ObjectMapper mapper = Json.mapper();
+    private final ExecutorService executor;
+    private final HttpClient http;
+    private final List<URI> nodes;
+    private final Duration requestTimeout;
+    private final Map<String, URI> addresses = new ConcurrentHashMap<>(); // id ноды -> базовый URI
+    private final AtomicInteger roundRobin = new AtomicInteger();
+    private final Semaphore permits;
+    private final Queue<CompletableFuture<Void>> waiting = new ConcurrentLinkedQueue<>();
+    private final AtomicLong redirects = new AtomicLong();
+    private final String clientId = UUID.randomUUID().toString();
+    private final AtomicLong sequence = new AtomicLong();
+    private final ConcurrentSkipListSet<Long> outstanding = new ConcurrentSkipListSet<>(); // sequence записей без ответа
+    private volatile URI leader;
+    private volatile CompletableFuture<URI> refreshing;
+
+    public KvClient(List<URI> nodes) {
+        this(nodes, Duration.ofSeconds(10), 1024);
+    }
+
+    public KvClient(List<URI> nodes, Duration requestTimeout, int maxInFlight) {
+        this(nodes, requestTimeout, maxInFlight, HttpClient.Version.HTTP_1_1);
+    }
+
+    /**
+     * @param version HTTP_2 — все запросы к ноде мультиплексируются в одном соединении; ноды должны быть
+     *                запущены с --h2c true (первый запрос поднимает соединение через Upgrade: h2c, без h2c
+     *                сервер отвечает по HTTP/1.1). HTTP_1_1 — соединение на каждый запрос в полете
+     */
+    public KvClient(List<URI> nodes, Duration requestTimeout, int maxInFlight, HttpClient.Version version) {
+        if (nodes.isEmpty()) {
+            throw new IllegalArgumentException("at least one node is required");
+        }
+        this.nodes = List.copyOf(nodes);
+        this.requestTimeout = requestTimeout;
+        this.permits = new Semaphore(maxInFlight);
+        this.executor = Executors.newFixedThreadPool(Math.max(2, Runtime.getRuntime().availableProcessors()), runnable -> {
+            Thread thread = new Thread(runnable, "kv-client");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.http = HttpClient.newBuilder()
+                .version(version)
+                .connectTimeout(requestTimeout)
+                .executor(executor)
+                .build();
+    }
+
+    public CompletableFuture<KeyValueResult> get(String key) {
+        String path = "/kv/get?key=" + URLEncoder.encode(key, StandardCharsets.UTF_8);
+        return call(base -> request(base, path).GET().build()).thenApply(this::parseResult);
+    }
+
+    // Чтение с любой ноды по кругу, а не с лидера. Нода с ограниченной устарелостью чтений отвечает сама,
+    // если отстает от лидера в заданных на ней границах, иначе отвечает 409 и запрос уходит к лидеру;
+    // 503 от самого лидера, давно не слышавшего кворум, — повтор через Retry-After
+    public CompletableFuture<KeyValueResult> getFromAnyNode(String key) {
+        String path = "/kv/get?key=" + URLEncoder.encode(key, StandardCharsets.UTF_8);
+        Function<URI, HttpRequest> requestFor = base -> request(base, path).GET().build();
+        CompletableFuture<byte[]> result = acquire().thenCompose(ignored -> send(nextNode(), requestFor, 0));
+        result.whenComplete((body, error) -> release());
+        return result.thenApply(this::parseResult);
+    }
+
+    // Несколько ключей одним запросом; результаты в том же порядке
+    public CompletableFuture<List<KeyValueResult>> getAll(List<String> keys) {
+        byte[] body;
+        try {
+            body = mapper.writeValueAsBytes(keys);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        return call(base -> request(base, "/kv/mget")
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build())
+                .thenApply(result -> {
+                    try {
+                        return mapper.readValue(result, RESULT_LIST);
+                    } catch (IOException e) {
+                        throw new KvClientException(200, new String(result, StandardCharsets.UTF_8));
+                    }
+                });
+    }
+
+    public CompletableFuture<KeyValueResult> put(String key, String value) {
+        long seq = sequence.incrementAndGet();
+        return write("/kv/put", inSession(KeyValueCommand.Type.PUT, key, value, seq), List.of(seq)).thenApply(this::parseResult);
+    }
+
+    public CompletableFuture<KeyValueResult> delete(String key) {
+        long seq = sequence.incrementAndGet();
+        return write("/kv/delete", inSession(KeyValueCommand.Type.DELETE, key, null, seq), List.of(seq)).thenApply(this::parseResult);
+    }
+
+    /**
+     * Запись value, если текущее значение равно expectedValue и/или версия равна expectedVersion
+     * (null — условие не проверяется, версия 0 — ключа нет). При отказе success == false,
+     * а в результате — текущие значение и версия для следующей попытки.
+     */
+    public CompletableFuture<KeyValueResult> compareAndSet(String key, String expectedValue, Long expectedVersion, String value) {
+        return conditional("/kv/cas", KeyValueCommand.compareAndSet(key, expectedValue, expectedVersion, value));
+    }
+
+    // Результат — новое значение счетчика строкой; повтор после таймаута не прибавит дважды
+    public CompletableFuture<KeyValueResult> increment(String key, long delta) {
+        return conditional("/kv/increment", KeyValueCommand.increment(key, delta));
+    }
+
+    public CompletableFuture<KeyValueResult> putIfAbsent(String key, String value) {
+        return conditional("/kv/put-if-absent", KeyValueCommand.putIfAbsent(key, value));
+    }
+
+    // Несколько команд одним HTTP-запросом; результаты в том же порядке
+    public CompletableFuture<List<KeyValueResult>> batch(List<KeyValueCommand> commands) {
+        List<KeyValueCommand> session = new ArrayList<>(commands.size());
+        List<Long> sequences = new ArrayList<>();
+        for (KeyValueCommand command : commands) {
+            if (command.getType() == KeyValueCommand.Type.GET) {
+                session.add(command);
+                continue;
+            }
+            long seq = sequence.incrementAndGet();
+            sequences.add(seq);
+            session.add(inSession(command, seq));
+        }
+        return write("/kv/batch", session, sequences).thenApply(body -> {
+            try {
+                return mapper.readValue(body, RESULT_LIST);
+            } catch (IOException e) {
+                throw new KvClientException(200, new String(body, StandardCharsets.UTF_8));
+            }
+        });
+    }
+
+    // Текущий известный лидер или null, если он еще не найден
+    public URI getLeader() {
+        return leader;
+    }
+
+    // Сколько раз запрос пришлось перенаправить после ответа 409
+    public long getRedirectCount() {
+        return redirects.get();
+    }
+
+    // Опрашивает /raft/status всех нод; одновременно выполняется не больше одного опроса
+    public CompletableFuture<URI> refreshLeader() {
+        CompletableFuture<URI> current = refreshing;
+        if (current != null && !current.isDone()) {
+            return current;
+        }
+        CompletableFuture<URI> result = new CompletableFuture<>();
+        refreshing = result;
+        Map<String, String> leaderHints = new ConcurrentHashMap<>();
+        List<CompletableFuture<Void>> polls = new ArrayList<>(nodes.size());
+        for (URI node : nodes) {
+            polls.add(http.sendAsync(request(node, "/raft/status").GET().build(), HttpResponse.BodyHandlers.ofByteArray())
+                    .thenAccept(response -> {
+                        JsonNode status = readTree(response.body());
+                        if (status == null) {
+                            return;
+                        }
+                        addresses.put(status.path("id").asText(), node);
+                        String hint = status.path("leader").asText(null);
+                        if (hint != null) {
+                            leaderHints.put(hint, hint);
+                        }
+                        if ("LEADER".equals(status.path("role").asText())) {
+                            leader = node;
+                            result.complete(node);
+                        }
+                    })
+                    .exceptionally(error -> null));
+        }
+        CompletableFuture.allOf(polls.toArray(new CompletableFuture[0])).whenComplete((ignored, error) -> {
+            // лидер сам не ответил, но фолловеры могли назвать его id
+            URI hinted = leaderHints.keySet().stream().map(addresses::get).filter(uri -> uri != null).findFirst().orElse(null);
+            if (hinted != null && leader == null) {
+                leader = hinted;
+            }
+            result.complete(hinted);
+        });
+        return result;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    // Команда в сессии клиента; ackedSequence — все записи до нее включительно уже получили ответ
+    private KeyValueCommand inSession(KeyValueCommand.Type type, String key, String value, long seq) {
+        return inSession(new KeyValueCommand(type, key, value), seq);
+    }
+
+    private KeyValueCommand inSession(KeyValueCommand command, long seq) {
+        outstanding.add(seq);
+        long acked = outstanding.first() - 1;
+        return command.withSession(clientId, seq, acked);
+    }
+
+    private CompletableFuture<KeyValueResult> conditional(String path, KeyValueCommand command) {
+        long seq = sequence.incrementAndGet();
+        return write(path, inSession(command, seq), List.of(seq)).thenApply(this::parseResult);
+    }
+
+    private CompletableFuture<byte[]> write(String path, Object command, List<Long> sequences) {
+        byte[] body;
+        try {
+            body = mapper.writeValueAsBytes(command);
+        } catch (IOException e) {
+            outstanding.removeAll(sequences);
+            return CompletableFuture.failedFuture(e);
+        }
+        CompletableFuture<byte[]> result = call(base -> request(base, path)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .build());
+        result.whenComplete((ignored, error) -> outstanding.removeAll(sequences));
+        return result;
+    }
+
+    private CompletableFuture<byte[]> call(Function<URI, HttpRequest> requestFor) {
+        CompletableFuture<byte[]> result = acquire().thenCompose(ignored -> attempt(requestFor, 0));
+        result.whenComplete((body, error) -> release());
+        return result;
+    }
+
+    private CompletableFuture<byte[]> attempt(Function<URI, HttpRequest> requestFor, int attempt) {
+        URI cached = leader;
+        CompletableFuture<URI> target = cached != null
+                ? CompletableFuture.completedFuture(cached)
+                : refreshLeader().thenApply(uri -> uri != null ? uri : nextNode());
+        return target.thenCompose(base -> send(base, requestFor, attempt));
+    }
+
+    private CompletableFuture<byte[]> send(URI base, Function<URI, HttpRequest> requestFor, int attempt) {
+        return http.sendAsync(requestFor.apply(base), HttpResponse.BodyHandlers.ofByteArray())
+                .handle((response, error) -> {
+                    if (error != null) {
+                        // нода недоступна или не ответила вовремя: чтения идемпотентны, записи дедуплицируются
+                        // по сессии, поэтому запрос можно повторить, заново найдя лидера
+                        Throwable cause = unwrap(error);
+                        if ((cause instanceof ConnectException || cause instanceof HttpTimeoutException) && attempt + 1 < MAX_ATTEMPTS) {
+                            leader = null;
+                            return retryLater(requestFor, attempt + 1);
+                        }
+                        return CompletableFuture.<byte[]>failedFuture(unwrap(error));
+                    }
+                    if (response.statusCode() == 409 && attempt + 1 < MAX_ATTEMPTS) {
+                        redirects.incrementAndGet();
+                        if (followLeaderHint(base, response.body())) {
+                            return attempt(requestFor, attempt + 1);
+                        }
+                        return retryLater(requestFor, attempt + 1); // идут выборы — даем им завершиться
+                    }
+                    if ((response.statusCode() == 429 || response.statusCode() == 503) && attempt + 1 < MAX_ATTEMPTS) {
+                        // лидер перегружен и команду не принял или не может сейчас отдать достаточно свежее чтение:
+                        // повторяем не раньше, чем он просит
+                        JsonNode payload = readTree(response.body());
+                        long delay = payload != null ? payload.path("retryAfterMillis").asLong(RETRY_BACKOFF_MILLIS) : RETRY_BACKOFF_MILLIS;
+                        return retryAfter(requestFor, attempt + 1, delay);
+                    }
+                    if (response.statusCode() != 200) {
+                        return CompletableFuture.<byte[]>failedFuture(new KvClientException(response.statusCode(),
+                                new String(response.body(), StandardCharsets.UTF_8)));
+                    }
+                    return CompletableFuture.completedFuture(response.body());
+                })
+                .thenCompose(Function.identity());
+    }
+
+    private CompletableFuture<byte[]> retryLater(Function<URI, HttpRequest> requestFor, int attempt) {
+        return retryAfter(requestFor, attempt, RETRY_BACKOFF_MILLIS * attempt);
+    }
+
+    private CompletableFuture<byte[]> retryAfter(Function<URI, HttpRequest> requestFor, int attempt, long delayMillis) {
+        return CompletableFuture.supplyAsync(() -> null,
+                        CompletableFuture.delayedExecutor(delayMillis, TimeUnit.MILLISECONDS, executor))
+                .thenCompose(ignored -> attempt(requestFor, attempt));
+    }
+
+    // Обновляет кэш лидера по подсказке из 409; false — подсказки нет, лидер еще не выбран
+    private boolean followLeaderHint(URI rejectedBy, byte[] body) {
+        JsonNode payload = readTree(body);
+        String hint = payload != null ? payload.path("leader").asText(null) : null;
+        URI hinted = hint != null ? addresses.get(hint) : null;
+        if (hinted != null && !hinted.equals(rejectedBy)) {
+            leader = hinted;
+            return true;
+        }
+        leader = null;
+        return false;
+    }
+
+    private KeyValueResult parseResult(byte[] body) {
+        try {
+            return mapper.readValue(body, KeyValueResult.class);
+        } catch (IOException e) {
+            // state machine возвращает текст "error:..." при ошибке применения команды
+            throw new KvClientException(200, new String(body, StandardCharsets.UTF_8));
+        }
+    }
+
+    private JsonNode readTree(byte[] body) {
+        try {
+            return mapper.readTree(body);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private HttpRequest.Builder request(URI base, String path) {
+        return HttpRequest.newBuilder(base.resolve(path)).timeout(requestTimeout);
+    }
+
+    private URI nextNode() {
+        return nodes.get(Math.floorMod(roundRobin.getAndIncrement(), nodes.size()));
+    }
+
+    private CompletableFuture<Void> acquire() {
+        if (permits.tryAcquire()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Void> waiter = new CompletableFuture<>();
+        waiting.add(waiter);
+        drain(); // разрешение могло освободиться, пока ставились в очередь
+        return waiter;
+    }
+
+    private void release() {
+        permits.release();
+        drain();
+    }
+
+    private void drain() {
+        while (!waiting.isEmpty() && permits.tryAcquire()) {
+            CompletableFuture<Void> next = waiting.poll();
+            if (next == null) {
+                permits.release();
+                continue;
+            }
+            executor.execute(() -> next.complete(null));
+        }
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        Throwable current = error;
+        while (current instanceof CompletionException && current.getCause() != null) {
+            current = current.getCause();
+        }
+        return current;
+    }
+}
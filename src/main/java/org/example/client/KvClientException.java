@@ -0,0 +1,18 @@
+package org.example.client;
+
+/**
+ * Ошибка выполнения запроса KvClient: сервер ответил ошибкой или лидер не найден.
+ */
+public final class KvClientException extends RuntimeException {
+    private final int status;
+
+    public KvClientException(int status, String message) {
+        super(message);
+        this.status = status;
+    }
+
+    // HTTP-статус ответа, 0 — если ответа не было
+    public int getStatus() {
+        return status;
+    }
+}
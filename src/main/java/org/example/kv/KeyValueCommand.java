@@ -1,27 +1,73 @@
 package org.example.kv;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
-// Команды (PUT/DELETE/GET)
+// Команды (PUT/DELETE/GET и условные записи). Условные записи проверяют и меняют ключ за одно применение
+// из лога: без отдельного чтения перед записью и без гонок между клиентами
 public final class KeyValueCommand {
     public enum Type {
         PUT,
         DELETE,
-        GET
+        GET,
+        CAS, // запись value, если текущее значение равно expectedValue и/или версия равна expectedVersion
+        INCREMENT, // прибавить к целому значению ключа value (по умолчанию 1); нет ключа — считается 0
+        PUT_IF_ABSENT // запись value, только если ключа нет
     }
 
     private final Type type;
     private final String key;
     private final String value;
+    // Клиентская сессия: повтор команды с тем же (clientId, sequence) возвращает сохраненный результат
+    private final String clientId;
+    private final long sequence;
+    private final long ackedSequence; // клиент получил ответы на все команды с sequence <= ackedSequence
+    private final long timestamp; // время приема команды лидером/фолловером, по нему истекают сессии
+    // Условия CAS: null — не проверяется; версия — индекс лога последней записи ключа, 0 — ключа нет
+    private final String expectedValue;
+    private final Long expectedVersion;
+
+    public KeyValueCommand(Type type, String key, String value) {
+        this(type, key, value, null, 0, 0, 0);
+    }
+
+    public KeyValueCommand(Type type, String key, String value, String clientId, long sequence, long ackedSequence, long timestamp) {
+        this(type, key, value, clientId, sequence, ackedSequence, timestamp, null, null);
+    }
 
     @JsonCreator
     public KeyValueCommand(@JsonProperty("type") Type type,
                            @JsonProperty("key") String key,
-                           @JsonProperty("value") String value) {
+                           @JsonProperty("value") String value,
+                           @JsonProperty("clientId") String clientId,
+                           @JsonProperty("sequence") long sequence,
+                           @JsonProperty("ackedSequence") long ackedSequence,
+                           @JsonProperty("timestamp") long timestamp,
+                           @JsonProperty("expectedValue") String expectedValue,
+                           @JsonProperty("expectedVersion") Long expectedVersion) {
         this.type = type;
         this.key = key;
         this.value = value;
+        this.clientId = clientId;
+        this.sequence = sequence;
+        this.ackedSequence = ackedSequence;
+        this.timestamp = timestamp;
+        this.expectedValue = expectedValue;
+        this.expectedVersion = expectedVersion;
+    }
+
+    // Любое из условий можно не задавать (null), но хотя бы одно нужно
+    public static KeyValueCommand compareAndSet(String key, String expectedValue, Long expectedVersion, String value) {
+        return new KeyValueCommand(Type.CAS, key, value, null, 0, 0, 0, expectedValue, expectedVersion);
+    }
+
+    public static KeyValueCommand increment(String key, long delta) {
+        return new KeyValueCommand(Type.INCREMENT, key, Long.toString(delta));
+    }
+
+    public static KeyValueCommand putIfAbsent(String key, String value) {
+        return new KeyValueCommand(Type.PUT_IF_ABSENT, key, value);
     }
 
     public Type getType() {
@@ -35,6 +81,44 @@ public final class KeyValueCommand {
     public String getValue() {
         return value;
     }
-}
 
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public String getClientId() {
+        return clientId;
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_DEFAULT)
+    public long getSequence() {
+        return sequence;
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_DEFAULT)
+    public long getAckedSequence() {
+        return ackedSequence;
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_DEFAULT)
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public String getExpectedValue() {
+        return expectedValue;
+    }
 
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public Long getExpectedVersion() {
+        return expectedVersion;
+    }
+
+    // Та же команда с другим типом и временем приема — так сервер строит команду из тела запроса
+    public KeyValueCommand withTypeAndTimestamp(Type newType, long newTimestamp) {
+        return new KeyValueCommand(newType, key, value, clientId, sequence, ackedSequence, newTimestamp, expectedValue, expectedVersion);
+    }
+
+    // Та же команда в клиентской сессии
+    public KeyValueCommand withSession(String newClientId, long newSequence, long newAckedSequence) {
+        return new KeyValueCommand(type, key, value, newClientId, newSequence, newAckedSequence, timestamp, expectedValue, expectedVersion);
+    }
+}
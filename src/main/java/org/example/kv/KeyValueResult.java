@@ -1,21 +1,43 @@
 package org.example.kv;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
-// Результаты операций
+import java.nio.charset.StandardCharsets;
+
+// Результаты операций. version — индекс лога последней записи ключа (0 — ключа нет): его можно передать
+// в expectedVersion следующего CAS
 public final class KeyValueResult {
+    // Тот же JSON, что дает Jackson для результата, собранный из заранее закодированного значения
+    private static final byte[] FOUND_PREFIX = "{\"success\":true,\"value\":".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] FAILED_PREFIX = "{\"success\":false,\"value\":".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] NULL_VALUE = "null".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] VERSION = ",\"version\":".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] OK = messageField("OK");
+    private static final byte[] PUT_APPLIED = messageField("PUT applied");
+    private static final byte[] DELETE_APPLIED = messageField("DELETE applied");
+    private static final byte[] MISSING = "{\"success\":false,\"value\":null,\"message\":\"Key missing\"}"
+            .getBytes(StandardCharsets.UTF_8);
+
     private final boolean success;
     private final String value;
     private final String message;
+    private final long version;
+
+    public KeyValueResult(boolean success, String value, String message) {
+        this(success, value, message, 0);
+    }
 
     @JsonCreator
     public KeyValueResult(@JsonProperty("success") boolean success,
                           @JsonProperty("value") String value,
-                          @JsonProperty("message") String message) {
+                          @JsonProperty("message") String message,
+                          @JsonProperty("version") long version) {
         this.success = success;
         this.value = value;
         this.message = message;
+        this.version = version;
     }
 
     public boolean isSuccess() {
@@ -29,6 +51,79 @@ public final class KeyValueResult {
     public String getMessage() {
         return message;
     }
-}
 
+    @JsonInclude(JsonInclude.Include.NON_DEFAULT)
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Результат GET без Jackson.
+     *
+     * @param encodedValue значение, уже закодированное как JSON-строка (с кавычками), или null
+     */
+    public static byte[] encodeGet(byte[] encodedValue) {
+        return encodeGet(encodedValue, 0);
+    }
+
+    // Результат GET с версией ключа; у отсутствующего ключа версии нет
+    public static byte[] encodeGet(byte[] encodedValue, long version) {
+        return encodedValue != null ? encode(true, encodedValue, OK, version) : MISSING.clone();
+    }
+
+    // Результат PUT: записанное значение, уже закодированное как JSON-строка
+    public static byte[] encodePut(byte[] encodedValue) {
+        return encodePut(encodedValue, 0);
+    }
+
+    public static byte[] encodePut(byte[] encodedValue, long version) {
+        return encode(true, encodedValue, PUT_APPLIED, version);
+    }
+
+    // Результат DELETE: удаленное значение, закодированное как JSON-строка, или null, если ключа не было
+    public static byte[] encodeDelete(byte[] removedValue) {
+        return encodeDelete(removedValue, 0);
+    }
+
+    public static byte[] encodeDelete(byte[] removedValue, long version) {
+        return removedValue != null ? encode(true, removedValue, DELETE_APPLIED, version) : MISSING.clone();
+    }
+
+    /**
+     * Результат условной записи.
+     *
+     * @param encodedValue при успехе — записанное значение, при отказе — текущее (null — ключа нет)
+     * @param message      константа без символов, требующих экранирования в JSON
+     * @param version      версия ключа после записи или текущая при отказе
+     */
+    public static byte[] encodeConditional(boolean success, byte[] encodedValue, String message, long version) {
+        return encode(success, encodedValue, messageField(message), version);
+    }
 
+    private static byte[] messageField(String message) {
+        return (",\"message\":\"" + message + "\"").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] encode(boolean success, byte[] encodedValue, byte[] messageField, long version) {
+        byte[] prefix = success ? FOUND_PREFIX : FAILED_PREFIX;
+        byte[] value = encodedValue != null ? encodedValue : NULL_VALUE;
+        byte[] versionField = version != 0 ? Long.toString(version).getBytes(StandardCharsets.UTF_8) : null;
+        int length = prefix.length + value.length + messageField.length + 1
+                + (versionField != null ? VERSION.length + versionField.length : 0);
+        byte[] result = new byte[length];
+        int position = copy(prefix, result, 0);
+        position = copy(value, result, position);
+        position = copy(messageField, result, position);
+        if (versionField != null) {
+            position = copy(VERSION, result, position);
+            position = copy(versionField, result, position);
+        }
+        result[position] = '}';
+        return result;
+    }
+
+    private static int copy(byte[] source, byte[] target, int position) {
+        System.arraycopy(source, 0, target, position, source.length);
+        return position + source.length;
+    }
+}
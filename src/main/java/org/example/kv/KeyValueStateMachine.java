@@ -1,49 +1,308 @@
 package org.example.kv;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import org.example.raft.StateMachine;
+import org.example.raft.VersionedQuery;
 import org.example.raft.util.Json;
 
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.TreeMap;
 
-// Реализация StateMachine для KV
-public final class KeyValueStateMachine implements StateMachine {
-    private final ConcurrentMap<String, String> store = new ConcurrentHashMap<>();
+// Реализация StateMachine для KV. Чтения по ключу — через StateMachineQuery: результат — значение,
+// закодированное как JSON-строка, его можно писать в ответ без Jackson.
+// Значения версионируются индексом лога (VersionedStore): чтения и обходы на одном индексе
+// согласованы и не блокируют применение новых записей
+public final class KeyValueStateMachine implements StateMachine, VersionedQuery<String, byte[]> {
+    private static final Duration DEFAULT_SESSION_TTL = Duration.ofMillis(Long.parseLong(
+            System.getProperty("kv.session.ttl", "600000")));
+    private static final long DEFAULT_RETAINED_INDEXES = Long.parseLong(System.getProperty("kv.mvcc.retain", "10000"));
+    private static final int MAX_RESULTS_PER_SESSION = 1024;
+    private static final long UNINDEXED = -1;
+
+    // Значения хранятся уже закодированными JSON-строками: кодирование один раз при PUT, а не на каждом GET
+    private final VersionedStore store;
     private final ObjectMapper mapper = Json.mapper();
+    private final ObjectReader commandReader = mapper.readerFor(KeyValueCommand.class);
+    // Сессии клиентов меняются только записями из лога, которые применяются последовательно
+    private final Map<String, Session> sessions = new HashMap<>();
+    private final long sessionTtlMillis;
+    private long lastExpiryCheck;
+
+    public KeyValueStateMachine() {
+        this(DEFAULT_SESSION_TTL);
+    }
 
+    public KeyValueStateMachine(Duration sessionTtl) {
+        this(sessionTtl, DEFAULT_RETAINED_INDEXES);
+    }
+
+    /**
+     * @param retainedIndexes на сколько индексов назад от appliedIndex доступны чтения queryAt и scan
+     */
+    public KeyValueStateMachine(Duration sessionTtl, long retainedIndexes) {
+        this.sessionTtlMillis = sessionTtl.toMillis();
+        this.store = new VersionedStore(retainedIndexes);
+    }
+
+    // Без индекса лога: GET читает опубликованное состояние и ничего не меняет (так читает
+    // RaftNode.readFromStateMachine из потоков сервера), запись получает следующий индекс
     @Override
     public byte[] apply(byte[] command) {
+        return apply(command, UNINDEXED);
+    }
+
+    @Override
+    public List<byte[]> applyBatch(List<byte[]> commands) {
+        return applyBatch(store.appliedIndex() + 1, commands);
+    }
+
+    // Версии пакета публикуются одним appliedIndex в конце: чтения видят пакет целиком или не видят вовсе
+    @Override
+    public List<byte[]> applyBatch(long firstIndex, List<byte[]> commands) {
+        List<byte[]> results = new ArrayList<>(commands.size());
+        for (int i = 0; i < commands.size(); i++) {
+            results.add(apply(commands.get(i), firstIndex + i));
+        }
+        if (!commands.isEmpty()) {
+            store.publish(firstIndex + commands.size() - 1);
+        }
+        return results;
+    }
+
+    private byte[] apply(byte[] command, long index) {
         if (command == null || command.length == 0) {
             return new byte[0];
         }
         try {
-            KeyValueCommand request = mapper.readValue(command, KeyValueCommand.class); // Десериализация JSON в команду
-            KeyValueResult result; // Результат выполнения команды
-            switch (request.getType()) {
-                case PUT:
-                    Objects.requireNonNull(request.getValue(), "value"); // Проверяем, что кладем не пустое значение
-                    store.put(request.getKey(), request.getValue()); // Кладем значение по ключу. Если ключ уже был — значение перезаписывается.
-                    result = new KeyValueResult(true, request.getValue(), "PUT applied");
-                    break;
-                case DELETE:
-                    String removed = store.remove(request.getKey()); // Удаляем значение по ключу
-                    result = new KeyValueResult(removed != null, removed, removed != null ? "DELETE applied" : "Key missing");
-                    break;
-                case GET:
-                default:
-                    String value = store.get(request.getKey()); // Берем значение по ключу
-                    result = new KeyValueResult(value != null, value, value != null ? "OK" : "Key missing");
-                    break;
-            }
-            return mapper.writeValueAsBytes(result); // Сериализация результата выполнения команды в JSON
+            KeyValueCommand request = commandReader.readValue(command); // Десериализация JSON в команду
+            if (request.getType() == KeyValueCommand.Type.GET) {
+                return encodeGet(index == UNINDEXED ? store.find(request.getKey()) : store.latest(request.getKey()));
+            }
+            boolean publish = index == UNINDEXED;
+            if (publish) {
+                index = store.appliedIndex() + 1;
+            }
+            try {
+                if (request.getClientId() == null || request.getSequence() == 0) {
+                    return execute(request, index);
+                }
+                return applyInSession(request, index);
+            } finally {
+                if (publish) {
+                    store.publish(index);
+                }
+            }
         } catch (Exception e) {
             String message = e.getMessage();
             return ("error:" + (message != null ? message : "null")).getBytes(StandardCharsets.UTF_8);
         }
     }
-}
 
+    @Override
+    public byte[] query(String key) {
+        return store.get(key);
+    }
+
+    // Все ключи читаются из одного снимка, даже если между ними применяются новые записи
+    @Override
+    public List<byte[]> queryAll(List<String> keys) {
+        try (VersionedStore.Snapshot snapshot = store.snapshot()) {
+            return queryAll(snapshot, keys);
+        }
+    }
+
+    @Override
+    public long appliedIndex() {
+        return store.appliedIndex();
+    }
+
+    @Override
+    public byte[] queryAt(String key, long index) {
+        return store.get(key, index);
+    }
+
+    @Override
+    public long versionAt(String key, long index) {
+        return versionOf(store.find(key, index));
+    }
+
+    // Одно чтение цепочки версий ключа: значение и версия всегда из одной записи
+    @Override
+    public Map.Entry<Long, byte[]> queryLatest(String key) {
+        VersionedStore.Version version = store.find(key);
+        return version != null ? Map.entry(version.getIndex(), version.getValue()) : null;
+    }
+
+    @Override
+    public List<byte[]> queryAllAt(List<String> keys, long index) {
+        try (VersionedStore.Snapshot snapshot = store.snapshot(index)) {
+            return queryAll(snapshot, keys);
+        }
+    }
+
+    @Override
+    public List<Map.Entry<String, byte[]>> scan(String fromKey, String toKey, int limit, long index) {
+        try (VersionedStore.Snapshot snapshot = store.snapshot(index)) {
+            List<Map.Entry<String, byte[]>> entries = new ArrayList<>(Math.min(limit, 1024));
+            Iterator<Map.Entry<String, byte[]>> iterator = snapshot.scan(fromKey, toKey);
+            while (entries.size() < limit && iterator.hasNext()) {
+                entries.add(iterator.next());
+            }
+            return entries;
+        }
+    }
+
+    /**
+     * Снимок текущего состояния для долгого обхода (экспорт, бэкап) параллельно с записью.
+     * Пока снимок открыт, версии, которые он видит, не удаляются: его нужно закрыть.
+     */
+    public VersionedStore.Snapshot snapshot() {
+        return store.snapshot();
+    }
+
+    private static List<byte[]> queryAll(VersionedStore.Snapshot snapshot, List<String> keys) {
+        List<byte[]> results = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            results.add(snapshot.get(key));
+        }
+        return results;
+    }
+
+    int sessionCount() {
+        return sessions.size();
+    }
+
+    // Дедупликация: повтор команды с тем же sequence возвращает сохраненный результат без повторного выполнения
+    private byte[] applyInSession(KeyValueCommand request, long index) throws Exception {
+        expireSessions(request.getTimestamp());
+        Session session = sessions.computeIfAbsent(request.getClientId(), id -> new Session());
+        session.lastActive = Math.max(session.lastActive, request.getTimestamp());
+        byte[] cached = session.results.get(request.getSequence());
+        if (cached != null) {
+            return cached;
+        }
+        if (request.getSequence() <= session.ackedSequence) {
+            // клиент уже получил ответ на эту команду, а результат удален — это запоздавший дубликат
+            return mapper.writeValueAsBytes(new KeyValueResult(false, null, "Stale sequence"));
+        }
+        session.acknowledge(request.getAckedSequence());
+        byte[] result = execute(request, index);
+        session.results.put(request.getSequence(), result);
+        if (session.results.size() > MAX_RESULTS_PER_SESSION) {
+            session.acknowledge(session.results.firstKey());
+        }
+        return result;
+    }
+
+    // Время берется из команд лога, поэтому все реплики удаляют одни и те же сессии
+    private void expireSessions(long now) {
+        if (now == 0 || now - lastExpiryCheck < sessionTtlMillis / 4) {
+            return;
+        }
+        lastExpiryCheck = now;
+        Iterator<Session> iterator = sessions.values().iterator();
+        while (iterator.hasNext()) {
+            if (now - iterator.next().lastActive > sessionTtlMillis) {
+                iterator.remove();
+            }
+        }
+    }
+
+    // Результаты собираются из уже закодированного значения, без Jackson; изменения — версии с индексом index.
+    // Условные записи проверяют последнюю версию ключа и пишут в том же применении, поэтому атомарны
+    private byte[] execute(KeyValueCommand request, long index) throws Exception {
+        String key = request.getKey();
+        switch (request.getType()) {
+            case PUT:
+                return put(key, encodeValue(request), index);
+            case DELETE:
+                // Удаляем значение по ключу
+                return KeyValueResult.encodeDelete(store.remove(key, index), index);
+            case CAS: {
+                if (request.getExpectedValue() == null && request.getExpectedVersion() == null) {
+                    throw new IllegalArgumentException("CAS needs expectedValue or expectedVersion");
+                }
+                byte[] encoded = encodeValue(request);
+                VersionedStore.Version current = store.latest(key);
+                boolean matches = (request.getExpectedVersion() == null || request.getExpectedVersion() == versionOf(current))
+                        && (request.getExpectedValue() == null || current != null
+                        && Arrays.equals(current.getValue(), mapper.writeValueAsBytes(request.getExpectedValue())));
+                return matches ? applied(key, encoded, "CAS applied", index) : rejected(current, "CAS failed");
+            }
+            case PUT_IF_ABSENT: {
+                byte[] encoded = encodeValue(request);
+                VersionedStore.Version current = store.latest(key);
+                return current == null ? applied(key, encoded, "PUT applied", index) : rejected(current, "Key exists");
+            }
+            case INCREMENT: {
+                long delta = request.getValue() != null ? Long.parseLong(request.getValue().trim()) : 1;
+                VersionedStore.Version current = store.latest(key);
+                long value;
+                try {
+                    value = current != null ? Long.parseLong(mapper.readValue(current.getValue(), String.class).trim()) : 0;
+                } catch (NumberFormatException e) {
+                    return rejected(current, "Value is not an integer");
+                }
+                byte[] encoded = mapper.writeValueAsBytes(Long.toString(Math.addExact(value, delta)));
+                return applied(key, encoded, "INCREMENT applied", index);
+            }
+            case GET:
+            default:
+                // Берем значение по ключу
+                return encodeGet(store.latest(key));
+        }
+    }
+
+    private byte[] encodeValue(KeyValueCommand request) throws Exception {
+        Objects.requireNonNull(request.getValue(), "value"); // Проверяем, что кладем не пустое значение
+        return mapper.writeValueAsBytes(request.getValue());
+    }
+
+    // Новая версия ключа; предыдущая остается для чтений на старых индексах
+    private byte[] put(String key, byte[] encoded, long index) {
+        store.put(key, encoded, index);
+        return KeyValueResult.encodePut(encoded, index);
+    }
+
+    private byte[] applied(String key, byte[] encoded, String message, long index) {
+        store.put(key, encoded, index);
+        return KeyValueResult.encodeConditional(true, encoded, message, index);
+    }
 
+    // Отказ условной записи: текущие значение и версия, с ними клиент может сразу повторить CAS без чтения
+    private static byte[] rejected(VersionedStore.Version current, String message) {
+        return KeyValueResult.encodeConditional(false, current != null ? current.getValue() : null, message, versionOf(current));
+    }
+
+    private static byte[] encodeGet(VersionedStore.Version version) {
+        return version != null ? KeyValueResult.encodeGet(version.getValue(), version.getIndex()) : KeyValueResult.encodeGet(null);
+    }
+
+    private static long versionOf(VersionedStore.Version version) {
+        return version != null ? version.getIndex() : 0;
+    }
+
+    private static final class Session {
+        private final TreeMap<Long, byte[]> results = new TreeMap<>(); // sequence -> результат
+        private long ackedSequence;
+        private long lastActive;
+
+        // Результаты, полученные клиентом, больше не нужны
+        void acknowledge(long sequence) {
+            if (sequence <= ackedSequence) {
+                return;
+            }
+            ackedSequence = sequence;
+            results.headMap(sequence, true).clear();
+        }
+    }
+}
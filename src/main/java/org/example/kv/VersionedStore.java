@@ -0,0 +1,280 @@
+package org.example.kv;
+
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Многоверсионное хранилище: у каждого ключа цепочка версий от новой к старой, версия помечена
+ * индексом записи лога, которая ее создала. Читатели без блокировок видят состояние на любом индексе
+ * не ниже lowWatermark; пишет один поток (применение лога).
+ *
+ * Версии ниже lowWatermark удаляются: от каждой цепочки остается последняя версия не новее watermark.
+ * Watermark — appliedIndex минус сохраняемая история, но не выше самого старого открытого Snapshot.
+ */
+public final class VersionedStore {
+    private final ConcurrentSkipListMap<String, Version> keys = new ConcurrentSkipListMap<>(); // ключ -> новейшая версия
+    private final long retainedIndexes;
+    // Ключи, у которых появилась более старая версия, в порядке индекса перезаписи; только поток записи
+    private final ArrayDeque<Overwrite> overwrites = new ArrayDeque<>();
+    private final TreeMap<Long, Integer> openSnapshots = new TreeMap<>(); // индекс -> число открытых снимков
+    private volatile long appliedIndex; // последний индекс, видимый читателям
+    private volatile long lowWatermark; // читать можно только на индексах не ниже
+
+    public VersionedStore(long retainedIndexes) {
+        this.retainedIndexes = retainedIndexes;
+    }
+
+    public long appliedIndex() {
+        return appliedIndex;
+    }
+
+    public long lowWatermark() {
+        return lowWatermark;
+    }
+
+    // Значение на последнем опубликованном индексе; null — ключа нет
+    public byte[] get(String key) {
+        Version version = find(key);
+        return version != null ? version.value : null;
+    }
+
+    // Значение на индексе index; null — ключа нет. Индекс вне [lowWatermark, appliedIndex] — IllegalArgumentException
+    public byte[] get(String key, long index) {
+        Version version = find(key, index);
+        return version != null ? version.value : null;
+    }
+
+    // Версия ключа, видимая на последнем опубликованном индексе; null — ключа нет
+    public Version find(String key) {
+        while (true) {
+            long index = appliedIndex;
+            Version version = visible(keys.get(key), index);
+            if (index >= lowWatermark) {
+                return version;
+            }
+            // пока читали, запись ушла вперед и версии на index удалены: читаем на новом индексе
+        }
+    }
+
+    // Версия ключа, видимая на индексе index; null — ключа нет
+    public Version find(String key, long index) {
+        checkReadable(index);
+        Version version = visible(keys.get(key), index);
+        // версии могли удалить во время чтения: результат верен, только если watermark не обогнал индекс
+        checkReadable(index);
+        return version;
+    }
+
+    // Снимок на текущем appliedIndex: пока он открыт, нужные ему версии не удаляются
+    public Snapshot snapshot() {
+        synchronized (openSnapshots) {
+            return pin(appliedIndex);
+        }
+    }
+
+    // Снимок на индексе из [lowWatermark, appliedIndex], например продолжение постраничного обхода
+    public Snapshot snapshot(long index) {
+        synchronized (openSnapshots) {
+            checkReadable(index);
+            return pin(index);
+        }
+    }
+
+    private Snapshot pin(long index) {
+        openSnapshots.merge(index, 1, Integer::sum);
+        return new Snapshot(index);
+    }
+
+    // ---- запись: только поток применения лога ----
+
+    // Последняя записанная версия, включая еще не опубликованные версии текущего пакета; null — ключа нет
+    Version latest(String key) {
+        Version head = keys.get(key);
+        return head != null && head.value != null ? head : null;
+    }
+
+    void put(String key, byte[] value, long index) {
+        Version head = keys.get(key);
+        keys.put(key, new Version(index, value, head));
+        if (head != null) {
+            overwrites.add(new Overwrite(index, key));
+        }
+    }
+
+    // Удаление — версия-надгробие; возвращает удаленное значение или null, если ключа не было
+    byte[] remove(String key, long index) {
+        Version head = keys.get(key);
+        if (head == null || head.value == null) {
+            return null;
+        }
+        keys.put(key, new Version(index, null, head));
+        overwrites.add(new Overwrite(index, key));
+        return head.value;
+    }
+
+    // Делает видимыми версии до index включительно и удаляет версии ниже нового watermark
+    void publish(long index) {
+        appliedIndex = index;
+        long watermark;
+        synchronized (openSnapshots) {
+            watermark = Math.max(0, index - retainedIndexes);
+            if (!openSnapshots.isEmpty()) {
+                watermark = Math.min(watermark, openSnapshots.firstKey());
+            }
+            watermark = Math.max(lowWatermark, watermark);
+            lowWatermark = watermark;
+        }
+        while (!overwrites.isEmpty() && overwrites.peekFirst().index <= watermark) {
+            prune(overwrites.pollFirst().key, watermark);
+        }
+    }
+
+    private void prune(String key, long watermark) {
+        Version head = keys.get(key);
+        Version version = head;
+        while (version != null && version.index > watermark) {
+            version = version.older;
+        }
+        if (version == null) {
+            return;
+        }
+        version.older = null; // более старые версии не видны ни на одном допустимом индексе
+        if (version == head && version.value == null) {
+            keys.remove(key, head); // удаленный ключ, которого не видит ни один читатель
+        }
+    }
+
+    private void checkReadable(long index) {
+        if (index < lowWatermark) {
+            throw new IllegalArgumentException("Index " + index + " is below retained history " + lowWatermark);
+        }
+        if (index > appliedIndex) {
+            throw new IllegalArgumentException("Index " + index + " is not applied yet, applied " + appliedIndex);
+        }
+    }
+
+    // Новейшая версия не новее index; надгробие — null
+    private static Version visible(Version version, long index) {
+        while (version != null && version.index > index) {
+            version = version.older;
+        }
+        return version != null && version.value != null ? version : null;
+    }
+
+    /**
+     * Согласованное состояние на одном индексе: чтения и обход не блокируют запись и не видят
+     * ее результатов. Снимок нужно закрыть, иначе старые версии не будут удаляться.
+     */
+    public final class Snapshot implements AutoCloseable {
+        private final long index;
+        private boolean closed;
+
+        private Snapshot(long index) {
+            this.index = index;
+        }
+
+        public long index() {
+            return index;
+        }
+
+        public byte[] get(String key) {
+            Version version = find(key);
+            return version != null ? version.value : null;
+        }
+
+        public Version find(String key) {
+            return visible(keys.get(key), index);
+        }
+
+        // Пары ключ-значение в порядке ключей из [fromKey, toKey); null — без границы
+        public Iterator<Map.Entry<String, byte[]>> scan(String fromKey, String toKey) {
+            NavigableMap<String, Version> range = keys;
+            if (fromKey != null && toKey != null) {
+                range = keys.subMap(fromKey, true, toKey, false);
+            } else if (fromKey != null) {
+                range = keys.tailMap(fromKey, true);
+            } else if (toKey != null) {
+                range = keys.headMap(toKey, false);
+            }
+            Iterator<Map.Entry<String, Version>> entries = ((ConcurrentNavigableMap<String, Version>) range).entrySet().iterator();
+            return new Iterator<>() {
+                private Map.Entry<String, byte[]> next = advance();
+
+                private Map.Entry<String, byte[]> advance() {
+                    while (entries.hasNext()) {
+                        Map.Entry<String, Version> entry = entries.next();
+                        Version version = visible(entry.getValue(), index);
+                        if (version != null) {
+                            return new AbstractMap.SimpleImmutableEntry<>(entry.getKey(), version.value);
+                        }
+                    }
+                    return null;
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return next != null;
+                }
+
+                @Override
+                public Map.Entry<String, byte[]> next() {
+                    if (next == null) {
+                        throw new NoSuchElementException();
+                    }
+                    Map.Entry<String, byte[]> current = next;
+                    next = advance();
+                    return current;
+                }
+            };
+        }
+
+        @Override
+        public void close() {
+            synchronized (openSnapshots) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                openSnapshots.computeIfPresent(index, (key, count) -> count > 1 ? count - 1 : null);
+            }
+        }
+    }
+
+    // Значение ключа, записанное записью лога index; index и есть версия ключа для CAS
+    public static final class Version {
+        private final long index;
+        private final byte[] value; // null — ключ удален
+        private volatile Version older;
+
+        private Version(long index, byte[] value, Version older) {
+            this.index = index;
+            this.value = value;
+            this.older = older;
+        }
+
+        public long getIndex() {
+            return index;
+        }
+
+        public byte[] getValue() {
+            return value;
+        }
+    }
+
+    private static final class Overwrite {
+        private final long index;
+        private final String key;
+
+        private Overwrite(long index, String key) {
+            this.index = index;
+            this.key = key;
+        }
+    }
+}
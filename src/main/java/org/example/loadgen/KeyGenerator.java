@@ -0,0 +1,135 @@
+package org.example.loadgen;
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Распределения ключей для генератора нагрузки: uniform, zipfian и hotspot.
+ * Генератор не хранит состояния: случайность берется из переданного Random, поэтому с одним seed
+ * последовательность ключей повторяется, а без него потоки берут ThreadLocalRandom и не делят его.
+ */
+public abstract class KeyGenerator {
+    protected final int keyCount;
+
+    protected KeyGenerator(int keyCount) {
+        if (keyCount <= 0) {
+            throw new IllegalArgumentException("keyCount must be positive");
+        }
+        this.keyCount = keyCount;
+    }
+
+    /**
+     * @param name  uniform | zipfian | hotspot
+     * @param theta параметр распределения Ципфа (обычно 0.99)
+     * @param hotKeysFraction доля "горячих" ключей для hotspot
+     * @param hotOpsFraction  доля операций, приходящихся на горячие ключи
+     */
+    public static KeyGenerator create(String name, int keyCount, double theta, double hotKeysFraction, double hotOpsFraction) {
+        switch (name) {
+            case "uniform":
+                return new Uniform(keyCount);
+            case "zipfian":
+                return new Zipfian(keyCount, theta);
+            case "hotspot":
+                return new Hotspot(keyCount, hotKeysFraction, hotOpsFraction);
+            default:
+                throw new IllegalArgumentException("Unknown key distribution " + name);
+        }
+    }
+
+    public String nextKey() {
+        return nextKey(ThreadLocalRandom.current());
+    }
+
+    public String nextKey(Random random) {
+        return "key" + nextIndex(random);
+    }
+
+    public int nextIndex() {
+        return nextIndex(ThreadLocalRandom.current());
+    }
+
+    // Номер ключа в диапазоне [0, keyCount)
+    public abstract int nextIndex(Random random);
+
+    static final class Uniform extends KeyGenerator {
+        Uniform(int keyCount) {
+            super(keyCount);
+        }
+
+        @Override
+        public int nextIndex(Random random) {
+            return random.nextInt(keyCount);
+        }
+    }
+
+    // Алгоритм Грея и др. ("Quickly generating billion-record synthetic databases"), как в YCSB.
+    // Ранги перемешиваются хешем, чтобы популярные ключи не шли подряд
+    static final class Zipfian extends KeyGenerator {
+        private final double theta;
+        private final double alpha;
+        private final double zetaN;
+        private final double eta;
+
+        Zipfian(int keyCount, double theta) {
+            super(keyCount);
+            this.theta = theta;
+            this.alpha = 1.0 / (1.0 - theta);
+            this.zetaN = zeta(keyCount, theta);
+            double zeta2 = zeta(2, theta);
+            this.eta = (1 - Math.pow(2.0 / keyCount, 1 - theta)) / (1 - zeta2 / zetaN);
+        }
+
+        private static double zeta(int n, double theta) {
+            double sum = 0;
+            for (int i = 1; i <= n; i++) {
+                sum += 1 / Math.pow(i, theta);
+            }
+            return sum;
+        }
+
+        @Override
+        public int nextIndex(Random random) {
+            double u = random.nextDouble();
+            double uz = u * zetaN;
+            int rank;
+            if (uz < 1.0) {
+                rank = 0;
+            } else if (uz < 1.0 + Math.pow(0.5, theta)) {
+                rank = 1;
+            } else {
+                rank = (int) (keyCount * Math.pow(eta * u - eta + 1, alpha));
+            }
+            return (int) Math.floorMod(fnv(Math.min(rank, keyCount - 1)), (long) keyCount);
+        }
+
+        private static long fnv(long value) {
+            long hash = 0xCBF29CE484222325L;
+            for (int i = 0; i < 8; i++) {
+                hash ^= value & 0xFF;
+                hash *= 0x100000001B3L;
+                value >>>= 8;
+            }
+            return hash;
+        }
+    }
+
+    static final class Hotspot extends KeyGenerator {
+        private final int hotKeys;
+        private final double hotOpsFraction;
+
+        Hotspot(int keyCount, double hotKeysFraction, double hotOpsFraction) {
+            super(keyCount);
+            this.hotKeys = Math.max(1, Math.min(keyCount, (int) (keyCount * hotKeysFraction)));
+            this.hotOpsFraction = hotOpsFraction;
+        }
+
+        @Override
+        public int nextIndex(Random random) {
+            if (hotKeys == keyCount || random.nextDouble() < hotOpsFraction) {
+                return random.nextInt(hotKeys);
+            }
+            return hotKeys + random.nextInt(keyCount - hotKeys);
+        }
+    }
+}
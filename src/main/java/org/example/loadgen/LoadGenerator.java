@@ -0,0 +1,292 @@
+package org.example.loadgen;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.example.client.KvClient;
+import org.example.kv.KeyValueResult;
+import org.example.raft.util.Json;
+
+import java.io.File;
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Генератор нагрузки на /kv API кластера.
+ *
+ * Режимы:
+ * - closed: N потоков, каждый ждет ответа перед следующим запросом. С --rate потоки идут по расписанию
+ *   (как wrk2), латентность считается от запланированного момента; без --rate задержки корректируются
+ *   через recordValueWithExpectedInterval по средней латентности прогрева;
+ * - open: запросы отправляются с постоянной частотой независимо от ответов, латентность от запланированного момента.
+ *   При исчерпании --max-in-flight прибытие ждет места, а не отбрасывается; ошибки и прибытия, не отправленные
+ *   до конца фазы (dropped), входят в гистограммы нижней оценкой латентности.
+ *
+ * java -cp kv_raft.jar org.example.loadgen.LoadGenerator --targets 127.0.0.1:9001,127.0.0.1:9002 \
+ *      --mode open --rate 2000 --duration 30 --distribution zipfian --read-ratio 0.9 --value-size 256
+ */
+public final class LoadGenerator {
+    private final KvClient client;
+    private final KeyGenerator keys;
+    private final String mode;
+    private final int concurrency;
+    private final int rate; // 0 — без ограничения (только для closed)
+    private final int maxInFlight;
+    private final Duration warmup;
+    private final Duration duration;
+    private final double readRatio;
+    private final String value;
+
+    private final Stats warmupStats = new Stats(0);
+    private Stats stats;
+
+    private LoadGenerator(Map<String, String> params) {
+        List<URI> targets = new ArrayList<>();
+        for (String target : params.getOrDefault("targets", "127.0.0.1:9001").split(",")) {
+            targets.add(URI.create("http://" + target.trim()));
+        }
+        this.client = new KvClient(targets,
+                Duration.ofMillis(Long.parseLong(params.getOrDefault("timeout-ms", "10000"))),
+                Integer.parseInt(params.getOrDefault("max-in-flight", "10000")));
+        this.keys = KeyGenerator.create(params.getOrDefault("distribution", "uniform"),
+                Integer.parseInt(params.getOrDefault("keys", "100000")),
+                Double.parseDouble(params.getOrDefault("zipf-theta", "0.99")),
+                Double.parseDouble(params.getOrDefault("hot-keys", "0.2")),
+                Double.parseDouble(params.getOrDefault("hot-ops", "0.8")));
+        this.mode = params.getOrDefault("mode", "closed");
+        this.concurrency = Integer.parseInt(params.getOrDefault("concurrency", "16"));
+        this.rate = Integer.parseInt(params.getOrDefault("rate", "0"));
+        this.maxInFlight = Integer.parseInt(params.getOrDefault("max-in-flight", "10000"));
+        this.warmup = Duration.ofSeconds(Long.parseLong(params.getOrDefault("warmup", "5")));
+        this.duration = Duration.ofSeconds(Long.parseLong(params.getOrDefault("duration", "30")));
+        this.readRatio = Double.parseDouble(params.getOrDefault("read-ratio", "0.5"));
+        this.value = "v".repeat(Integer.parseInt(params.getOrDefault("value-size", "128")));
+        if ("open".equals(mode) && rate <= 0) {
+            throw new IllegalArgumentException("--rate is required for open mode");
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> params = parseArgs(args);
+        LoadGenerator generator = new LoadGenerator(params);
+        generator.client.refreshLeader().join();
+        Map<String, Object> report = generator.run();
+        generator.client.close();
+        String output = params.get("json");
+        if (output != null) {
+            Json.mapper().writerWithDefaultPrettyPrinter().writeValue(new File(output), report);
+        }
+    }
+
+    private Map<String, Object> run() throws InterruptedException {
+        runPhase(warmup, warmupStats);
+        // ожидаемый интервал для коррекции closed-режима без расписания — средняя латентность прогрева
+        long expectedIntervalMicros = rate > 0 ? 0 : (long) warmupStats.all.getMean();
+        stats = new Stats(expectedIntervalMicros);
+        long redirectsBefore = client.getRedirectCount();
+        long started = System.nanoTime();
+        runPhase(duration, stats);
+        double seconds = (System.nanoTime() - started) / 1e9;
+        stats.redirects.set(client.getRedirectCount() - redirectsBefore);
+        return stats.report(mode, seconds);
+    }
+
+    private void runPhase(Duration length, Stats target) throws InterruptedException {
+        if (length.isZero()) {
+            return;
+        }
+        if ("open".equals(mode)) {
+            runOpen(length, target);
+        } else {
+            runClosed(length, target);
+        }
+    }
+
+    private void runClosed(Duration length, Stats target) throws InterruptedException {
+        long end = System.nanoTime() + length.toNanos();
+        long interval = rate > 0 ? TimeUnit.SECONDS.toNanos(1) * concurrency / rate : 0;
+        List<Thread> workers = new ArrayList<>(concurrency);
+        for (int w = 0; w < concurrency; w++) {
+            long offset = interval * w / concurrency;
+            Thread worker = new Thread(() -> {
+                long intended = System.nanoTime() + offset;
+                while (intended < end) {
+                    if (interval > 0) {
+                        long wait = intended - System.nanoTime();
+                        if (wait > 0) {
+                            LockSupport.parkNanos(wait);
+                        }
+                    } else {
+                        intended = System.nanoTime();
+                    }
+                    long start = intended;
+                    boolean read = nextIsRead();
+                    try {
+                        nextOperation(read).get();
+                        target.record(read, start, interval == 0);
+                    } catch (Exception e) {
+                        target.recordError(read, start);
+                    }
+                    intended = interval > 0 ? intended + interval : System.nanoTime();
+                }
+            }, "loadgen-" + w);
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+    }
+
+    // Прибытия идут по расписанию. Если клиент уперся в --max-in-flight, очередное прибытие ждет свободного места,
+    // а латентность все равно считается от intended: задержка из-за перегрузки попадает в гистограммы, а не теряется.
+    // Прибытия, так и не отправленные до конца фазы, и ошибки записываются нижней оценкой — временем от intended
+    private void runOpen(Duration length, Stats target) throws InterruptedException {
+        long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+        long start = System.nanoTime();
+        long end = start + length.toNanos();
+        Semaphore inFlight = new Semaphore(maxInFlight);
+        for (long i = 0; ; i++) {
+            long intended = start + i * interval;
+            if (intended >= end) {
+                break;
+            }
+            long wait = intended - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            if (!inFlight.tryAcquire() && !inFlight.tryAcquire(Math.max(0, end - System.nanoTime()), TimeUnit.NANOSECONDS)) {
+                // фаза закончилась, а место так и не освободилось: это и все оставшиеся по расписанию прибытия не отправлены
+                for (long missed = intended; missed < end; missed += interval) {
+                    target.recordDropped(nextIsRead(), missed);
+                }
+                break;
+            }
+            boolean read = nextIsRead();
+            nextOperation(read).whenComplete((result, error) -> {
+                inFlight.release();
+                if (error != null) {
+                    target.recordError(read, intended);
+                } else {
+                    target.record(read, intended, false);
+                }
+            });
+        }
+        inFlight.acquire(maxInFlight); // дожидаемся ответов на уже отправленные запросы
+        inFlight.release(maxInFlight);
+    }
+
+    private boolean nextIsRead() {
+        return ThreadLocalRandom.current().nextDouble() < readRatio;
+    }
+
+    private CompletableFuture<KeyValueResult> nextOperation(boolean read) {
+        String key = keys.nextKey();
+        return read ? client.get(key) : client.put(key, value);
+    }
+
+    private static Map<String, String> parseArgs(String[] args) {
+        Map<String, String> params = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].startsWith("--") && i + 1 < args.length) {
+                params.put(args[i].substring(2), args[i + 1]);
+                i++;
+            }
+        }
+        return params;
+    }
+
+    // Гистограммы латентности в микросекундах, отдельно для чтений и записей
+    private static final class Stats {
+        private final long expectedIntervalMicros;
+        final Histogram all = new ConcurrentHistogram(3);
+        final Histogram reads = new ConcurrentHistogram(3);
+        final Histogram writes = new ConcurrentHistogram(3);
+        final AtomicLong errors = new AtomicLong();
+        final AtomicLong dropped = new AtomicLong();
+        // сколько значений в гистограммах чтений и записей — нижние оценки ошибок и неотправленных прибытий
+        final AtomicLong readErrors = new AtomicLong();
+        final AtomicLong writeErrors = new AtomicLong();
+        final AtomicLong readDropped = new AtomicLong();
+        final AtomicLong writeDropped = new AtomicLong();
+        final AtomicLong redirects = new AtomicLong();
+
+        Stats(long expectedIntervalMicros) {
+            this.expectedIntervalMicros = expectedIntervalMicros;
+        }
+
+        // Ошибка и неотправленное прибытие не дают настоящей латентности, но ответ не пришел как минимум
+        // за время от startNanos: его пишем нижней оценкой, иначе медленные исходы выпали бы из перцентилей
+        void recordError(boolean read, long startNanos) {
+            errors.incrementAndGet();
+            (read ? readErrors : writeErrors).incrementAndGet();
+            record(read, startNanos, false);
+        }
+
+        void recordDropped(boolean read, long startNanos) {
+            dropped.incrementAndGet();
+            (read ? readDropped : writeDropped).incrementAndGet();
+            record(read, startNanos, false);
+        }
+
+        void record(boolean read, long startNanos, boolean correct) {
+            long micros = Math.max(0, (System.nanoTime() - startNanos) / 1000);
+            Histogram kind = read ? reads : writes;
+            if (correct && expectedIntervalMicros > 0) {
+                kind.recordValueWithExpectedInterval(micros, expectedIntervalMicros);
+                all.recordValueWithExpectedInterval(micros, expectedIntervalMicros);
+            } else {
+                kind.recordValue(micros);
+                all.recordValue(micros);
+            }
+        }
+
+        Map<String, Object> report(String mode, double seconds) {
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("mode", mode);
+            report.put("seconds", seconds);
+            long readsOk = reads.getTotalCount() - readErrors.get() - readDropped.get();
+            long writesOk = writes.getTotalCount() - writeErrors.get() - writeDropped.get();
+            report.put("readOpsPerSec", readsOk / seconds);
+            report.put("writeOpsPerSec", writesOk / seconds);
+            report.put("errors", errors.get());
+            report.put("dropped", dropped.get());
+            report.put("leaderRedirects", redirects.get());
+            report.put("readLatencyMicros", percentiles(reads));
+            report.put("writeLatencyMicros", percentiles(writes));
+            System.out.printf("%s: reads %.0f ops/s, writes %.0f ops/s, errors %d, dropped %d, redirects %d%n",
+                    mode, readsOk / seconds, writesOk / seconds,
+                    errors.get(), dropped.get(), redirects.get());
+            print("read ", reads, readDropped.get(), readErrors.get());
+            print("write", writes, writeDropped.get(), writeErrors.get());
+            return report;
+        }
+
+        private static void print(String name, Histogram histogram, long droppedCount, long errorCount) {
+            System.out.printf("  %s us: p50=%d p90=%d p99=%d p999=%d max=%d (dropped %d, errors %d as lower bounds)%n", name,
+                    histogram.getValueAtPercentile(50), histogram.getValueAtPercentile(90),
+                    histogram.getValueAtPercentile(99), histogram.getValueAtPercentile(99.9),
+                    histogram.getMaxValue(), droppedCount, errorCount);
+        }
+
+        private static Map<String, Long> percentiles(Histogram histogram) {
+            Map<String, Long> values = new LinkedHashMap<>();
+            values.put("p50", histogram.getValueAtPercentile(50));
+            values.put("p90", histogram.getValueAtPercentile(90));
+            values.put("p99", histogram.getValueAtPercentile(99));
+            values.put("p999", histogram.getValueAtPercentile(99.9));
+            values.put("max", histogram.getMaxValue());
+            return values;
+        }
+    }
+}
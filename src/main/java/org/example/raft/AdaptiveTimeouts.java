@@ -0,0 +1,133 @@
+package org.example.raft;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Heartbeat и election timeout. Без адаптации — прежние константы; с адаптацией лидер считает сглаженный RTT
+ * и его разброс по каждому пиру (как RTO в TCP, RFC 6298) и выводит из них таймауты в пределах настроек.
+ * Фолловеры берут election timeout, присланный лидером в AppendEntries.
+ */
+final class AdaptiveTimeouts {
+    static final long STATIC_HEARTBEAT_MILLIS = 150;
+    static final long STATIC_ELECTION_TIMEOUT_MILLIS = 400; // таймер выбирается случайно в [timeout, 2 * timeout)
+    private static final int RTO_MULTIPLIER = 10; // election timeout во столько раз больше RTO самого медленного пира
+    private static final int HEARTBEATS_PER_TIMEOUT = 4;
+
+    private final boolean adaptive;
+    private final long minElectionMillis;
+    private final long maxElectionMillis;
+    private final Map<String, RttEstimate> peers = new ConcurrentHashMap<>();
+    private volatile long leaderElectionMillis; // прислан лидером; 0 — еще не было
+
+    AdaptiveTimeouts(RaftOptions options) {
+        this.adaptive = options.isAdaptiveTimeouts();
+        this.minElectionMillis = options.getMinElectionTimeout().toMillis();
+        this.maxElectionMillis = Math.max(minElectionMillis, options.getMaxElectionTimeout().toMillis());
+    }
+
+    boolean isAdaptive() {
+        return adaptive;
+    }
+
+    // Замер по heartbeat: в RTT больших пакетов входят передача и запись на диск
+    void recordRtt(String peerId, long rttNanos) {
+        if (adaptive) {
+            peers.computeIfAbsent(peerId, id -> new RttEstimate()).update(rttNanos);
+        }
+    }
+
+    void adoptLeaderTimeout(long electionMillis) {
+        if (adaptive && electionMillis > 0) {
+            leaderElectionMillis = clamp(electionMillis);
+        }
+    }
+
+    // Пиры, исключенные из кластера, не должны влиять на таймауты
+    void retainPeers(Set<String> peerIds) {
+        peers.keySet().retainAll(peerIds);
+    }
+
+    // Нижняя граница таймера выборов
+    long electionTimeoutMillis() {
+        if (!adaptive) {
+            return STATIC_ELECTION_TIMEOUT_MILLIS;
+        }
+        long rto = slowestRtoNanos();
+        if (rto > 0) {
+            return clamp(Math.max(1, rto * RTO_MULTIPLIER / 1_000_000));
+        }
+        return leaderElectionMillis > 0 ? leaderElectionMillis : clamp(STATIC_ELECTION_TIMEOUT_MILLIS);
+    }
+
+    long heartbeatMillis() {
+        if (!adaptive) {
+            return STATIC_HEARTBEAT_MILLIS;
+        }
+        return Math.max(1, electionTimeoutMillis() / HEARTBEATS_PER_TIMEOUT);
+    }
+
+    // Сколько лидер может молчать, прежде чем кворум начнет выборы: верхняя граница случайного таймера
+    Duration maxSilence() {
+        return Duration.ofMillis(2 * electionTimeoutMillis());
+    }
+
+    // Фолловеры используют таймеры нового лидера, а свои замеры RTT устаревают
+    void clearRtt() {
+        peers.clear();
+    }
+
+    Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("adaptive", adaptive);
+        snapshot.put("heartbeatIntervalMillis", heartbeatMillis());
+        snapshot.put("electionTimeoutMillis", electionTimeoutMillis());
+        Map<String, Object> rtt = new LinkedHashMap<>();
+        peers.forEach((peer, estimate) -> rtt.put(peer, estimate.snapshot()));
+        snapshot.put("peerRtt", rtt);
+        return snapshot;
+    }
+
+    private long slowestRtoNanos() {
+        long slowest = 0;
+        for (RttEstimate estimate : peers.values()) {
+            slowest = Math.max(slowest, estimate.rtoNanos());
+        }
+        return slowest;
+    }
+
+    private long clamp(long millis) {
+        return Math.max(minElectionMillis, Math.min(maxElectionMillis, millis));
+    }
+
+    private static final class RttEstimate {
+        private long srttNanos;
+        private long rttvarNanos;
+        private long samples;
+
+        synchronized void update(long rttNanos) {
+            if (samples++ == 0) {
+                srttNanos = rttNanos;
+                rttvarNanos = rttNanos / 2;
+                return;
+            }
+            rttvarNanos += (Math.abs(srttNanos - rttNanos) - rttvarNanos) / 4;
+            srttNanos += (rttNanos - srttNanos) / 8;
+        }
+
+        synchronized long rtoNanos() {
+            return srttNanos + 4 * rttvarNanos;
+        }
+
+        synchronized Map<String, Object> snapshot() {
+            Map<String, Object> snapshot = new LinkedHashMap<>();
+            snapshot.put("srttMillis", srttNanos / 1_000_000.0);
+            snapshot.put("rttvarMillis", rttvarNanos / 1_000_000.0);
+            snapshot.put("samples", samples);
+            return snapshot;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package org.example.raft;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ограничение предложений, ожидающих коммита: по числу и по суммарному размеру команд.
+ * С адаптивным лимитом число дополнительно подстраивается под задержку коммита (градиент, как в Netflix
+ * concurrency-limits): пока задержка близка к долгосрочной средней, лимит растет, при ее росте — падает,
+ * и очередь не копится в логе и пуле репликации.
+ */
+final class AdmissionControl {
+    private static final int MIN_LIMIT = 8;
+    private static final double LONG_WINDOW = 100; // сглаживание долгосрочной задержки, в замерах
+    private static final double SMOOTHING = 0.2;
+    private static final long MIN_RETRY_AFTER_MILLIS = 10;
+
+    private final int maxProposals;
+    private final long maxBytes;
+    private final boolean adaptive;
+    private double limit;
+    private double longLatencyNanos; // 0 — замеров еще не было
+    private double shortLatencyNanos;
+    private int inFlight;
+    private long inFlightBytes;
+    private long rejected;
+
+    AdmissionControl(RaftOptions options) {
+        this.maxProposals = options.getMaxPendingProposals();
+        this.maxBytes = options.getMaxPendingBytes();
+        this.adaptive = options.isAdaptiveConcurrency();
+        this.limit = adaptive ? Math.min(maxProposals, Math.max(MIN_LIMIT, 64)) : maxProposals;
+    }
+
+    synchronized boolean tryAcquire(int count, long bytes) {
+        // пакет больше лимита по числу или байтам все же пропускаем, если очередь пуста, иначе он никогда не пройдет
+        boolean fitsCount = inFlight + count <= (int) limit || inFlight == 0;
+        boolean fitsBytes = inFlightBytes + bytes <= maxBytes || inFlight == 0;
+        if (!fitsCount || !fitsBytes) {
+            rejected++;
+            return false;
+        }
+        inFlight += count;
+        inFlightBytes += bytes;
+        return true;
+    }
+
+    // Предложение завершено; задержку учитываем только для закоммиченных
+    synchronized void release(long bytes, long latencyNanos, boolean committed) {
+        inFlight--;
+        inFlightBytes -= bytes;
+        if (adaptive && committed) {
+            updateLimit(latencyNanos);
+        }
+    }
+
+    private void updateLimit(long latencyNanos) {
+        if (longLatencyNanos == 0) {
+            longLatencyNanos = latencyNanos;
+            shortLatencyNanos = latencyNanos;
+            return;
+        }
+        shortLatencyNanos += (latencyNanos - shortLatencyNanos) * SMOOTHING;
+        longLatencyNanos += (latencyNanos - longLatencyNanos) / LONG_WINDOW;
+        if (longLatencyNanos > 2 * shortLatencyNanos) {
+            longLatencyNanos *= 0.95; // нагрузка спала: долгосрочная средняя догоняет текущую задержку
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, longLatencyNanos / shortLatencyNanos));
+        double target = limit * gradient + Math.sqrt(limit); // запас на очередь, чтобы лимит мог расти
+        limit = Math.max(MIN_LIMIT, Math.min(maxProposals, limit * (1 - SMOOTHING) + target * SMOOTHING));
+    }
+
+    // Через сколько повторять: примерно за столько освобождается место при текущей задержке коммита
+    synchronized long retryAfterMillis() {
+        return Math.max(MIN_RETRY_AFTER_MILLIS, TimeUnit.NANOSECONDS.toMillis((long) shortLatencyNanos));
+    }
+
+    synchronized Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("limit", (int) limit);
+        snapshot.put("inFlight", inFlight);
+        snapshot.put("inFlightBytes", inFlightBytes);
+        snapshot.put("rejected", rejected);
+        snapshot.put("commitLatencyMillis", shortLatencyNanos / 1_000_000.0);
+        return snapshot;
+    }
+}
@@ -0,0 +1,30 @@
+package org.example.raft;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// Длительность включает распаковку, ожидание монитора ноды, запись в лог и применение закоммиченного
+@Name("org.example.raft.AppendEntriesReceived")
+@Label("Raft AppendEntries Received")
+@Category({"Raft", "Replication"})
+@Description("Обработка AppendEntries фолловером")
+@StackTrace(false)
+final class AppendEntriesReceivedEvent extends jdk.jfr.Event {
+    @Label("Node")
+    String nodeId;
+
+    @Label("Leader")
+    String leader;
+
+    @Label("Term")
+    long term;
+
+    @Label("Entries")
+    int entries;
+
+    @Label("Success")
+    boolean success;
+}
@@ -0,0 +1,39 @@
+package org.example.raft;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// Длительность — круг RPC от отправки до ответа пира
+@Name("org.example.raft.AppendEntriesSent")
+@Label("Raft AppendEntries Sent")
+@Category({"Raft", "Replication"})
+@Description("AppendEntries лидера пиру и ответ на него")
+@StackTrace(false)
+final class AppendEntriesSentEvent extends jdk.jfr.Event {
+    @Label("Node")
+    String nodeId;
+
+    @Label("Peer")
+    String peer;
+
+    @Label("Term")
+    long term;
+
+    @Label("Prev Log Index")
+    int prevLogIndex;
+
+    @Label("Entries")
+    int entries;
+
+    @Label("Compressed")
+    boolean compressed;
+
+    @Label("Success")
+    boolean success;
+
+    @Label("Failure")
+    String failure;
+}
@@ -0,0 +1,27 @@
+package org.example.raft;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// Длительность — применение новых закоммиченных записей к state machine
+@Name("org.example.raft.Commit")
+@Label("Raft Commit")
+@Category("Raft")
+@Description("commitIndex сдвинулся, записи применены")
+@StackTrace(false)
+final class CommitEvent extends jdk.jfr.Event {
+    @Label("Node")
+    String nodeId;
+
+    @Label("Leader")
+    boolean leader;
+
+    @Label("First Applied Index")
+    int fromIndex;
+
+    @Label("Commit Index")
+    int commitIndex;
+}
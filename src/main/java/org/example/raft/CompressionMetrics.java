@@ -0,0 +1,59 @@
+package org.example.raft;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Счетчики сжатия записей AppendEntries: сколько байт сжато, во сколько раз и сколько CPU на это ушло.
+ */
+public final class CompressionMetrics {
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final boolean CPU_TIME = THREADS.isCurrentThreadCpuTimeSupported();
+
+    private final LongAdder compressedBatches = new LongAdder();
+    private final LongAdder skippedBatches = new LongAdder(); // меньше порога или пир не поддерживает сжатие
+    private final LongAdder rawBytes = new LongAdder();
+    private final LongAdder compressedBytes = new LongAdder();
+    private final LongAdder compressNanos = new LongAdder();
+    private final LongAdder decompressedBatches = new LongAdder();
+    private final LongAdder decompressNanos = new LongAdder();
+
+    // CPU-время текущего потока; если JVM его не считает — wall-clock
+    static long cpuNanos() {
+        return CPU_TIME ? THREADS.getCurrentThreadCpuTime() : System.nanoTime();
+    }
+
+    void recordCompressed(int raw, int compressed, long nanos) {
+        compressedBatches.increment();
+        rawBytes.add(raw);
+        compressedBytes.add(compressed);
+        compressNanos.add(nanos);
+    }
+
+    void recordSkipped() {
+        skippedBatches.increment();
+    }
+
+    void recordDecompressed(long nanos) {
+        decompressedBatches.increment();
+        decompressNanos.add(nanos);
+    }
+
+    public Map<String, Object> snapshot() {
+        long raw = rawBytes.sum();
+        long compressed = compressedBytes.sum();
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("compressedBatches", compressedBatches.sum());
+        snapshot.put("skippedBatches", skippedBatches.sum());
+        snapshot.put("rawBytes", raw);
+        snapshot.put("compressedBytes", compressed);
+        snapshot.put("ratio", compressed > 0 ? (double) raw / compressed : 0.0);
+        snapshot.put("compressCpuMillis", compressNanos.sum() / 1_000_000.0);
+        snapshot.put("decompressedBatches", decompressedBatches.sum());
+        snapshot.put("decompressCpuMillis", decompressNanos.sum() / 1_000_000.0);
+        return snapshot;
+    }
+}
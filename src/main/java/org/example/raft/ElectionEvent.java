@@ -0,0 +1,30 @@
+package org.example.raft;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// Длительность — от начала раунда до победы или отказа от него
+@Name("org.example.raft.Election")
+@Label("Raft Election")
+@Category("Raft")
+@Description("Раунд выборов или пробного голосования")
+@StackTrace(false)
+final class ElectionEvent extends jdk.jfr.Event {
+    @Label("Node")
+    String nodeId;
+
+    @Label("Term")
+    long term;
+
+    @Label("Pre-Vote")
+    boolean preVote;
+
+    @Label("Votes")
+    int votes;
+
+    @Label("Won")
+    boolean won;
+}
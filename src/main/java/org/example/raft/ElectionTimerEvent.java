@@ -0,0 +1,20 @@
+package org.example.raft;
+
+import jdk.jfr.Category;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+@Name("org.example.raft.ElectionTimerReset")
+@Label("Raft Election Timer Reset")
+@Category("Raft")
+@StackTrace(false)
+final class ElectionTimerEvent extends jdk.jfr.Event {
+    @Label("Node")
+    String nodeId;
+
+    @Label("Timeout")
+    @Timespan(Timespan.MILLISECONDS)
+    long timeout;
+}
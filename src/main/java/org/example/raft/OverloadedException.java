@@ -0,0 +1,17 @@
+package org.example.raft;
+
+/**
+ * Лидер перегружен: предложение отклонено без записи в лог, клиенту стоит повторить его позже.
+ */
+public final class OverloadedException extends RuntimeException {
+    private final long retryAfterMillis;
+
+    public OverloadedException(long retryAfterMillis) {
+        super("Too many proposals in flight. Retry after " + retryAfterMillis + " ms");
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+}
@@ -0,0 +1,155 @@
+package org.example.raft;
+
+import org.example.raft.protocol.ForwardRequest;
+import org.example.raft.protocol.ForwardResponse;
+import org.example.raft.transport.RaftTransport;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Пересылка записей с фолловера лидеру. Команды, пришедшие пока предыдущие пакеты в пути,
+ * собираются в один ForwardRequest: много команд клиентов уходят одним RPC.
+ */
+final class ProposalForwarder {
+    private static final int MAX_BATCH = 256; // команд в одном RPC
+    private static final int MAX_IN_FLIGHT = 4; // одновременно отправленных пакетов
+
+    private final String localId;
+    private final RaftTransport transport;
+    private final Queue<Pending> queue = new ArrayDeque<>();
+    private int inFlight;
+
+    ProposalForwarder(String localId, RaftTransport transport) {
+        this.localId = localId;
+        this.transport = transport;
+    }
+
+    CompletableFuture<byte[]> forward(String leaderId, byte[] command) {
+        Pending pending = new Pending(leaderId, command, new CompletableFuture<>(), false);
+        synchronized (this) {
+            queue.add(pending);
+        }
+        sendBatches();
+        return pending.result;
+    }
+
+    // Пакет клиента уходит отдельным RPC, не смешиваясь с очередью: лидер добавит в лог все его команды или ни одной.
+    // Future завершается ответом лидера, принявшего пакет; отказ до записи в лог — NotLeaderException
+    // или OverloadedException, по подсказке отказавшего лидера пакет один раз отправляется заново
+    CompletableFuture<ForwardResponse> forwardAll(String leaderId, List<byte[]> commands) {
+        CompletableFuture<ForwardResponse> accepted = new CompletableFuture<>();
+        sendAll(leaderId, commands, false, accepted);
+        return accepted;
+    }
+
+    private void sendAll(String leaderId, List<byte[]> commands, boolean redirected, CompletableFuture<ForwardResponse> accepted) {
+        transport.forwardCommands(leaderId, new ForwardRequest(localId, commands)).whenComplete((response, error) -> {
+            if (error != null) {
+                accepted.completeExceptionally(error);
+            } else if (response.getRetryAfterMillis() > 0) {
+                accepted.completeExceptionally(new OverloadedException(response.getRetryAfterMillis()));
+            } else if (!response.isSuccess() && canRedirect(redirected, leaderId, response.getLeaderHint())) {
+                sendAll(response.getLeaderHint(), commands, true, accepted);
+            } else if (!response.isSuccess()) {
+                accepted.completeExceptionally(new NotLeaderException(response.getLeaderHint()));
+            } else {
+                accepted.complete(response);
+            }
+        });
+    }
+
+    private void sendBatches() {
+        while (true) {
+            List<Pending> batch;
+            synchronized (this) {
+                if (inFlight >= MAX_IN_FLIGHT || queue.isEmpty()) {
+                    return;
+                }
+                // в пакет попадают только команды для того же лидера, что и первая в очереди
+                String leaderId = queue.peek().leaderId;
+                batch = new ArrayList<>();
+                while (batch.size() < MAX_BATCH && !queue.isEmpty() && queue.peek().leaderId.equals(leaderId)) {
+                    batch.add(queue.poll());
+                }
+                inFlight++;
+            }
+            send(batch);
+        }
+    }
+
+    private void send(List<Pending> batch) {
+        String leaderId = batch.get(0).leaderId;
+        List<byte[]> commands = new ArrayList<>(batch.size());
+        batch.forEach(pending -> commands.add(pending.command));
+        transport.forwardCommands(leaderId, new ForwardRequest(localId, commands)).whenComplete((response, error) -> {
+            synchronized (this) {
+                inFlight--;
+            }
+            complete(batch, response, error);
+            sendBatches();
+        });
+    }
+
+    private void complete(List<Pending> batch, ForwardResponse response, Throwable error) {
+        List<Pending> redirected = new ArrayList<>();
+        for (int i = 0; i < batch.size(); i++) {
+            Pending pending = batch.get(i);
+            CompletableFuture<byte[]> result = pending.result;
+            if (error != null) {
+                result.completeExceptionally(error);
+            } else if (response.getRetryAfterMillis() > 0) {
+                result.completeExceptionally(new OverloadedException(response.getRetryAfterMillis()));
+            } else if (!response.isSuccess() && canRedirect(pending.redirected, pending.leaderId, response.getLeaderHint())) {
+                // адресат уже не лидер и команду в лог не добавил: один раз отправляем ее новому лидеру,
+                // чтобы клиент за балансировщиком получил лишний переход, а не 409
+                redirected.add(new Pending(response.getLeaderHint(), pending.command, result, true));
+            } else if (!response.isSuccess()) {
+                result.completeExceptionally(new NotLeaderException(response.getLeaderHint()));
+            } else {
+                completeFrom(response, i, result);
+            }
+        }
+        if (!redirected.isEmpty()) {
+            synchronized (this) {
+                queue.addAll(redirected); // отправит sendBatches после завершения этого пакета
+            }
+        }
+    }
+
+    // Завершает result исходом команды index из ответа лидера, принявшего пакет
+    static void completeFrom(ForwardResponse response, int index, CompletableFuture<byte[]> result) {
+        String error = response.errorAt(index);
+        if (ForwardResponse.TIMEOUT.equals(error)) {
+            result.completeExceptionally(new TimeoutException("Forwarded command was not committed in time"));
+        } else if (error != null) {
+            result.completeExceptionally(new NotLeaderException(response.getLeaderHint()));
+        } else {
+            result.complete(response.getResults().get(index));
+        }
+    }
+
+    // Подсказка указывает на другую ноду, а команда еще не перенаправлялась. Себе не пересылаем:
+    // если лидер теперь эта нода, клиент повторит запрос сюда же
+    private boolean canRedirect(boolean redirected, String leaderId, String leaderHint) {
+        return !redirected && leaderHint != null && !leaderHint.equals(leaderId) && !leaderHint.equals(localId);
+    }
+
+    private static final class Pending {
+        final String leaderId;
+        final byte[] command;
+        final CompletableFuture<byte[]> result;
+        final boolean redirected; // уже отправлена по подсказке отказавшего лидера
+
+        Pending(String leaderId, byte[] command, CompletableFuture<byte[]> result, boolean redirected) {
+            this.leaderId = leaderId;
+            this.command = command;
+            this.result = result;
+            this.redirected = redirected;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package org.example.raft;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Отметки времени (System.nanoTime) этапов одного предложения: прием запроса, разбор JSON, захват монитора ноды,
+ * запись в лог, отправка и подтверждение AppendEntries каждым пиром, коммит, применение и ответ клиенту.
+ * Этапы отмечает тот поток, который их выполняет; каждую отметку ставят один раз.
+ */
+public final class ProposalTrace {
+    public enum Stage {
+        RECEIVED,
+        DECODED,
+        LOCKED,
+        APPENDED,
+        COMMITTED,
+        APPLIED,
+        RESPONDED
+    }
+
+    private final long queueMillis; // время в очереди Jetty до вызова обработчика
+    private final long wallClockMillis;
+    private final boolean sampled; // попадет в кольцевой буфер трасс
+    private final long[] marks = new long[Stage.values().length];
+    private final Map<String, long[]> peers = new ConcurrentHashMap<>(); // пир -> {отправлено, подтверждено}
+    private volatile int index;
+
+    public ProposalTrace(long queueMillis, boolean sampled) {
+        this.queueMillis = queueMillis;
+        this.wallClockMillis = System.currentTimeMillis();
+        this.sampled = sampled;
+        mark(Stage.RECEIVED);
+    }
+
+    public void mark(Stage stage) {
+        synchronized (marks) {
+            if (marks[stage.ordinal()] == 0) {
+                marks[stage.ordinal()] = System.nanoTime();
+            }
+        }
+    }
+
+    public boolean isSampled() {
+        return sampled;
+    }
+
+    void setIndex(int index) {
+        this.index = index;
+    }
+
+    // Пакет с этой записью ушел пиру; повторные отправки той же записи не перезаписывают первую
+    void peerSent(String peerId, long nanos) {
+        peers.computeIfAbsent(peerId, id -> new long[] {nanos, 0});
+    }
+
+    void peerAcked(String peerId, long nanos) {
+        long[] times = peers.get(peerId);
+        if (times != null) {
+            synchronized (times) {
+                if (times[1] == 0) {
+                    times[1] = nanos;
+                }
+            }
+        }
+    }
+
+    /**
+     * Заголовок Server-Timing: длительность каждого этапа относительно предыдущего, в миллисекундах.
+     */
+    public String serverTiming() {
+        StringBuilder header = new StringBuilder("queue;dur=").append(queueMillis);
+        long previous;
+        synchronized (marks) {
+            previous = marks[Stage.RECEIVED.ordinal()];
+            for (Stage stage : Stage.values()) {
+                long mark = marks[stage.ordinal()];
+                if (stage == Stage.RECEIVED || mark == 0) {
+                    continue;
+                }
+                header.append(", ").append(stage.name().toLowerCase()).append(";dur=").append(millis(mark - previous));
+                previous = mark;
+            }
+            long total = previous - marks[Stage.RECEIVED.ordinal()];
+            header.append(", total;dur=").append(millis(total));
+        }
+        return header.toString();
+    }
+
+    /**
+     * Трасса для отладочного endpoint'а: смещения этапов и ответов пиров от приема запроса, в микросекундах.
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> trace = new LinkedHashMap<>();
+        trace.put("startedAt", wallClockMillis);
+        trace.put("index", index);
+        trace.put("queueMillis", queueMillis);
+        Map<String, Long> stages = new LinkedHashMap<>();
+        long start;
+        synchronized (marks) {
+            start = marks[Stage.RECEIVED.ordinal()];
+            for (Stage stage : Stage.values()) {
+                if (marks[stage.ordinal()] != 0) {
+                    stages.put(stage.name().toLowerCase(), micros(marks[stage.ordinal()] - start));
+                }
+            }
+        }
+        trace.put("stagesMicros", stages);
+        Map<String, Object> peerTimes = new LinkedHashMap<>();
+        peers.forEach((peer, times) -> {
+            Map<String, Long> peerTrace = new LinkedHashMap<>();
+            synchronized (times) {
+                peerTrace.put("sent", micros(times[0] - start));
+                if (times[1] != 0) {
+                    peerTrace.put("acked", micros(times[1] - start));
+                    peerTrace.put("rpc", micros(times[1] - times[0]));
+                }
+            }
+            peerTimes.put(peer, peerTrace);
+        });
+        trace.put("peersMicros", peerTimes);
+        return trace;
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1_000_000.0);
+    }
+
+    private static long micros(long nanos) {
+        return nanos / 1_000;
+    }
+}
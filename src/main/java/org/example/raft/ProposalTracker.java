@@ -0,0 +1,120 @@
+package org.example.raft;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Незавершенные предложения лидера: терм и индекс записи, future клиента и дедлайн.
+ * Future завершается результатом применения, NotLeaderException при потере лидерства или усечении записи
+ * и TimeoutException по дедлайну — ни одно предложение не висит до таймаута клиента.
+ */
+final class ProposalTracker {
+    static final long TICK_MILLIS = 10;
+    private static final int WHEEL_SLOTS = 512;
+
+    private final long timeoutNanos;
+    private final TreeMap<Integer, Proposal> proposals = new TreeMap<>(); // индекс -> предложение
+    // В колесе только терм и индекс: завершенное предложение с его future и результатом освобождается сразу,
+    // не дожидаясь своего дедлайна
+    private final TimerWheel<Deadline> deadlines;
+
+    ProposalTracker(long timeoutMillis) {
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        this.deadlines = new TimerWheel<>(TimeUnit.MILLISECONDS.toNanos(TICK_MILLIS), WHEEL_SLOTS, System.nanoTime());
+    }
+
+    synchronized CompletableFuture<byte[]> register(long term, int index) {
+        Proposal proposal = new Proposal(term, index);
+        Proposal replaced = proposals.put(index, proposal);
+        if (replaced != null) {
+            replaced.result.completeExceptionally(new NotLeaderException(null)); // индекс занят записью нового терма
+        }
+        deadlines.schedule(new Deadline(term, index), System.nanoTime() + timeoutNanos);
+        return proposal.result;
+    }
+
+    // Запись с этим индексом применена; если ее терм не тот, что у предложения, — предложение вытеснено
+    void complete(int index, long term, byte[] result) {
+        Proposal proposal;
+        synchronized (this) {
+            proposal = proposals.remove(index);
+        }
+        if (proposal == null) {
+            return;
+        }
+        if (proposal.term == term) {
+            proposal.result.complete(result);
+        } else {
+            proposal.result.completeExceptionally(new NotLeaderException(null));
+        }
+    }
+
+    // Нода перестала быть лидером: исход предложений неизвестен, клиент повторит их у нового лидера
+    void failAll(String leaderHint) {
+        failFrom(0, leaderHint);
+    }
+
+    // Записи с индекса fromIndex удалены из лога — их перезапишет новый лидер
+    void failFrom(int fromIndex, String leaderHint) {
+        List<Proposal> failed;
+        synchronized (this) {
+            Map<Integer, Proposal> tail = proposals.tailMap(fromIndex, true);
+            if (tail.isEmpty()) {
+                return;
+            }
+            failed = new ArrayList<>(tail.values());
+            tail.clear();
+        }
+        NotLeaderException error = new NotLeaderException(leaderHint);
+        failed.forEach(proposal -> proposal.result.completeExceptionally(error));
+    }
+
+    // Вызывается раз в тик из планировщика ноды
+    void expire() {
+        List<Proposal> expired = new ArrayList<>();
+        synchronized (this) {
+            for (Deadline deadline : deadlines.advance(System.nanoTime())) {
+                Proposal proposal = proposals.get(deadline.index);
+                // уже завершенные и вытесненные записью другого терма пропускаем
+                if (proposal != null && proposal.term == deadline.term) {
+                    proposals.remove(deadline.index);
+                    expired.add(proposal);
+                }
+            }
+        }
+        for (Proposal proposal : expired) {
+            proposal.result.completeExceptionally(new TimeoutException(
+                    "Entry " + proposal.index + " of term " + proposal.term + " not committed in time"));
+        }
+    }
+
+    synchronized int size() {
+        return proposals.size();
+    }
+
+    private static final class Deadline {
+        final long term;
+        final int index;
+
+        Deadline(long term, int index) {
+            this.term = term;
+            this.index = index;
+        }
+    }
+
+    private static final class Proposal {
+        final long term;
+        final int index;
+        final CompletableFuture<byte[]> result = new CompletableFuture<>();
+
+        Proposal(long term, int index) {
+            this.term = term;
+            this.index = index;
+        }
+    }
+}
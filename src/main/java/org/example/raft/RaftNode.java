@@ -1,53 +1,101 @@
 package org.example.raft;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.example.raft.cluster.ClusterConfig;
+import org.example.raft.cluster.PeerEndpoint;
+import org.example.raft.log.HardState;
 import org.example.raft.log.LogEntry;
+import org.example.raft.log.MemoryRaftLog;
+import org.example.raft.log.RaftLog;
+import org.example.raft.log.SegmentedRaftLog;
 import org.example.raft.protocol.AppendEntriesRequest;
 import org.example.raft.protocol.AppendEntriesResponse;
+import org.example.raft.protocol.EntryBatchCodec;
+import org.example.raft.protocol.ForwardRequest;
+import org.example.raft.protocol.ForwardResponse;
 import org.example.raft.protocol.RequestVoteRequest;
 import org.example.raft.protocol.RequestVoteResponse;
+import org.example.raft.protocol.TimeoutNowRequest;
+import org.example.raft.protocol.TimeoutNowResponse;
+import org.example.raft.transport.RaftRpcHandler;
 import org.example.raft.transport.RaftTransport;
+import org.example.raft.util.Json;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.Duration;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 /**
  * Реализация ноды кластера
  */
-public class RaftNode implements AutoCloseable {
+public class RaftNode implements RaftRpcHandler, AutoCloseable {
     private static final Logger LOGGER = LoggerFactory.getLogger(RaftNode.class);
-    private static final Duration HEARTBEAT_INTERVAL = Duration.ofMillis(150);
-    private static final Duration MIN_ELECTION_TIMEOUT = Duration.ofMillis(400);
-    private static final Duration MAX_ELECTION_TIMEOUT = Duration.ofMillis(800);
+    private static final List<String> ACCEPTED_CODECS = List.of(EntryBatchCodec.DEFLATE);
+    private static final int MAX_COMMIT_SAMPLES = 64;
+    private static final int MAX_APPLY_BATCH = 1024; // записей в одном applyBatch: ответы клиентам не ждут всего догона
+    private static final byte[] NO_OP = new byte[0]; // команда пустой записи, которую лидер добавляет при избрании
+    private static final TypeReference<List<PeerEndpoint>> MEMBERS = new TypeReference<List<PeerEndpoint>>() {};
 
-    private final ClusterConfig config; // конфигурация кластера
+    private final ObjectMapper mapper = Json.mapper();
+    private volatile ClusterConfig config; // текущая конфигурация — последняя запись конфигурации в логе
+    // Конфигурации по индексу записи: последняя закоммиченная и незакоммиченные после нее (для отката при усечении лога)
+    private final TreeMap<Integer, ClusterConfig> configs = new TreeMap<>();
     private final RaftTransport transport; // транспорт для RPC
     private final StateMachine stateMachine;
+    private final RaftOptions options;
+    private final ProposalForwarder forwarder;
     private final Random random = new Random();
     private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(2); // планировщик для таймеров выборов
     private final ExecutorService executor = Executors.newCachedThreadPool(); // пул для асинхронных задач
-    private final List<LogEntry> log = new ArrayList<>();
-    private final ConcurrentMap<Integer, CompletableFuture<byte[]>> pendingResponses = new ConcurrentHashMap<>();
+    private final RaftLog log;
+    private final ProposalTracker proposals;
+    private final AdmissionControl admission;
+    // Трассируемые предложения лидера по индексу записи; в карте только выбранные для трассировки
+    private final ConcurrentNavigableMap<Integer, ProposalTrace> traces = new ConcurrentSkipListMap<>();
     private final Map<String, Integer> nextIndex = new ConcurrentHashMap<>(); // следующий индекс для отправки нодам
     private final Map<String, Integer> matchIndex = new ConcurrentHashMap<>(); // последний подтвержденный индекс
+    private final Map<String, Long> lastPeerContact = new ConcurrentHashMap<>(); // nanoTime последнего ответа пира лидеру
+    private final Map<String, Integer> dataInFlight = new ConcurrentHashMap<>(); // отправленные пиру и еще не отвеченные пакеты записей
+    private final Set<String> compressingPeers = ConcurrentHashMap.newKeySet(); // пиры, сообщившие, что принимают сжатые записи
+    private final CompressionMetrics compressionMetrics = new CompressionMetrics();
+    private final AdaptiveTimeouts timeouts;
 
     private final AtomicBoolean started = new AtomicBoolean(false); // флаг запуска узла
+    private CountDownLatch pauseGate; // не null — нода заморожена через pause(); под монитором pauseLock
+    private final Object pauseLock = new Object();
+    private volatile boolean paused;
 
     private volatile RaftState state = RaftState.FOLLOWER; // текущий статус ноды
     private volatile long currentTerm = 0;
@@ -55,15 +103,58 @@ public class RaftNode implements AutoCloseable {
     private volatile String currentLeader = null;
     private volatile int commitIndex = 0;
     private volatile int lastApplied = 0;
+    private volatile long lastLeaderContactNanos; // когда фолловер последний раз получил AppendEntries от лидера
+    // Свежесть чтений на фолловере: наибольший известный leaderCommit и моменты, когда лидер имел состояние
+    // до очередного leaderCommit, — {leaderCommit, nanoTime}. Под монитором ноды
+    private int knownLeaderCommit;
+    private final ArrayDeque<long[]> commitSamples = new ArrayDeque<>();
+    private long freshAsOfNanos = Long.MIN_VALUE; // состояние до lastApplied было у лидера не раньше этого момента
+    private final List<FreshnessWaiter> freshnessWaiters = new ArrayList<>();
+    // Ожидающие, пока lastApplied дойдет до индекса: пересланные записи, за которыми в пакете идут чтения. Под монитором ноды
+    private final TreeMap<Integer, CompletableFuture<Void>> applyWaiters = new TreeMap<>();
 
     private ScheduledFuture<?> electionTask;
+    // JFR-события текущих раундов пробного голосования и выборов; завершаются исходом раунда
+    private ElectionEvent preVoteRound;
+    private ElectionEvent electionRound;
     private ScheduledFuture<?> heartbeatTask;
+    private long heartbeatGeneration; // heartbeat перепланирует себя, пока нода — лидер того же избрания
+
+    // Передача лидерства: пока она идет, лидер не принимает новые команды
+    private String transferTarget;
+    private boolean timeoutNowSent;
+    private CompletableFuture<String> transferResult;
+    private ScheduledFuture<?> transferTimeout;
 
     public RaftNode(ClusterConfig config, RaftTransport transport, StateMachine stateMachine) {
+        this(config, transport, stateMachine, new RaftOptions());
+    }
+
+    public RaftNode(ClusterConfig config, RaftTransport transport, StateMachine stateMachine, RaftOptions options) {
         this.config = config;
         this.transport = transport;
         this.stateMachine = stateMachine;
-        log.add(new LogEntry(0, 0, new byte[0]));
+        this.options = options;
+        this.timeouts = new AdaptiveTimeouts(options);
+        this.proposals = new ProposalTracker(options.getProposalTimeout().toMillis());
+        this.admission = new AdmissionControl(options);
+        this.forwarder = new ProposalForwarder(config.getLocalId(), transport);
+        this.configs.put(0, config);
+        this.log = openLog(options);
+        HardState hardState = log.loadHardState();
+        this.currentTerm = hardState.getTerm();
+        this.votedFor = hardState.getVotedFor();
+    }
+
+    private static RaftLog openLog(RaftOptions options) {
+        if (options.getDataDirectory() == null) {
+            return new MemoryRaftLog();
+        }
+        try {
+            return SegmentedRaftLog.open(options.getDataDirectory());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open log in " + options.getDataDirectory(), e);
+        }
     }
 
     public void start() {
@@ -71,7 +162,78 @@ public class RaftNode implements AutoCloseable {
             return;
         }
         LOGGER.info("Node {} starting", config.getLocalId());
+        recover();
         resetElectionTimer();
+        scheduler.scheduleAtFixedRate(() -> {
+            if (!paused) { // у замороженного процесса дедлайны предложений тоже не срабатывают
+                proposals.expire();
+            }
+        }, ProposalTracker.TICK_MILLIS, ProposalTracker.TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    // Восстанавливает state machine из локального лога до сохраненного commitIndex.
+    // Файлы лога читаются последовательно в отдельном потоке, пока этот поток применяет прочитанные пачки
+    private synchronized void recover() {
+        replayCommitted();
+        // незакоммиченный хвост может содержать новую конфигурацию — она действует сразу после записи в лог
+        for (int index = lastApplied + 1; index <= log.lastIndex(); index++) {
+            LogEntry entry = log.get(index);
+            if (entry.isConfiguration()) {
+                useConfiguration(index, entry.getCommand());
+            }
+        }
+        configs.headMap(configs.floorKey(commitIndex)).clear();
+    }
+
+    private void replayCommitted() {
+        int durableCommit = Math.min(log.loadHardState().getCommitIndex(), log.lastIndex());
+        if (durableCommit <= lastApplied) {
+            return;
+        }
+        long started = System.nanoTime();
+        int from = lastApplied + 1;
+        BlockingQueue<List<LogEntry>> batches = new ArrayBlockingQueue<>(16);
+        List<LogEntry> end = new ArrayList<>();
+        Future<?> reader = executor.submit(() -> {
+            try {
+                log.replay(from, durableCommit, batch -> putUninterruptibly(batches, batch));
+            } finally {
+                putUninterruptibly(batches, end);
+            }
+        });
+        try {
+            for (List<LogEntry> batch = batches.take(); batch != end; batch = batches.take()) {
+                if (batch.isEmpty()) {
+                    continue;
+                }
+                applyEntries(batch, entry -> useConfiguration(entry.getIndex(), entry.getCommand()));
+                lastApplied = batch.get(batch.size() - 1).getIndex();
+            }
+            reader.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while replaying log", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to replay log", e.getCause());
+        }
+        commitIndex = lastApplied;
+        LOGGER.info("Node {} replayed {} entries up to index {} in {} ms", config.getLocalId(), lastApplied - from + 1,
+                lastApplied, (System.nanoTime() - started) / 1_000_000);
+    }
+
+    private static <T> void putUninterruptibly(BlockingQueue<T> queue, T item) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                queue.put(item);
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
     }
 
     public RaftState getState() {
@@ -86,73 +248,465 @@ public class RaftNode implements AutoCloseable {
         return currentLeader;
     }
 
+    @Override
     public String getLocalId() {
         return config.getLocalId();
     }
 
-    // Подтверждение команды клиента
+    public boolean isLearner() {
+        return config.isLocalLearner();
+    }
+
+    public CompressionMetrics getCompressionMetrics() {
+        return compressionMetrics;
+    }
+
+    // Текущие heartbeat/election timeout и оценки RTT до пиров
+    // Пир сообщил в ответе, что принимает сжатые записи; package-private для тестов
+    boolean acceptsCompression(String peerId) {
+        return compressingPeers.contains(peerId);
+    }
+
+    public Map<String, Object> getTimeouts() {
+        return timeouts.snapshot();
+    }
+
+    // Текущий интервал heartbeat лидера: за это время лидер снова услышит кворум
+    public long getHeartbeatMillis() {
+        return timeouts.heartbeatMillis();
+    }
+
+    // Дедлайн предложения: не закоммиченное за это время завершается TimeoutException
+    public long getProposalTimeoutMillis() {
+        return options.getProposalTimeout().toMillis();
+    }
+
+    public Map<String, Object> getAdmission() {
+        return admission.snapshot();
+    }
+
+    // Предложения лидера, ожидающие коммита
+    public int getPendingProposals() {
+        return proposals.size();
+    }
+
+    public int getCommitIndex() {
+        return commitIndex;
+    }
+
+    public int getLastApplied() {
+        return lastApplied;
+    }
+
+    // Отставание применённого состояния от лидера — для чтений с ограниченной устарелостью
+    public synchronized ReadFreshness readFreshness() {
+        if (state == RaftState.LEADER) {
+            return new ReadFreshness(commitIndex - lastApplied,
+                    TimeUnit.NANOSECONDS.toMillis(quorumContactAgeNanos(System.nanoTime())), config.getLocalId());
+        }
+        long staleness = freshAsOfNanos == Long.MIN_VALUE ? ReadFreshness.UNKNOWN
+                : TimeUnit.NANOSECONDS.toMillis(Math.max(0, System.nanoTime() - freshAsOfNanos));
+        return new ReadFreshness(Math.max(0, knownLeaderCommit - lastApplied), staleness, currentLeader);
+    }
+
+    /**
+     * Ждет, пока отставание не окажется в границах (отрицательная граница не ограничивает), но не дольше wait.
+     * Результат — свежесть на момент завершения; попала ли она в границы, проверяет вызывающий.
+     */
+    public CompletableFuture<ReadFreshness> awaitFreshness(long maxLag, long maxStalenessMillis, Duration wait) {
+        FreshnessWaiter waiter;
+        synchronized (this) {
+            ReadFreshness current = readFreshness();
+            if (current.within(maxLag, maxStalenessMillis) || wait.isZero()) {
+                return CompletableFuture.completedFuture(current);
+            }
+            waiter = new FreshnessWaiter(maxLag, maxStalenessMillis);
+            freshnessWaiters.add(waiter);
+        }
+        scheduler.schedule(() -> {
+            ReadFreshness current;
+            synchronized (this) {
+                freshnessWaiters.remove(waiter);
+                current = readFreshness();
+            }
+            waiter.result.complete(current);
+        }, wait.toMillis(), TimeUnit.MILLISECONDS);
+        return waiter.result;
+    }
+
+    // Подтверждение команды клиента. Фолловер с включенной пересылкой отправляет команду лидеру,
+    // иначе бросает NotLeaderException с подсказкой
     public CompletableFuture<byte[]> submitCommand(byte[] command) {
+        return submitCommand(command, null);
+    }
+
+    /**
+     * То же с трассировкой: нода отмечает в trace захват монитора, запись в лог, ответы пиров, коммит и применение.
+     */
+    public CompletableFuture<byte[]> submitCommand(byte[] command, ProposalTrace trace) {
+        String leader;
         synchronized (this) {
-            if (state != RaftState.LEADER) {
-                throw new NotLeaderException(currentLeader);
+            if (trace != null) {
+                trace.mark(ProposalTrace.Stage.LOCKED);
             }
-            int index = lastLogIndex() + 1;
-            LogEntry entry = new LogEntry(currentTerm, index, command);
-            log.add(entry);
-            CompletableFuture<byte[]> result = new CompletableFuture<>();
-            pendingResponses.put(index, result);
-            broadcastReplications(); // асинхронная репликация команды на ноды/пиры
-            return result;
+            if (state == RaftState.LEADER && transferTarget != null) {
+                throw new NotLeaderException(transferTarget); // лидерство уже передается
+            }
+            if (state == RaftState.LEADER) {
+                if (!admission.tryAcquire(1, command.length)) {
+                    throw new OverloadedException(admission.retryAfterMillis()); // в лог не пишем: очередь и так полна
+                }
+                CompletableFuture<byte[]> result = appendAdmitted(command);
+                if (trace != null) {
+                    trace.mark(ProposalTrace.Stage.APPENDED);
+                    trace.setIndex(lastLogIndex());
+                    traces.put(lastLogIndex(), trace);
+                }
+                replicateNewEntries(); // асинхронная репликация команды на ноды/пиры
+                return result;
+            }
+            leader = currentLeader;
+        }
+        if (options.isForwardProposals() && leader != null) {
+            return forwarder.forward(leader, command);
+        }
+        throw new NotLeaderException(leader);
+    }
+
+    /**
+     * Несколько команд одним предложением: в лог попадают либо все подряд, либо ни одной. Отказ до записи в лог
+     * (не лидер, перегрузка) — исключение или ошибка внешнего future, тогда пакет можно повторить целиком.
+     * Внешний future завершается результатами команд в том же порядке; после записи в лог исход у каждой
+     * команды свой: при смене лидера часть пакета может быть применена, а часть нет.
+     * Фолловер с включенной пересылкой отправляет пакет лидеру одним RPC с той же гарантией.
+     */
+    public CompletableFuture<List<CompletableFuture<byte[]>>> submitCommands(List<byte[]> commands) {
+        return submitCommands(commands, false);
+    }
+
+    /**
+     * То же, что submitCommands(commands); при awaitLocalApply результат пересланной команды завершается только после
+     * того, как эта нода сама применила ее, и локальное чтение после него видит запись. На фолловере это добавляет
+     * задержку до следующего AppendEntries с новым leaderCommit; у лидера результат и так приходит после применения.
+     */
+    public CompletableFuture<List<CompletableFuture<byte[]>>> submitCommands(List<byte[]> commands, boolean awaitLocalApply) {
+        String leader;
+        synchronized (this) {
+            if (state == RaftState.LEADER) {
+                return CompletableFuture.completedFuture(appendAll(commands));
+            }
+            leader = currentLeader;
+        }
+        if (options.isForwardProposals() && leader != null) {
+            return forwarder.forwardAll(leader, commands).thenApply(response -> {
+                List<CompletableFuture<byte[]>> results = new ArrayList<>(commands.size());
+                for (int i = 0; i < commands.size(); i++) {
+                    CompletableFuture<byte[]> result = new CompletableFuture<>();
+                    ProposalForwarder.completeFrom(response, i, result);
+                    if (awaitLocalApply && response.getFirstIndex() > 0) {
+                        int index = response.getFirstIndex() + i;
+                        result = result.thenCompose(value -> awaitApplied(index).thenApply(ignored -> value));
+                    }
+                    results.add(result);
+                }
+                return results;
+            });
+        }
+        throw new NotLeaderException(leader);
+    }
+
+    // Обработчик пересланных фолловером команд: все команды пакета попадают в лог подряд
+    // и реплицируются одним AppendEntries
+    @Override
+    public CompletableFuture<ForwardResponse> handleForward(ForwardRequest request) {
+        List<CompletableFuture<byte[]>> results;
+        int firstIndex;
+        try {
+            synchronized (this) {
+                results = appendAll(request.getCommands());
+                firstIndex = lastLogIndex() - results.size() + 1;
+            }
+        } catch (NotLeaderException e) {
+            return CompletableFuture.completedFuture(new ForwardResponse(false, e.getLeaderHint(), null));
+        } catch (OverloadedException e) {
+            return CompletableFuture.completedFuture(
+                    new ForwardResponse(false, config.getLocalId(), null, e.getRetryAfterMillis()));
+        }
+        // Команды уже в логе: часть может примениться, даже если остальные не дождутся коммита у этого лидера.
+        // Поэтому исход отдается по каждой команде, а не ошибкой на весь пакет — иначе примененные повторили бы
+        return CompletableFuture.allOf(results.toArray(new CompletableFuture[0])).handle((ignored, error) -> {
+            List<byte[]> values = new ArrayList<>(results.size());
+            List<String> errors = new ArrayList<>(results.size());
+            boolean failed = false;
+            for (CompletableFuture<byte[]> result : results) {
+                try {
+                    values.add(result.join());
+                    errors.add(null);
+                } catch (CompletionException e) {
+                    values.add(null);
+                    errors.add(e.getCause() instanceof TimeoutException ? ForwardResponse.TIMEOUT : ForwardResponse.NOT_LEADER);
+                    failed = true;
+                }
+            }
+            return failed ? new ForwardResponse(true, currentLeader, values, 0, errors, firstIndex)
+                    : new ForwardResponse(true, config.getLocalId(), values, 0, null, firstIndex);
+        });
+    }
+
+    // Завершается, когда эта нода применит запись index к state machine
+    private synchronized CompletableFuture<Void> awaitApplied(int index) {
+        if (lastApplied >= index) {
+            return CompletableFuture.completedFuture(null);
         }
+        return applyWaiters.computeIfAbsent(index, ignored -> new CompletableFuture<>());
+    }
+
+    // Пакет команд в лог лидера под одним захватом монитора: admission control пропускает его целиком или отклоняет
+    private synchronized List<CompletableFuture<byte[]>> appendAll(List<byte[]> commands) {
+        if (state != RaftState.LEADER || transferTarget != null) {
+            throw new NotLeaderException(transferTarget != null ? transferTarget : currentLeader);
+        }
+        long bytes = 0;
+        for (byte[] command : commands) {
+            bytes += command.length;
+        }
+        if (!admission.tryAcquire(commands.size(), bytes)) {
+            throw new OverloadedException(admission.retryAfterMillis()); // в лог не пишем ни одной команды
+        }
+        List<CompletableFuture<byte[]>> results = new ArrayList<>(commands.size());
+        for (byte[] command : commands) {
+            results.add(appendAdmitted(command));
+        }
+        replicateNewEntries();
+        return results;
+    }
+
+    // Добавляет команду, прошедшую admission control, в лог лидера; место освобождается по завершении
+    // предложения, а задержка коммита подстраивает лимит. Вызывается под монитором ноды
+    private CompletableFuture<byte[]> appendAdmitted(byte[] command) {
+        long started = System.nanoTime();
+        CompletableFuture<byte[]> result = appendEntry(command, false);
+        result.whenComplete((value, error) -> admission.release(command.length, System.nanoTime() - started, error == null));
+        return result;
+    }
+
+    private CompletableFuture<byte[]> appendEntry(byte[] command, boolean configuration) {
+        int index = lastLogIndex() + 1;
+        LogEntry entry = new LogEntry(currentTerm, index, command, configuration);
+        log.append(entry);
+        return proposals.register(currentTerm, index);
+    }
+
+    // Без голосующих пиров кворум — сам лидер: коммитим сразу, не дожидаясь ответов
+    private void replicateNewEntries() {
+        if (config.majority() == 1) {
+            updateCommitIndex();
+        }
+        broadcastReplications();
+    }
+
+    /**
+     * Добавляет ноду в кластер или меняет ее роль (например, делает догнавшего learner'а голосующим).
+     * Изменения идут по одной ноде через лог; future завершается составом кластера в JSON после коммита.
+     */
+    public CompletableFuture<byte[]> changeMember(PeerEndpoint member) {
+        synchronized (this) {
+            List<PeerEndpoint> members = new ArrayList<>();
+            for (PeerEndpoint existing : config.getMembers()) {
+                if (!existing.getId().equals(member.getId())) {
+                    members.add(existing);
+                }
+            }
+            members.add(member);
+            return proposeConfiguration(members);
+        }
+    }
+
+    // Удаляет ноду из кластера; удаленный лидер уходит в FOLLOWER после коммита новой конфигурации
+    public CompletableFuture<byte[]> removeMember(String memberId) {
+        synchronized (this) {
+            List<PeerEndpoint> members = new ArrayList<>();
+            for (PeerEndpoint existing : config.getMembers()) {
+                if (!existing.getId().equals(memberId)) {
+                    members.add(existing);
+                }
+            }
+            if (members.size() == config.getMembers().size()) {
+                throw new IllegalArgumentException("Unknown member " + memberId);
+            }
+            return proposeConfiguration(members);
+        }
+    }
+
+    public List<PeerEndpoint> getMembers() {
+        return config.getMembers();
+    }
+
+    private CompletableFuture<byte[]> proposeConfiguration(List<PeerEndpoint> members) {
+        if (state != RaftState.LEADER || transferTarget != null) {
+            throw new NotLeaderException(transferTarget != null ? transferTarget : currentLeader);
+        }
+        // одна незакоммиченная конфигурация за раз: любые два кворума соседних конфигураций пересекаются
+        if (configs.lastKey() > commitIndex) {
+            throw new IllegalStateException("Another membership change is in progress");
+        }
+        // пока в текущем терме ничего не закоммичено, у лидера может быть незакоммиченная конфигурация
+        // прежнего лидера, которой он не видит: изменение от нее дало бы два непересекающихся кворума.
+        // Пустая запись избрания коммитится за один раунд репликации, после нее изменение пройдет
+        if (log.termAt(commitIndex) != currentTerm) {
+            throw new IllegalStateException("Leader has not committed an entry of its term yet");
+        }
+        if (members.stream().noneMatch(member -> !member.isLearner())) {
+            throw new IllegalArgumentException("Cluster must keep at least one voting member");
+        }
+        byte[] payload;
+        try {
+            payload = mapper.writeValueAsBytes(members);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        CompletableFuture<byte[]> result = appendEntry(payload, true);
+        useConfiguration(lastLogIndex(), payload);
+        replicateNewEntries();
+        return result;
+    }
+
+    // Конфигурация действует с момента попадания записи в лог, не дожидаясь коммита; вызывается под монитором
+    private void useConfiguration(int index, byte[] payload) {
+        List<PeerEndpoint> members;
+        try {
+            members = mapper.readValue(payload, MEMBERS);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Corrupted configuration entry " + index, e);
+        }
+        ClusterConfig updated = config.withMembers(members);
+        configs.put(index, updated);
+        switchConfiguration(updated);
+    }
+
+    // Запись конфигурации удалена при усечении лога — возвращаемся к предыдущей
+    private void rollbackConfiguration(int fromIndex) {
+        if (configs.lastKey() < fromIndex) {
+            return;
+        }
+        configs.tailMap(fromIndex, true).clear();
+        switchConfiguration(configs.lastEntry().getValue());
+    }
+
+    private void switchConfiguration(ClusterConfig updated) {
+        LOGGER.info("Node {} uses cluster configuration {}", updated.getLocalId(), describe(updated.getMembers()));
+        config = updated;
+        transport.updatePeers(updated.getPeers().values());
+        nextIndex.keySet().retainAll(updated.getPeers().keySet());
+        matchIndex.keySet().retainAll(updated.getPeers().keySet());
+        lastPeerContact.keySet().retainAll(updated.getPeers().keySet());
+        timeouts.retainPeers(updated.getPeers().keySet().stream().filter(updated::isVoter).collect(Collectors.toSet()));
+        if (state == RaftState.LEADER) {
+            int next = lastLogIndex() + 1;
+            long now = System.nanoTime();
+            updated.getPeers().keySet().forEach(peer -> {
+                nextIndex.putIfAbsent(peer, next);
+                matchIndex.putIfAbsent(peer, 0);
+                lastPeerContact.putIfAbsent(peer, now);
+            });
+        }
+    }
+
+    private static String describe(List<PeerEndpoint> members) {
+        StringBuilder description = new StringBuilder("[");
+        for (PeerEndpoint member : members) {
+            if (description.length() > 1) {
+                description.append(", ");
+            }
+            description.append(member.getId()).append(member.isLearner() ? " (learner)" : "");
+        }
+        return description.append(']').toString();
     }
 
     // Обработчик RPC репликации лога от лидера
+    @Override
     public AppendEntriesResponse handleAppendEntries(AppendEntriesRequest request) {
+        AppendEntriesReceivedEvent event = new AppendEntriesReceivedEvent();
+        event.begin();
+        AppendEntriesResponse response = appendEntries(request);
+        if (event.shouldCommit()) {
+            event.nodeId = config.getLocalId();
+            event.leader = request.getLeaderId();
+            event.term = request.getTerm();
+            event.entries = request.isCompressed() ? -1 : request.getEntries().size(); // -1: число известно только после распаковки
+            event.success = response.isSuccess();
+            event.commit();
+        }
+        return response;
+    }
+
+    private AppendEntriesResponse appendEntries(AppendEntriesRequest request) {
+        if (request.isCompressed()) {
+            long started = CompressionMetrics.cpuNanos(); // распаковываем до захвата монитора
+            request = request.decompress();
+            compressionMetrics.recordDecompressed(CompressionMetrics.cpuNanos() - started);
+        }
         synchronized (this) {
-            LOGGER.info("[{}][HEARTBEAT] Node {} received AppendEntries from leader {}, term {}, entries.size={} (heartbeat if 0)", java.time.Instant.now(), config.getLocalId(), request.getLeaderId(), request.getTerm(), request.getEntries().size());
             if (request.getTerm() < currentTerm) {
-                return new AppendEntriesResponse(currentTerm, false, lastLogIndex());
+                return new AppendEntriesResponse(currentTerm, false, lastLogIndex(), ACCEPTED_CODECS);
             }
             if (request.getTerm() > currentTerm) {
                 becomeFollower(request.getTerm(), request.getLeaderId()); // переводим ноду в состояние FOLLOWER, обновляем терм и текущего лидера
             }
             else {
                 currentLeader = request.getLeaderId(); // обновляем текущего лидера
+                resolveTransfer(request.getLeaderId());
             }
             if (state != RaftState.FOLLOWER) {
                 becomeFollower(currentTerm, request.getLeaderId()); // переводим ноду в состояние FOLLOWER, обновляем терм и текущего лидера
             }
+            lastLeaderContactNanos = System.nanoTime();
+            timeouts.adoptLeaderTimeout(request.getElectionTimeoutMillis());
             resetElectionTimer(); // сбрасываем таймер выборов
 
             if (!logContains(request.getPrevLogIndex(), request.getPrevLogTerm())) {
-                return new AppendEntriesResponse(currentTerm, false, lastLogIndex());
+                return new AppendEntriesResponse(currentTerm, false, lastLogIndex(), ACCEPTED_CODECS);
             }
 
             int index = request.getPrevLogIndex();
             for (LogEntry entry : request.getEntries()) {
                 index++;
                 // если запись уже есть и терм не совпадает — удаляем "хвост" и добавляем новую запись
-                if (index < log.size()) {
-                    LogEntry existing = log.get(index);
-                    if (existing.getTerm() != entry.getTerm()) {
-                        log.subList(index, log.size()).clear();
-                        log.add(entry);
+                if (index <= log.lastIndex()) {
+                    if (log.termAt(index) != entry.getTerm()) {
+                        log.truncateFrom(index);
+                        rollbackConfiguration(index);
+                        proposals.failFrom(index, request.getLeaderId());
+                        log.append(entry);
+                        if (entry.isConfiguration()) {
+                            useConfiguration(index, entry.getCommand());
+                        }
                     }
                 } else {
-                    log.add(entry); // добавляем запись в конец списка логов
+                    log.append(entry); // добавляем запись в конец списка логов
+                    if (entry.isConfiguration()) {
+                        useConfiguration(index, entry.getCommand());
+                    }
                 }
             }
+            log.sync(); // подтверждать лидеру можно только записи, сохраненные на диск
 
-            if (request.getLeaderCommit() > commitIndex) {
-                commitIndex = Math.min(request.getLeaderCommit(), lastLogIndex()); // определяем общий подтвержденный/зафиксированный индекс
+            // коммитить можно только префикс, совпадение которого с логом лидера подтверждено этим запросом
+            int lastNewEntry = request.getPrevLogIndex() + request.getEntries().size();
+            if (request.getLeaderCommit() > commitIndex && lastNewEntry > commitIndex) {
+                commitIndex = Math.min(request.getLeaderCommit(), lastNewEntry); // определяем общий подтвержденный/зафиксированный индекс
                 applyCommittedEntries();
             }
+            long commitAge = request.getCommitAgeMillis(); // Long.MAX_VALUE — лидер сам не слышал кворум
+            recordLeaderCommit(request.getLeaderCommit(), commitAge == Long.MAX_VALUE ? Long.MIN_VALUE
+                    : lastLeaderContactNanos - TimeUnit.MILLISECONDS.toNanos(commitAge));
 
-            return new AppendEntriesResponse(currentTerm, true, lastLogIndex());
+            return new AppendEntriesResponse(currentTerm, true, lastLogIndex(), ACCEPTED_CODECS);
         }
     }
 
     // Обработчик голоса в голосовании
+    @Override
     public RequestVoteResponse handleRequestVote(RequestVoteRequest request) {
         synchronized (this) {
             if (request.getTerm() < currentTerm) {
@@ -164,21 +718,151 @@ public class RaftNode implements AutoCloseable {
             boolean voteGranted = false; // флаг отданного голоса
             boolean votedForCandidate = votedFor == null || votedFor.equals(request.getCandidateId()); // не голосовали или голосовали за этого кандидата
             boolean upToDate = isCandidateUpToDate(request.getLastLogIndex(), request.getLastLogTerm()); // проверка актуальности данных кандидата
-            if (votedForCandidate && upToDate) {
+            if (votedForCandidate && upToDate && config.isLocalVoter()) {
                 votedFor = request.getCandidateId();
                 voteGranted = true;
+                log.saveTermAndVote(currentTerm, votedFor);
                 resetElectionTimer();
             }
             return new RequestVoteResponse(currentTerm, voteGranted);
         }
     }
 
+    // Пробный голос: не меняет ни терм, ни голос. Отказ, если лидер жив — он сам или его AppendEntries
+    // приходили недавно: тогда выборы только сбили бы работающего лидера
+    @Override
+    public RequestVoteResponse handlePreVote(RequestVoteRequest request) {
+        synchronized (this) {
+            boolean leaderAlive = state == RaftState.LEADER
+                    || (currentLeader != null && System.nanoTime() - lastLeaderContactNanos < TimeUnit.MILLISECONDS.toNanos(timeouts.electionTimeoutMillis()));
+            boolean granted = request.getTerm() > currentTerm
+                    && !leaderAlive
+                    && config.isLocalVoter()
+                    && isCandidateUpToDate(request.getLastLogIndex(), request.getLastLogTerm());
+            return new RequestVoteResponse(currentTerm, granted);
+        }
+    }
+
+    // Лидер передает лидерство: начинаем выборы сразу, без pre-vote — лидер сам их инициировал
+    @Override
+    public TimeoutNowResponse handleTimeoutNow(TimeoutNowRequest request) {
+        synchronized (this) {
+            if (request.getTerm() < currentTerm || !config.isLocalVoter()) {
+                return new TimeoutNowResponse(currentTerm, false);
+            }
+            if (request.getTerm() > currentTerm) {
+                becomeFollower(request.getTerm(), request.getLeaderId());
+            }
+            LOGGER.info("Node {} received TimeoutNow from {}, starting election", config.getLocalId(), request.getLeaderId());
+            executor.execute(this::startElection);
+            return new TimeoutNowResponse(currentTerm, true);
+        }
+    }
+
+    /**
+     * Передает лидерство ноде targetId (null — самому догнавшему голосующему пиру): лидер перестает
+     * принимать команды, дореплицирует цели лог и отправляет ей TimeoutNow. Завершается id цели, когда лидером
+     * стала именно она, NotLeaderException с id лидера, если выиграл кто-то другой, или TimeoutException,
+     * если за election timeout новый лидер так и не объявился.
+     */
+    public CompletableFuture<String> transferLeadership(String targetId) {
+        synchronized (this) {
+            if (state != RaftState.LEADER) {
+                throw new NotLeaderException(currentLeader);
+            }
+            if (transferTarget != null) {
+                return transferResult;
+            }
+            String target = targetId != null ? targetId : mostUpToDateVoter();
+            if (target == null || !config.getPeers().containsKey(target) || !config.isVoter(target)) {
+                throw new IllegalArgumentException("Unknown voting peer " + targetId);
+            }
+            LOGGER.info("Leader {} transferring leadership to {}", config.getLocalId(), target);
+            transferTarget = target;
+            timeoutNowSent = false;
+            transferResult = new CompletableFuture<>();
+            CompletableFuture<String> result = transferResult;
+            transferTimeout = scheduler.schedule(this::abortTransfer, timeouts.maxSilence().toMillis(), TimeUnit.MILLISECONDS);
+            if (matchIndex.getOrDefault(target, 0) >= lastLogIndex()) {
+                sendTimeoutNow();
+            } else {
+                executor.submit(() -> replicatePeer(target));
+            }
+            return result;
+        }
+    }
+
+    private String mostUpToDateVoter() {
+        String best = null;
+        int bestMatch = -1;
+        for (Map.Entry<String, Integer> match : matchIndex.entrySet()) {
+            if (config.isVoter(match.getKey()) && match.getValue() > bestMatch) {
+                best = match.getKey();
+                bestMatch = match.getValue();
+            }
+        }
+        return best;
+    }
+
+    // Вызывается под монитором, когда цель передачи догнала лог лидера
+    private void sendTimeoutNow() {
+        if (timeoutNowSent) {
+            return;
+        }
+        timeoutNowSent = true;
+        String target = transferTarget;
+        transport.timeoutNow(target, new TimeoutNowRequest(currentTerm, config.getLocalId())).whenComplete((response, error) -> {
+            if (error != null) {
+                LOGGER.debug("TimeoutNow to {} failed: {}", target, error.getMessage());
+                return;
+            }
+            synchronized (this) {
+                if (response.getTerm() > currentTerm) {
+                    becomeFollower(response.getTerm(), target);
+                }
+            }
+        });
+    }
+
+    private synchronized void abortTransfer() {
+        if (transferTarget == null) {
+            return;
+        }
+        LOGGER.warn("Leader {} failed to transfer leadership to {}", config.getLocalId(), transferTarget);
+        finishTransfer(new TimeoutException("Leadership transfer to " + transferTarget + " timed out"));
+    }
+
+    // Исход передачи решает то, кто стал лидером: успех, только если это цель. Лидер ушел в FOLLOWER по
+    // check-quorum или из-за чужих выборов и цель так и не выиграла — NotLeaderException с настоящим лидером.
+    // Вызывается под монитором; leaderId == null — лидер еще неизвестен, передача остается в ожидании
+    private void resolveTransfer(String leaderId) {
+        if (transferTarget == null || leaderId == null) {
+            return;
+        }
+        finishTransfer(leaderId.equals(transferTarget) ? null : new NotLeaderException(leaderId));
+    }
+
+    private void finishTransfer(Throwable error) {
+        CompletableFuture<String> result = transferResult;
+        String target = transferTarget;
+        if (transferTimeout != null) {
+            transferTimeout.cancel(false);
+        }
+        transferTarget = null;
+        transferResult = null;
+        transferTimeout = null;
+        if (error != null) {
+            result.completeExceptionally(error);
+        } else {
+            result.complete(target);
+        }
+    }
+
     public byte[] readFromStateMachine(byte[] query) {
         return stateMachine.apply(query);
     }
 
     private void broadcastReplications() {
-        LOGGER.info("[{}][HEARTBEAT] Leader {} broadcastReplications(), term {}", java.time.Instant.now(), config.getLocalId(), currentTerm);
         config.getPeers().keySet().forEach(peerId -> executor.submit(() -> replicatePeer(peerId)));
     }
 
@@ -191,15 +875,43 @@ public class RaftNode implements AutoCloseable {
             }
             int next = nextIndex.computeIfAbsent(peerId, p -> lastLogIndex() + 1);
             int prevIndex = next - 1;
-            long prevTerm = log.get(prevIndex).getTerm();
+            long prevTerm = log.termAt(prevIndex);
             List<LogEntry> entries = Collections.emptyList();
             if (next <= lastLogIndex()) {
-                entries = new ArrayList<>(log.subList(next, log.size()));
+                entries = log.entriesFrom(next);
+                if (!traces.isEmpty()) {
+                    long now = System.nanoTime();
+                    traces.tailMap(next).values().forEach(trace -> trace.peerSent(peerId, now));
+                }
             }
-            request = new AppendEntriesRequest(currentTerm, config.getLocalId(), prevIndex, prevTerm, entries, commitIndex);
+            request = new AppendEntriesRequest(currentTerm, config.getLocalId(), prevIndex, prevTerm, entries, commitIndex,
+                    null, timeouts.isAdaptive() ? timeouts.electionTimeoutMillis() : 0, commitAgeMillis());
+        }
+        long sentNanos = System.nanoTime();
+        boolean carriesEntries = !request.getEntries().isEmpty();
+        if (carriesEntries) {
+            dataInFlight.merge(peerId, 1, Integer::sum);
         }
+        AppendEntriesRequest sent = compressIfUseful(peerId, request);
+        AppendEntriesSentEvent event = new AppendEntriesSentEvent();
+        event.begin();
         // Отправка запроса и обработка ответа
-        transport.appendEntries(peerId, request).whenComplete((response, error) -> {
+        transport.appendEntries(peerId, sent).whenComplete((response, error) -> {
+            if (carriesEntries) {
+                dataInFlight.computeIfPresent(peerId, (peer, count) -> count > 1 ? count - 1 : null);
+            }
+            if (event.shouldCommit()) {
+                event.end();
+                event.nodeId = config.getLocalId();
+                event.peer = peerId;
+                event.term = request.getTerm();
+                event.prevLogIndex = request.getPrevLogIndex();
+                event.entries = request.getEntries().size();
+                event.compressed = sent.isCompressed();
+                event.success = error == null && response.isSuccess();
+                event.failure = error != null ? error.getMessage() : null;
+                event.commit();
+            }
             if (error != null) {
                 LOGGER.debug("AppendEntries to {} failed: {}", peerId, error.getMessage());
                 return;
@@ -212,11 +924,23 @@ public class RaftNode implements AutoCloseable {
                 if (state != RaftState.LEADER) {
                     return;
                 }
+                long now = System.nanoTime();
+                lastPeerContact.put(peerId, now);
+                if (request.getEntries().isEmpty() && config.isVoter(peerId)) {
+                    timeouts.recordRtt(peerId, now - sentNanos);
+                }
+                if (response.getCodecs().contains(EntryBatchCodec.DEFLATE)) {
+                    compressingPeers.add(peerId);
+                } else {
+                    compressingPeers.remove(peerId); // пир мог перезапуститься старой версией
+                }
                 if (response.isSuccess()) {
                     int match = request.getPrevLogIndex() + request.getEntries().size(); // максимальный индекс, до которого пир точно имеет те же записи, что и лидер
-                    matchIndex.put(peerId, match);
-                    nextIndex.put(peerId, match + 1);
-                    updateCommitIndex(); // на основе всех matchIndex лидер определяет, какие записи уже реплицированы большинством и соответственно сдвигает commitIndex
+                    if (!traces.isEmpty() && !request.getEntries().isEmpty()) {
+                        traces.subMap(request.getPrevLogIndex(), false, match, true).values()
+                                .forEach(trace -> trace.peerAcked(peerId, now));
+                    }
+                    recordReplicationSuccess(peerId, match);
                 } else { // пир не согласен с prevIndex/prevTerm или его лог не совпадает
                     int next = Math.max(1, nextIndex.getOrDefault(peerId, lastLogIndex() + 1) - 1); // откатываемся назад по nextIndex
                     nextIndex.put(peerId, next);
@@ -226,17 +950,49 @@ public class RaftNode implements AutoCloseable {
         });
     }
 
+    // Сжимает записи вне монитора ноды, если сжатие включено, пакет не меньше порога и пир его принимает
+    private AppendEntriesRequest compressIfUseful(String peerId, AppendEntriesRequest request) {
+        if (!options.isCompressEntries() || request.getEntries().isEmpty()) {
+            return request;
+        }
+        int rawSize = EntryBatchCodec.rawSize(request.getEntries());
+        if (rawSize < options.getCompressionThreshold() || !compressingPeers.contains(peerId)) {
+            compressionMetrics.recordSkipped();
+            return request;
+        }
+        long started = CompressionMetrics.cpuNanos();
+        AppendEntriesRequest compressed = request.compress();
+        compressionMetrics.recordCompressed(rawSize, compressed.getCompressedEntries().length,
+                CompressionMetrics.cpuNanos() - started);
+        return compressed;
+    }
+
+    // Фиксирует подтверждение от пира и пересчитывает commitIndex.
+    // Вызывается под монитором ноды; package-private для бенчмарков
+    void recordReplicationSuccess(String peerId, int match) {
+        matchIndex.put(peerId, match);
+        nextIndex.put(peerId, match + 1);
+        updateCommitIndex(); // на основе всех matchIndex лидер определяет, какие записи уже реплицированы большинством и соответственно сдвигает commitIndex
+        if (peerId.equals(transferTarget) && match >= lastLogIndex()) {
+            sendTimeoutNow();
+        }
+    }
+
     private void updateCommitIndex() {
         int lastIdx = lastLogIndex();
         for (int i = lastIdx; i > commitIndex; i--) {
-            int replicated = 1; // self
-            for (Integer match : matchIndex.values()) {
-                if (match >= i) {
+            int replicated = config.isLocalVoter() ? 1 : 0; // self, если лидер еще голосующий (при исключении самого себя — нет)
+            for (Map.Entry<String, Integer> match : matchIndex.entrySet()) {
+                if (match.getValue() >= i && config.isVoter(match.getKey())) {
                     replicated++;
                 }
             }
-            if (replicated >= config.majority() && log.get(i).getTerm() == currentTerm) {
+            if (replicated >= config.majority() && log.termAt(i) == currentTerm) {
+                log.sync(); // собственные записи лидера входят в кворум, поэтому тоже должны быть на диске
                 commitIndex = i;
+                if (!traces.isEmpty()) {
+                    traces.headMap(i, true).values().forEach(trace -> trace.mark(ProposalTrace.Stage.COMMITTED));
+                }
                 applyCommittedEntries();
                 break;
             }
@@ -244,35 +1000,173 @@ public class RaftNode implements AutoCloseable {
     }
 
     private void applyCommittedEntries() {
+        CommitEvent event = new CommitEvent();
+        event.begin();
+        int fromIndex = lastApplied + 1;
         while (lastApplied < commitIndex) {
-            lastApplied++;
-            LogEntry entry = log.get(lastApplied);
-            byte[] result = stateMachine.apply(entry.getCommand());
-            CompletableFuture<byte[]> future = pendingResponses.remove(entry.getIndex());
-            if (future != null) {
-                future.complete(result);
+            // все новые закоммиченные записи уходят в state machine одним пакетом, например когда фолловер догоняет
+            int to = Math.min(commitIndex, lastApplied + MAX_APPLY_BATCH);
+            List<LogEntry> entries = new ArrayList<>(to - lastApplied);
+            for (int index = lastApplied + 1; index <= to; index++) {
+                entries.add(log.get(index));
+            }
+            // откатываться дальше закоммиченной конфигурации не нужно
+            List<byte[]> results = applyEntries(entries, entry -> configs.headMap(entry.getIndex()).clear());
+            for (int i = 0; i < entries.size(); i++) {
+                LogEntry entry = entries.get(i);
+                lastApplied = entry.getIndex();
+                ProposalTrace trace = traces.isEmpty() ? null : traces.remove(entry.getIndex());
+                if (trace != null) {
+                    trace.mark(ProposalTrace.Stage.APPLIED);
+                }
+                proposals.complete(entry.getIndex(), entry.getTerm(), results.get(i));
+            }
+        }
+        log.saveCommitIndex(commitIndex);
+        if (event.shouldCommit()) {
+            event.nodeId = config.getLocalId();
+            event.leader = state == RaftState.LEADER;
+            event.fromIndex = fromIndex;
+            event.commitIndex = commitIndex;
+            event.commit();
+        }
+        if (!freshnessWaiters.isEmpty()) {
+            notifyFreshness();
+        }
+        while (!applyWaiters.isEmpty() && applyWaiters.firstKey() <= lastApplied) {
+            CompletableFuture<Void> waiter = applyWaiters.pollFirstEntry().getValue();
+            executor.execute(() -> waiter.complete(null)); // ответ клиенту пишется не под монитором
+        }
+        if (state == RaftState.LEADER && !config.isLocalVoter() && configs.lastKey() <= commitIndex) {
+            // лидер исключен из кластера или стал learner'ом: новая конфигурация закоммичена, уступаем
+            LOGGER.info("Leader {} is no longer a voting member, stepping down", config.getLocalId());
+            becomeFollower(currentTerm, null);
+        }
+    }
+
+    // Подряд идущие команды применяются одним applyBatch, запись конфигурации разрывает пакет.
+    // Результаты — в порядке записей; для записи конфигурации — ее команда
+    private List<byte[]> applyEntries(List<LogEntry> entries, Consumer<LogEntry> onConfiguration) {
+        List<byte[]> results = new ArrayList<>(entries.size());
+        List<byte[]> commands = new ArrayList<>(entries.size());
+        int firstIndex = 0;
+        for (LogEntry entry : entries) {
+            if (entry.isConfiguration() || isNoOp(entry)) {
+                // пустая запись избрания в state machine не попадает, но тоже разрывает пакет: индексы в нем подряд
+                applyCommands(firstIndex, commands, results);
+                if (entry.isConfiguration()) {
+                    onConfiguration.accept(entry);
+                }
+                results.add(entry.getCommand());
+            } else {
+                if (commands.isEmpty()) {
+                    firstIndex = entry.getIndex();
+                }
+                commands.add(entry.getCommand());
             }
         }
+        applyCommands(firstIndex, commands, results);
+        return results;
+    }
+
+    private static boolean isNoOp(LogEntry entry) {
+        return !entry.isConfiguration() && entry.getCommand().length == 0;
+    }
+
+    private void applyCommands(int firstIndex, List<byte[]> commands, List<byte[]> results) {
+        if (commands.isEmpty()) {
+            return;
+        }
+        results.addAll(stateMachine.applyBatch(firstIndex, commands));
+        commands.clear();
+    }
+
+    private void onElectionTimeout() {
+        if (options.isPreVote()) {
+            startPreVote();
+        } else {
+            startElection();
+        }
+    }
+
+    // Пробный раунд: терм не растет, пока кворум не ответит, что проголосовал бы за эту ноду.
+    // Отрезанная от кластера нода кворум не наберет и после возвращения не сбросит лидера своим термом
+    private void startPreVote() {
+        RequestVoteRequest request;
+        long term;
+        synchronized (this) {
+            if (state == RaftState.LEADER) {
+                return;
+            }
+            resetElectionTimer();
+            term = currentTerm;
+            int lastIndex = lastLogIndex();
+            request = new RequestVoteRequest(currentTerm + 1, config.getLocalId(), lastIndex, log.termAt(lastIndex));
+            preVoteRound = finishRound(preVoteRound, false); // предыдущий пробный раунд не набрал кворум
+            preVoteRound = startRound(currentTerm + 1, true);
+        }
+        AtomicInteger votes = new AtomicInteger(1);
+        AtomicBoolean passed = new AtomicBoolean(false);
+        if (votes.get() >= config.majority()) {
+            startElection();
+            return;
+        }
+        config.getPeers().keySet().stream().filter(config::isVoter).forEach(peerId -> transport.preVote(peerId, request).whenComplete((response, error) -> {
+            if (error != null) {
+                LOGGER.debug("PreVote to {} failed: {}", peerId, error.getMessage());
+                return;
+            }
+            synchronized (this) {
+                if (response.getTerm() > currentTerm) {
+                    becomeFollower(response.getTerm(), null);
+                    return;
+                }
+                if (state == RaftState.LEADER || currentTerm != term || !response.isVoteGranted()) {
+                    return;
+                }
+                int granted = votes.incrementAndGet();
+                if (preVoteRound != null && preVoteRound.term == term + 1) {
+                    preVoteRound.votes = granted;
+                }
+                if (granted >= config.majority() && passed.compareAndSet(false, true)) {
+                    if (preVoteRound != null && preVoteRound.term == term + 1) {
+                        preVoteRound = finishRound(preVoteRound, true);
+                    }
+                    executor.execute(this::startElection);
+                }
+            }
+        }));
     }
 
     private void startElection() {
         RequestVoteRequest voteRequest;
         // Нода становится кандидатом и голосует за себя (подготовка запроса)
         synchronized (this) {
+            if (!config.isLocalVoter()) {
+                return;
+            }
             resetElectionTimer();
+            roleChanged(state, RaftState.CANDIDATE, currentTerm + 1, null);
             state = RaftState.CANDIDATE;
             currentTerm++;
             votedFor = config.getLocalId();
             currentLeader = null;
+            log.saveTermAndVote(currentTerm, votedFor);
+            electionRound = finishRound(electionRound, false); // предыдущие выборы закончились без победителя
+            electionRound = startRound(currentTerm, false);
             int lastIndex = lastLogIndex();
-            long lastTerm = log.get(lastIndex).getTerm();
+            long lastTerm = log.termAt(lastIndex);
             voteRequest = new RequestVoteRequest(currentTerm, config.getLocalId(), lastIndex, lastTerm); // запрос на голосование
+            if (config.majority() == 1) {
+                becomeLeader(); // единственный голосующий: собственного голоса достаточно
+                return;
+            }
         }
 
         AtomicInteger votes = new AtomicInteger(1); // счетчик голосов
         AtomicBoolean electionComplete = new AtomicBoolean(false); // флаг окончания голосования
         // Отправка запроса и обработка ответа
-        config.getPeers().keySet().forEach(peerId -> transport.requestVote(peerId, voteRequest).whenComplete((response, error) -> {
+        config.getPeers().keySet().stream().filter(config::isVoter).forEach(peerId -> transport.requestVote(peerId, voteRequest).whenComplete((response, error) -> {
             if (error != null) {
                 LOGGER.debug("RequestVote to {} failed: {}", peerId, error.getMessage());
                 return;
@@ -286,6 +1180,9 @@ public class RaftNode implements AutoCloseable {
                 }
                 if (response.isVoteGranted()) {
                     int count = votes.incrementAndGet();
+                    if (electionRound != null) {
+                        electionRound.votes = count;
+                    }
                     if (!electionComplete.get() && count >= config.majority()) {
                         electionComplete.set(true);
                         becomeLeader(); // меняем статус ноды на лидера
@@ -295,12 +1192,15 @@ public class RaftNode implements AutoCloseable {
         }));
     }
 
-    // Меняет роль ноды на LEADER, логирует смену роли,
-    // инициализирует nextIndex/matchIndex для всех пиров и запускает периодический heartbeat
-    private void becomeLeader() {
-        LOGGER.info("[{}][ROLE] Node {} became LEADER term {}", java.time.Instant.now(), config.getLocalId(), currentTerm);
+    // Меняет роль ноды на LEADER, логирует смену роли, инициализирует nextIndex/matchIndex для всех пиров,
+    // добавляет в лог пустую запись своего терма и запускает периодический heartbeat
+    void becomeLeader() {
+        roleChanged(state, RaftState.LEADER, currentTerm, config.getLocalId());
+        electionRound = finishRound(electionRound, true);
+        preVoteRound = finishRound(preVoteRound, false);
         state = RaftState.LEADER;
         currentLeader = config.getLocalId();
+        resolveTransfer(config.getLocalId()); // ушли на выборы во время передачи и снова выиграли их сами
         nextIndex.clear();
         matchIndex.clear();
         int next = lastLogIndex() + 1;
@@ -308,46 +1208,220 @@ public class RaftNode implements AutoCloseable {
             electionTask.cancel(false);
             electionTask = null;
         }
+        long now = System.nanoTime();
+        lastPeerContact.clear();
         config.getPeers().keySet().forEach(peer -> {
             nextIndex.put(peer, next);
             matchIndex.put(peer, 0);
+            lastPeerContact.put(peer, now); // отсчет check-quorum начинается с момента избрания
         });
+        // Записи прежних термов коммитятся только вместе с записью текущего: пустая запись коммитит их
+        // без ожидания клиентов и открывает изменения состава (см. proposeConfiguration).
+        // Первый heartbeat отправит ее пирам
+        log.append(new LogEntry(currentTerm, next, NO_OP));
+        if (config.majority() == 1) {
+            updateCommitIndex();
+        }
         if (heartbeatTask != null) {
             heartbeatTask.cancel(false);
         }
-        heartbeatTask = scheduler.scheduleAtFixedRate(this::broadcastReplications,
-                0,
-                HEARTBEAT_INTERVAL.toMillis(),
-                TimeUnit.MILLISECONDS);
+        long generation = ++heartbeatGeneration;
+        heartbeatTask = scheduler.schedule(() -> heartbeat(generation), 0, TimeUnit.MILLISECONDS);
+    }
+
+    // Интервал может меняться вместе с RTT, поэтому следующий heartbeat планируется после текущего
+    private void heartbeat(long generation) {
+        if (options.isCheckQuorum() && !checkQuorum()) {
+            return;
+        }
+        config.getPeers().keySet().forEach(this::sendHeartbeat);
+        synchronized (this) {
+            if (state == RaftState.LEADER && generation == heartbeatGeneration) {
+                heartbeatTask = scheduler.schedule(() -> heartbeat(generation), timeouts.heartbeatMillis(), TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    // Пиру, которому уходят записи, heartbeat отправляется отдельным пустым AppendEntries: транспорт
+    // доставит его по быстрой полосе, и большой пакет записей не задержит его до выборов у фолловера.
+    // prevLogIndex — подтвержденный matchIndex, поэтому проверка лога проходит и nextIndex не трогается;
+    // фолловер коммитит не дальше prevLogIndex, так что leaderCommit передается как есть
+    private void sendHeartbeat(String peerId) {
+        AppendEntriesRequest keepAlive;
+        synchronized (this) {
+            if (state != RaftState.LEADER) {
+                return;
+            }
+            boolean lagging = nextIndex.computeIfAbsent(peerId, p -> lastLogIndex() + 1) <= lastLogIndex();
+            boolean busy = dataInFlight.containsKey(peerId);
+            if (!lagging && !busy) {
+                keepAlive = null;
+            } else {
+                if (!busy) {
+                    executor.submit(() -> replicatePeer(peerId));
+                }
+                int match = matchIndex.getOrDefault(peerId, 0);
+                keepAlive = new AppendEntriesRequest(currentTerm, config.getLocalId(), match, log.termAt(match),
+                        Collections.emptyList(), commitIndex, null,
+                        timeouts.isAdaptive() ? timeouts.electionTimeoutMillis() : 0, commitAgeMillis());
+            }
+        }
+        if (keepAlive == null) {
+            replicatePeer(peerId); // пир догнал лидера: обычный пустой AppendEntries
+            return;
+        }
+        long sentNanos = System.nanoTime();
+        transport.appendEntries(peerId, keepAlive).whenComplete((response, error) -> {
+            if (error != null) {
+                LOGGER.debug("Heartbeat to {} failed: {}", peerId, error.getMessage());
+                return;
+            }
+            synchronized (this) {
+                if (response.getTerm() > currentTerm) {
+                    becomeFollower(response.getTerm(), null);
+                    return;
+                }
+                if (state != RaftState.LEADER || !response.isSuccess()) {
+                    return;
+                }
+                long now = System.nanoTime();
+                lastPeerContact.put(peerId, now);
+                if (config.isVoter(peerId)) {
+                    timeouts.recordRtt(peerId, now - sentNanos);
+                }
+            }
+        });
+    }
+
+    // Давность ответа кворума: раньше этого момента другой лидер не мог закоммитить новых записей
+    private long quorumContactAgeNanos(long now) {
+        List<Long> ages = new ArrayList<>();
+        if (config.isLocalVoter()) {
+            ages.add(0L);
+        }
+        for (String peer : config.getPeers().keySet()) {
+            if (config.isVoter(peer)) {
+                Long contact = lastPeerContact.get(peer);
+                ages.add(contact != null ? Math.max(0, now - contact) : Long.MAX_VALUE);
+            }
+        }
+        if (ages.size() < config.majority()) {
+            return Long.MAX_VALUE;
+        }
+        Collections.sort(ages);
+        return ages.get(config.majority() - 1);
+    }
+
+    private long commitAgeMillis() {
+        long age = quorumContactAgeNanos(System.nanoTime());
+        return age == Long.MAX_VALUE ? Long.MAX_VALUE : TimeUnit.NANOSECONDS.toMillis(age);
+    }
+
+    // Фолловер запоминает, когда лидер имел состояние до leaderCommit; как только lastApplied его догонит,
+    // этот момент становится свежестью локальных чтений. Вызывается под монитором ноды
+    private void recordLeaderCommit(int leaderCommit, long asOfNanos) {
+        if (leaderCommit < knownLeaderCommit) {
+            return; // новый лидер еще не знает всего закоммиченного: такой замер ничего не добавляет
+        }
+        knownLeaderCommit = leaderCommit;
+        long[] last = commitSamples.peekLast();
+        if (last != null && last[0] == leaderCommit) {
+            last[1] = Math.max(last[1], asOfNanos);
+        } else {
+            commitSamples.addLast(new long[] {leaderCommit, asOfNanos});
+            if (commitSamples.size() > MAX_COMMIT_SAMPLES) {
+                commitSamples.pollFirst(); // свежесть станет консервативнее, но не завысится
+            }
+        }
+        while (!commitSamples.isEmpty() && commitSamples.peekFirst()[0] <= lastApplied) {
+            freshAsOfNanos = Math.max(freshAsOfNanos, commitSamples.pollFirst()[1]);
+        }
+        if (!freshnessWaiters.isEmpty()) {
+            notifyFreshness();
+        }
+    }
+
+    private void notifyFreshness() {
+        ReadFreshness current = readFreshness();
+        Iterator<FreshnessWaiter> iterator = freshnessWaiters.iterator();
+        while (iterator.hasNext()) {
+            FreshnessWaiter waiter = iterator.next();
+            if (current.within(waiter.maxLag, waiter.maxStalenessMillis)) {
+                iterator.remove();
+                executor.execute(() -> waiter.result.complete(current)); // ответ клиенту пишется не под монитором
+            }
+        }
+    }
+
+    private static final class FreshnessWaiter {
+        final long maxLag;
+        final long maxStalenessMillis;
+        final CompletableFuture<ReadFreshness> result = new CompletableFuture<>();
+
+        FreshnessWaiter(long maxLag, long maxStalenessMillis) {
+            this.maxLag = maxLag;
+            this.maxStalenessMillis = maxStalenessMillis;
+        }
+    }
+
+    // Лидер, не получавший ответов от кворума дольше election timeout, сам становится фолловером:
+    // в меньшей части разделенной сети он все равно не может ничего закоммитить
+    private synchronized boolean checkQuorum() {
+        if (state != RaftState.LEADER) {
+            return false;
+        }
+        long now = System.nanoTime();
+        int active = config.isLocalVoter() ? 1 : 0; // self
+        for (Map.Entry<String, Long> contact : lastPeerContact.entrySet()) {
+            if (config.isVoter(contact.getKey()) && now - contact.getValue() < timeouts.maxSilence().toNanos()) {
+                active++;
+            }
+        }
+        if (active >= config.majority()) {
+            return true;
+        }
+        LOGGER.warn("Leader {} has not heard from a quorum for {} ms, stepping down",
+                config.getLocalId(), timeouts.maxSilence().toMillis());
+        becomeFollower(currentTerm, null);
+        return false;
     }
 
     // Меняет роль ноды на FOLLOWER, логирует смену роли, обновляет терм и текущего лидера,
     // отменяет heartbeat и перезапускает таймер выборов.
     private void becomeFollower(long term, String leaderId) {
-        LOGGER.info("[{}][ROLE] Node {} became FOLLOWER term {}", java.time.Instant.now(), config.getLocalId(), term);
+        roleChanged(state, RaftState.FOLLOWER, term, leaderId);
+        electionRound = finishRound(electionRound, false);
         state = RaftState.FOLLOWER;
+        resolveTransfer(leaderId); // без известного лидера передача ждет его AppendEntries или своего таймаута
+        if (term != currentTerm) {
+            votedFor = null; // голос, отданный в текущем терме, сохраняется и после рестарта
+        }
         currentTerm = term;
-        votedFor = null;
         currentLeader = leaderId;
+        log.saveTermAndVote(currentTerm, votedFor);
         if (heartbeatTask != null) {
             heartbeatTask.cancel(false);
             heartbeatTask = null;
         }
+        heartbeatGeneration++;
+        proposals.failAll(leaderId); // клиенты сразу повторят команды у нового лидера, а не ждут таймаута
+        traces.clear();
+        timeouts.clearRtt(); // дальше таймауты задает новый лидер
         resetElectionTimer();
     }
 
     // Проверка, есть ли в логе запись с указанным индексом и термом
     private boolean logContains(int prevIndex, long prevTerm) {
-        if (prevIndex >= log.size()) {
+        if (prevIndex > log.lastIndex()) {
             return false;
         }
-        return log.get(prevIndex).getTerm() == prevTerm;
+        return log.termAt(prevIndex) == prevTerm;
     }
 
     // Проверка “свежести” лога кандидата с локальным логом
     private boolean isCandidateUpToDate(int candidateLastIndex, long candidateLastTerm) {
         int lastIndex = lastLogIndex();
-        long lastTerm = log.get(lastIndex).getTerm();
+        long lastTerm = log.termAt(lastIndex);
         if (candidateLastTerm != lastTerm) {
             return candidateLastTerm > lastTerm;
         }
@@ -355,23 +1429,127 @@ public class RaftNode implements AutoCloseable {
     }
 
     private int lastLogIndex() {
-        return log.size() - 1;
+        return log.lastIndex();
     }
 
     private void resetElectionTimer() {
         if (electionTask != null) {
             electionTask.cancel(false);
+            electionTask = null;
+        }
+        if (!config.isLocalVoter()) {
+            return; // learner и исключенная из кластера нода не участвуют в выборах
+        }
+        long minTimeout = timeouts.electionTimeoutMillis();
+        long timeout = minTimeout + random.nextInt((int) Math.max(1, minTimeout));
+        ElectionTimerEvent event = new ElectionTimerEvent();
+        if (event.shouldCommit()) {
+            event.nodeId = config.getLocalId();
+            event.timeout = timeout;
+            event.commit();
+        }
+        electionTask = scheduler.schedule(this::onElectionTimeout, timeout, TimeUnit.MILLISECONDS);
+    }
+
+    // Текстовый лог — только для смены роли или терма; остальная диагностика идет JFR-событиями
+    private void roleChanged(RaftState from, RaftState to, long term, String leaderId) {
+        if (from == to && term == currentTerm) {
+            return;
+        }
+        LOGGER.info("Node {} became {} term {}", config.getLocalId(), to, term);
+        RoleChangeEvent event = new RoleChangeEvent();
+        if (event.shouldCommit()) {
+            event.nodeId = config.getLocalId();
+            event.from = from.toString();
+            event.to = to.toString();
+            event.term = term;
+            event.leader = leaderId;
+            event.commit();
+        }
+    }
+
+    private ElectionEvent startRound(long term, boolean preVote) {
+        ElectionEvent round = new ElectionEvent();
+        round.begin();
+        round.nodeId = config.getLocalId();
+        round.term = term;
+        round.preVote = preVote;
+        round.votes = 1; // свой голос
+        return round;
+    }
+
+    // Завершает раунд с исходом won; возвращает null, чтобы вызывающий сбросил поле раунда
+    private ElectionEvent finishRound(ElectionEvent round, boolean won) {
+        if (round != null) {
+            round.end();
+            round.won = won;
+            round.commit();
+        }
+        return null;
+    }
+
+    /**
+     * Замораживает ноду, как GC-пауза или SIGSTOP, для сценариев отказов. Отдельный поток захватывает монитор ноды
+     * и держит его до resume: таймеры выборов и heartbeat, обработка RPC и новых предложений ждут монитора,
+     * а просроченные за паузу таймеры срабатывают сразу после нее. Возвращается, когда монитор уже захвачен.
+     */
+    public void pause() {
+        CountDownLatch gate = new CountDownLatch(1);
+        synchronized (pauseLock) {
+            if (pauseGate != null) {
+                return;
+            }
+            pauseGate = gate;
+        }
+        CountDownLatch held = new CountDownLatch(1);
+        Thread holder = new Thread(() -> {
+            synchronized (this) {
+                paused = true;
+                held.countDown();
+                awaitUninterruptibly(gate);
+                paused = false;
+            }
+        }, "raft-pause-" + config.getLocalId());
+        holder.setDaemon(true);
+        holder.start();
+        awaitUninterruptibly(held);
+    }
+
+    public void resume() {
+        CountDownLatch gate;
+        synchronized (pauseLock) {
+            gate = pauseGate;
+            pauseGate = null;
+        }
+        if (gate != null) {
+            gate.countDown();
+        }
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
         }
-        long timeout = MIN_ELECTION_TIMEOUT.toMillis() +
-                random.nextInt((int) (MAX_ELECTION_TIMEOUT.toMillis() - MIN_ELECTION_TIMEOUT.toMillis()));
-        LOGGER.info("[{}][TIMER] Node {} reset election timer to {} ms", java.time.Instant.now(), config.getLocalId(), timeout);
-        electionTask = scheduler.schedule(this::startElection, timeout, TimeUnit.MILLISECONDS);
     }
 
     @Override
     public void close() {
+        resume();
         scheduler.shutdownNow();
         executor.shutdownNow();
+        proposals.failAll(null);
+        synchronized (this) {
+            log.close();
+        }
     }
 }
 
@@ -0,0 +1,143 @@
+package org.example.raft;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Настройки ноды. Значения по умолчанию сохраняют исходное поведение.
+ */
+public final class RaftOptions {
+    private boolean forwardProposals = false; // фолловер пересылает записи лидеру вместо ответа 409
+    private Path dataDirectory; // каталог лога на диске; null — лог только в памяти
+    private boolean preVote = false; // перед выборами узнать, поддержит ли кворум, не поднимая терм
+    private boolean checkQuorum = false; // лидер уходит в FOLLOWER, если кворум не отвечает дольше election timeout
+    // Сжатие пакетов записей в AppendEntries: выключено, в LAN оно только добавляет задержку
+    private boolean compressEntries = false;
+    private int compressionThreshold = 4096; // пакеты меньше этого размера (байт) уходят без сжатия
+    // Таймауты из измеренного RTT до пиров вместо констант 150/400 мс; границы — для election timeout
+    private boolean adaptiveTimeouts = false;
+    private Duration minElectionTimeout = Duration.ofMillis(50);
+    private Duration maxElectionTimeout = Duration.ofSeconds(5);
+    private Duration proposalTimeout = Duration.ofSeconds(5); // незакоммиченное за это время предложение завершается ошибкой
+    // Лимиты предложений, ожидающих коммита; сверх них лидер сразу отвечает OverloadedException
+    private int maxPendingProposals = 10_000;
+    private long maxPendingBytes = 64L * 1024 * 1024;
+    private boolean adaptiveConcurrency = false; // лимит по числу подстраивается под задержку коммита
+
+    public boolean isForwardProposals() {
+        return forwardProposals;
+    }
+
+    public RaftOptions setForwardProposals(boolean forwardProposals) {
+        this.forwardProposals = forwardProposals;
+        return this;
+    }
+
+    public boolean isPreVote() {
+        return preVote;
+    }
+
+    public RaftOptions setPreVote(boolean preVote) {
+        this.preVote = preVote;
+        return this;
+    }
+
+    public boolean isCheckQuorum() {
+        return checkQuorum;
+    }
+
+    public RaftOptions setCheckQuorum(boolean checkQuorum) {
+        this.checkQuorum = checkQuorum;
+        return this;
+    }
+
+    public boolean isCompressEntries() {
+        return compressEntries;
+    }
+
+    public RaftOptions setCompressEntries(boolean compressEntries) {
+        this.compressEntries = compressEntries;
+        return this;
+    }
+
+    public int getCompressionThreshold() {
+        return compressionThreshold;
+    }
+
+    public RaftOptions setCompressionThreshold(int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+        return this;
+    }
+
+    public boolean isAdaptiveTimeouts() {
+        return adaptiveTimeouts;
+    }
+
+    public RaftOptions setAdaptiveTimeouts(boolean adaptiveTimeouts) {
+        this.adaptiveTimeouts = adaptiveTimeouts;
+        return this;
+    }
+
+    public Duration getMinElectionTimeout() {
+        return minElectionTimeout;
+    }
+
+    public RaftOptions setMinElectionTimeout(Duration minElectionTimeout) {
+        this.minElectionTimeout = minElectionTimeout;
+        return this;
+    }
+
+    public Duration getMaxElectionTimeout() {
+        return maxElectionTimeout;
+    }
+
+    public RaftOptions setMaxElectionTimeout(Duration maxElectionTimeout) {
+        this.maxElectionTimeout = maxElectionTimeout;
+        return this;
+    }
+
+    public Duration getProposalTimeout() {
+        return proposalTimeout;
+    }
+
+    public RaftOptions setProposalTimeout(Duration proposalTimeout) {
+        this.proposalTimeout = proposalTimeout;
+        return this;
+    }
+
+    public int getMaxPendingProposals() {
+        return maxPendingProposals;
+    }
+
+    public RaftOptions setMaxPendingProposals(int maxPendingProposals) {
+        this.maxPendingProposals = maxPendingProposals;
+        return this;
+    }
+
+    public long getMaxPendingBytes() {
+        return maxPendingBytes;
+    }
+
+    public RaftOptions setMaxPendingBytes(long maxPendingBytes) {
+        this.maxPendingBytes = maxPendingBytes;
+        return this;
+    }
+
+    public boolean isAdaptiveConcurrency() {
+        return adaptiveConcurrency;
+    }
+
+    public RaftOptions setAdaptiveConcurrency(boolean adaptiveConcurrency) {
+        this.adaptiveConcurrency = adaptiveConcurrency;
+        return this;
+    }
+
+    public Path getDataDirectory() {
+        return dataDirectory;
+    }
+
+    public RaftOptions setDataDirectory(Path dataDirectory) {
+        this.dataDirectory = dataDirectory;
+        return this;
+    }
+}
@@ -0,0 +1,40 @@
+package org.example.raft;
+
+/**
+ * Насколько состояние ноды может отставать от лидера: в записях (известный leaderCommit минус lastApplied)
+ * и во времени (сколько мс назад лидер, подтвержденный кворумом, имел то же применённое состояние).
+ * У лидера отставание во времени — давность последнего ответа кворума.
+ */
+public final class ReadFreshness {
+    public static final long UNKNOWN = -1; // нода еще не получала AppendEntries от лидера
+
+    private final long lag;
+    private final long stalenessMillis;
+    private final String leaderId;
+
+    public ReadFreshness(long lag, long stalenessMillis, String leaderId) {
+        this.lag = lag;
+        this.stalenessMillis = stalenessMillis;
+        this.leaderId = leaderId;
+    }
+
+    public long getLag() {
+        return lag;
+    }
+
+    public long getStalenessMillis() {
+        return stalenessMillis;
+    }
+
+    public String getLeaderId() {
+        return leaderId;
+    }
+
+    // Отрицательная граница не ограничивает
+    public boolean within(long maxLag, long maxStalenessMillis) {
+        if (maxLag >= 0 && lag > maxLag) {
+            return false;
+        }
+        return maxStalenessMillis < 0 || (stalenessMillis != UNKNOWN && stalenessMillis <= maxStalenessMillis);
+    }
+}
@@ -0,0 +1,29 @@
+package org.example.raft;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("org.example.raft.RoleChange")
+@Label("Raft Role Change")
+@Category("Raft")
+@Description("Нода сменила роль или терм")
+@StackTrace(false)
+final class RoleChangeEvent extends jdk.jfr.Event {
+    @Label("Node")
+    String nodeId;
+
+    @Label("From")
+    String from;
+
+    @Label("To")
+    String to;
+
+    @Label("Term")
+    long term;
+
+    @Label("Leader")
+    String leader;
+}
@@ -1,5 +1,8 @@
 package org.example.raft;
 
+import java.util.ArrayList;
+import java.util.List;
+
 
 public interface StateMachine {
 
@@ -10,11 +13,33 @@ public interface StateMachine {
      * @return serialized response
      */
     byte[] apply(byte[] command);
-}
-
-
-
-
-
 
+    /**
+     * Применяет подряд идущие закоммиченные команды одним вызовом. Результат должен совпадать с
+     * последовательными вызовами apply; реализация может разделить между командами работу,
+     * которую apply делает на каждую отдельно.
+     *
+     * @param commands serialized command payloads in log order
+     * @return serialized responses in the same order
+     */
+    default List<byte[]> applyBatch(List<byte[]> commands) {
+        List<byte[]> results = new ArrayList<>(commands.size());
+        for (byte[] command : commands) {
+            results.add(apply(command));
+        }
+        return results;
+    }
 
+    /**
+     * То же, что applyBatch(commands), с индексом первой команды в логе; команды пакета идут в логе
+     * подряд, у i-й команды индекс firstIndex + i. Переопределяет state machine, которой нужен индекс,
+     * например для версий значений.
+     *
+     * @param firstIndex log index of the first command
+     * @param commands serialized command payloads in log order
+     * @return serialized responses in the same order
+     */
+    default List<byte[]> applyBatch(long firstIndex, List<byte[]> commands) {
+        return applyBatch(commands);
+    }
+}
@@ -0,0 +1,30 @@
+package org.example.raft;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Типизированные чтения из state machine: без сериализации команды в byte[] и разбора ее в apply.
+ * Реализуется state machine вместе с StateMachine; чтения не меняют состояние и не проходят через лог.
+ *
+ * @param <K> ключ запроса
+ * @param <V> результат
+ */
+public interface StateMachineQuery<K, V> {
+
+    /**
+     * @return значение по ключу или null, если его нет
+     */
+    V query(K key);
+
+    /**
+     * Несколько ключей одним вызовом; результаты в том же порядке, для отсутствующих — null.
+     */
+    default List<V> queryAll(List<K> keys) {
+        List<V> results = new ArrayList<>(keys.size());
+        for (K key : keys) {
+            results.add(query(key));
+        }
+        return results;
+    }
+}
@@ -0,0 +1,62 @@
+package org.example.raft;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Хешированное колесо таймеров: добавление за O(1), на каждом тике просматривается один слот.
+ * Точность — один тик. Отмены нет: владелец сам пропускает уже неактуальные элементы при срабатывании,
+ * поэтому элемент живет в колесе до своего дедлайна и должен быть легким ключом, а не самим объектом с данными.
+ * Не потокобезопасно, вызывается под монитором владельца.
+ */
+final class TimerWheel<T> {
+    private final long tickNanos;
+    private final List<ArrayDeque<Timeout<T>>> slots;
+    private final long startNanos;
+    private long currentTick;
+
+    TimerWheel(long tickNanos, int slotCount, long nowNanos) {
+        this.tickNanos = tickNanos;
+        this.slots = new ArrayList<>(slotCount);
+        for (int i = 0; i < slotCount; i++) {
+            slots.add(new ArrayDeque<>());
+        }
+        this.startNanos = nowNanos;
+    }
+
+    void schedule(T item, long deadlineNanos) {
+        // округляем вверх и не раньше следующего тика: срабатывание не должно прийти до дедлайна
+        long tick = Math.max(currentTick + 1, (deadlineNanos - startNanos + tickNanos - 1) / tickNanos);
+        slots.get((int) (tick % slots.size())).add(new Timeout<>(item, tick));
+    }
+
+    // Продвигает колесо до момента now и возвращает элементы, чей дедлайн наступил
+    List<T> advance(long nowNanos) {
+        List<T> expired = new ArrayList<>();
+        long targetTick = (nowNanos - startNanos) / tickNanos;
+        while (currentTick < targetTick) {
+            currentTick++;
+            Iterator<Timeout<T>> iterator = slots.get((int) (currentTick % slots.size())).iterator();
+            while (iterator.hasNext()) {
+                Timeout<T> timeout = iterator.next();
+                if (timeout.tick <= currentTick) { // иначе дедлайн через один или несколько оборотов колеса
+                    expired.add(timeout.item);
+                    iterator.remove();
+                }
+            }
+        }
+        return expired;
+    }
+
+    private static final class Timeout<T> {
+        final T item;
+        final long tick;
+
+        Timeout(T item, long tick) {
+            this.item = item;
+            this.tick = tick;
+        }
+    }
+}
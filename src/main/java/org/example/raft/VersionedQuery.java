@@ -0,0 +1,59 @@
+package org.example.raft;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Чтения на заданном индексе лога: state machine хранит версии значений и отдает состояние
+ * после применения записи index. Все ключи одного вызова читаются на одном индексе.
+ * Индекс ниже сохраненной истории или еще не примененный — IllegalArgumentException.
+ *
+ * @param <K> ключ запроса
+ * @param <V> результат
+ */
+public interface VersionedQuery<K, V> extends StateMachineQuery<K, V> {
+
+    /**
+     * @return последний индекс, состояние на котором видно читателям
+     */
+    long appliedIndex();
+
+    V queryAt(K key, long index);
+
+    /**
+     * @return версия ключа на индексе index — индекс лога его последней записи, 0 — ключа нет
+     */
+    long versionAt(K key, long index);
+
+    /**
+     * Последнее опубликованное значение ключа вместе с его версией, без снимка и блокировок.
+     *
+     * @return версия (ключ пары) и значение; null — ключа нет
+     */
+    default Map.Entry<Long, V> queryLatest(K key) {
+        while (true) {
+            long index = appliedIndex();
+            try {
+                V value = queryAt(key, index);
+                return value != null ? Map.entry(versionAt(key, index), value) : null;
+            } catch (IllegalArgumentException e) {
+                // индекс успел выйти из истории: читаем на новом
+            }
+        }
+    }
+
+    default List<V> queryAllAt(List<K> keys, long index) {
+        List<V> results = new ArrayList<>(keys.size());
+        for (K key : keys) {
+            results.add(queryAt(key, index));
+        }
+        return results;
+    }
+
+    /**
+     * Не более limit пар в порядке ключей из [fromKey, toKey) на индексе index; null в границе — без границы.
+     * Следующую страницу того же состояния читают с тем же index и fromKey после последнего ключа.
+     */
+    List<Map.Entry<K, V>> scan(K fromKey, K toKey, int limit, long index);
+}
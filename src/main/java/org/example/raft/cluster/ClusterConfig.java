@@ -1,6 +1,8 @@
 package org.example.raft.cluster;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.stream.Collectors;
@@ -10,13 +12,38 @@ public final class ClusterConfig {
     private final String localId;
     private final PeerEndpoint localEndpoint;
     private final Map<String, PeerEndpoint> peers;
+    private final boolean localMember; // false — локальная нода исключена из кластера
+    private final int voters; // голосующие ноды, включая локальную
 
     public ClusterConfig(String localId, PeerEndpoint localEndpoint, Collection<PeerEndpoint> peers) {
+        this(localId, localEndpoint, peers, true);
+    }
+
+    private ClusterConfig(String localId, PeerEndpoint localEndpoint, Collection<PeerEndpoint> peers, boolean localMember) {
         this.localId = Objects.requireNonNull(localId, "localId");
         this.localEndpoint = Objects.requireNonNull(localEndpoint, "localEndpoint");
+        this.localMember = localMember;
         this.peers = peers.stream()
                 .filter(peer -> !peer.getId().equals(localId))
                 .collect(Collectors.toUnmodifiableMap(PeerEndpoint::getId, peer -> peer));
+        this.voters = (int) this.peers.values().stream().filter(peer -> !peer.isLearner()).count()
+                + (isLocalVoter() ? 1 : 0);
+    }
+
+    // Конфигурация с новым составом кластера (из записи конфигурации в логе)
+    public ClusterConfig withMembers(Collection<PeerEndpoint> members) {
+        PeerEndpoint local = members.stream().filter(member -> member.getId().equals(localId)).findFirst().orElse(null);
+        return new ClusterConfig(localId, local != null ? local : localEndpoint, members, local != null);
+    }
+
+    // Все ноды кластера, включая локальную, если она в него входит
+    public List<PeerEndpoint> getMembers() {
+        List<PeerEndpoint> members = new ArrayList<>(peers.size() + 1);
+        if (localMember) {
+            members.add(localEndpoint);
+        }
+        members.addAll(peers.values());
+        return members;
     }
 
     public String getLocalId() {
@@ -31,14 +58,30 @@ public final class ClusterConfig {
         return peers;
     }
 
-    public int majority() {
-        return (peers.size() + 1) / 2 + 1;
+    public boolean isLocalLearner() {
+        return localEndpoint.isLearner();
     }
-}
-
-
-
 
+    public boolean isLocalMember() {
+        return localMember;
+    }
 
+    // Локальная нода голосует и может стать лидером
+    public boolean isLocalVoter() {
+        return localMember && !localEndpoint.isLearner();
+    }
 
+    // Голосует ли нода и учитывается ли ее подтверждение при коммите
+    public boolean isVoter(String id) {
+        if (id.equals(localId)) {
+            return isLocalVoter();
+        }
+        PeerEndpoint endpoint = peers.get(id);
+        return endpoint != null && !endpoint.isLearner();
+    }
 
+    // Кворум считается только по голосующим нодам: learner'ы не замедляют коммит
+    public int majority() {
+        return voters / 2 + 1;
+    }
+}
@@ -1,15 +1,29 @@
 package org.example.raft.cluster;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
 // Сетевой адрес ноды
 public final class PeerEndpoint {
     private final String id;
     private final String host;
     private final int port;
+    private final boolean learner; // learner получает лог, но не голосует и не входит в кворум
 
     public PeerEndpoint(String id, String host, int port) {
+        this(id, host, port, false);
+    }
+
+    @JsonCreator
+    public PeerEndpoint(@JsonProperty("id") String id,
+                        @JsonProperty("host") String host,
+                        @JsonProperty("port") int port,
+                        @JsonProperty("learner") boolean learner) {
         this.id = id;
         this.host = host;
         this.port = port;
+        this.learner = learner;
     }
 
     public String getId() {
@@ -24,14 +38,12 @@ public final class PeerEndpoint {
         return port;
     }
 
+    public boolean isLearner() {
+        return learner;
+    }
+
+    @JsonIgnore
     public String asHttpBase() {
         return "http://" + host + ":" + port;
     }
 }
-
-
-
-
-
-
-
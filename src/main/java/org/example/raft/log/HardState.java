@@ -0,0 +1,26 @@
+package org.example.raft.log;
+
+// Состояние ноды, которое переживает рестарт вместе с логом
+public final class HardState {
+    private final long term;
+    private final String votedFor;
+    private final int commitIndex;
+
+    public HardState(long term, String votedFor, int commitIndex) {
+        this.term = term;
+        this.votedFor = votedFor;
+        this.commitIndex = commitIndex;
+    }
+
+    public long getTerm() {
+        return term;
+    }
+
+    public String getVotedFor() {
+        return votedFor;
+    }
+
+    public int getCommitIndex() {
+        return commitIndex;
+    }
+}
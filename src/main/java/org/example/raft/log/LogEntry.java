@@ -1,6 +1,7 @@
 package org.example.raft.log;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 /**
@@ -10,14 +11,21 @@ public final class LogEntry {
     private final long term;
     private final int index;
     private final byte[] command;
+    private final boolean configuration; // команда — новый состав кластера, а не команда state machine
+
+    public LogEntry(long term, int index, byte[] command) {
+        this(term, index, command, false);
+    }
 
     @JsonCreator
     public LogEntry(@JsonProperty("term") long term,
                     @JsonProperty("index") int index,
-                    @JsonProperty("command") byte[] command) {
+                    @JsonProperty("command") byte[] command,
+                    @JsonProperty("configuration") boolean configuration) {
         this.term = term;
         this.index = index;
         this.command = command;
+        this.configuration = configuration;
     }
 
     public long getTerm() {
@@ -31,11 +39,9 @@ public final class LogEntry {
     public byte[] getCommand() {
         return command;
     }
-}
-
-
-
-
-
-
 
+    @JsonInclude(JsonInclude.Include.NON_DEFAULT)
+    public boolean isConfiguration() {
+        return configuration;
+    }
+}
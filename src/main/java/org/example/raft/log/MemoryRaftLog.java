@@ -0,0 +1,78 @@
+package org.example.raft.log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+// Лог в памяти: после рестарта нода стартует пустой и получает лог от лидера
+public final class MemoryRaftLog implements RaftLog {
+    private final List<LogEntry> entries = new ArrayList<>();
+    private long term;
+    private String votedFor;
+    private int commitIndex;
+
+    public MemoryRaftLog() {
+        entries.add(new LogEntry(0, 0, new byte[0]));
+    }
+
+    @Override
+    public int lastIndex() {
+        return entries.size() - 1;
+    }
+
+    @Override
+    public long termAt(int index) {
+        return entries.get(index).getTerm();
+    }
+
+    @Override
+    public LogEntry get(int index) {
+        return entries.get(index);
+    }
+
+    @Override
+    public List<LogEntry> entriesFrom(int fromIndex) {
+        return new ArrayList<>(entries.subList(fromIndex, entries.size()));
+    }
+
+    @Override
+    public void append(LogEntry entry) {
+        entries.add(entry);
+    }
+
+    @Override
+    public void truncateFrom(int fromIndex) {
+        entries.subList(fromIndex, entries.size()).clear();
+    }
+
+    @Override
+    public void sync() {
+    }
+
+    @Override
+    public void replay(int fromIndex, int toIndex, Consumer<List<LogEntry>> batches) {
+        if (fromIndex <= toIndex) {
+            batches.accept(new ArrayList<>(entries.subList(fromIndex, toIndex + 1)));
+        }
+    }
+
+    @Override
+    public HardState loadHardState() {
+        return new HardState(term, votedFor, commitIndex);
+    }
+
+    @Override
+    public void saveTermAndVote(long term, String votedFor) {
+        this.term = term;
+        this.votedFor = votedFor;
+    }
+
+    @Override
+    public void saveCommitIndex(int commitIndex) {
+        this.commitIndex = commitIndex;
+    }
+
+    @Override
+    public void close() {
+    }
+}
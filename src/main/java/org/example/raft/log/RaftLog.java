@@ -0,0 +1,44 @@
+package org.example.raft.log;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Лог Raft. Индекс 0 — служебная запись с термом 0, реальные записи начинаются с 1.
+ * Реализации не потокобезопасны: RaftNode обращается к логу под своим монитором.
+ */
+public interface RaftLog extends AutoCloseable {
+
+    int lastIndex();
+
+    long termAt(int index);
+
+    LogEntry get(int index);
+
+    // Записи с fromIndex до конца лога
+    List<LogEntry> entriesFrom(int fromIndex);
+
+    void append(LogEntry entry);
+
+    // Удаляет записи с индексом >= fromIndex
+    void truncateFrom(int fromIndex);
+
+    // Делает дописанные записи durable; без новых записей ничего не делает
+    void sync();
+
+    /**
+     * Последовательно читает записи [fromIndex, toIndex] пачками — для восстановления state machine при старте.
+     */
+    void replay(int fromIndex, int toIndex, Consumer<List<LogEntry>> batches);
+
+    HardState loadHardState();
+
+    // Терм и голос должны пережить рестарт до ответа на RPC, поэтому сохраняются синхронно
+    void saveTermAndVote(long term, String votedFor);
+
+    // commitIndex — только подсказка, до какой записи можно восстановить state machine локально
+    void saveCommitIndex(int commitIndex);
+
+    @Override
+    void close();
+}
@@ -0,0 +1,551 @@
+package org.example.raft.log;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Лог на диске, разбитый на сегменты. Сегмент — файл с записями подряд и индекс фиксированного размера,
+ * отображенный в память: на каждую запись 16 байт (смещение в файле сегмента + 1 и терм).
+ * При открытии читается только индекс сегмента (бинарный поиск конца и проверка последней записи),
+ * поэтому старт занимает O(сегментов), а не O(записей). Терм любой записи берется из индекса без чтения файла.
+ *
+ * Формат записи: term (8), index (4), length (4, старший бит — запись конфигурации), crc32 команды (4), команда.
+ */
+public final class SegmentedRaftLog implements RaftLog {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SegmentedRaftLog.class);
+    private static final int HEADER_BYTES = 20;
+    private static final int INDEX_RECORD_BYTES = 16;
+    private static final int CONFIGURATION_FLAG = 1 << 31;
+    private static final int LENGTH_MASK = ~CONFIGURATION_FLAG;
+    private static final int CACHE_SIZE = 4096; // последние записи: репликация без чтения с диска
+    private static final int REPLAY_BUFFER_BYTES = 1 << 20; // восстановление читает файл большими блоками
+    private static final int REPLAY_BATCH = 1024;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final LogEntry SENTINEL = new LogEntry(0, 0, new byte[0]);
+
+    private final Path directory;
+    private final int segmentEntries;
+    private final long segmentBytes;
+    private final List<Segment> segments = new ArrayList<>(); // по возрастанию firstIndex
+    private final LogEntry[] cache = new LogEntry[CACHE_SIZE];
+    private final StateFile state;
+    private boolean dirty;
+
+    public static SegmentedRaftLog open(Path directory) throws IOException {
+        return new SegmentedRaftLog(directory, 1 << 16, 64L << 20);
+    }
+
+    SegmentedRaftLog(Path directory, int segmentEntries, long segmentBytes) throws IOException {
+        this.directory = directory;
+        this.segmentEntries = segmentEntries;
+        this.segmentBytes = segmentBytes;
+        long started = System.nanoTime();
+        Files.createDirectories(directory);
+        List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.filter(path -> {
+                String name = path.getFileName().toString();
+                return name.startsWith(SEGMENT_PREFIX) && name.endsWith(".log");
+            }).sorted().collect(Collectors.toList());
+        }
+        for (Path file : files) {
+            String name = file.getFileName().toString();
+            int firstIndex = Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - 4));
+            Segment segment = Segment.open(directory, firstIndex, segmentEntries);
+            if (firstIndex != lastIndex() + 1 || (segment.count == 0 && !segments.isEmpty())) {
+                // хвост после сбоя во время усечения или ротации: все, что не продолжает лог, удаляется
+                LOGGER.warn("Dropping log segment {} that does not continue index {}", name, lastIndex());
+                segment.delete();
+                continue;
+            }
+            segments.add(segment);
+        }
+        this.state = new StateFile(directory.resolve("state"));
+        LOGGER.info("Opened log {}: {} segments, last index {} in {} ms", directory, segments.size(), lastIndex(),
+                (System.nanoTime() - started) / 1_000_000);
+    }
+
+    @Override
+    public int lastIndex() {
+        if (segments.isEmpty()) {
+            return 0;
+        }
+        Segment last = segments.get(segments.size() - 1);
+        return last.firstIndex + last.count - 1;
+    }
+
+    @Override
+    public long termAt(int index) {
+        if (index == 0) {
+            return 0;
+        }
+        Segment segment = segmentFor(index);
+        return segment.termAt(index - segment.firstIndex);
+    }
+
+    @Override
+    public LogEntry get(int index) {
+        if (index == 0) {
+            return SENTINEL;
+        }
+        LogEntry cached = cache[index & (CACHE_SIZE - 1)];
+        if (cached != null && cached.getIndex() == index) {
+            return cached;
+        }
+        Segment segment = segmentFor(index);
+        try {
+            LogEntry entry = segment.read(index - segment.firstIndex);
+            cache[index & (CACHE_SIZE - 1)] = entry;
+            return entry;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read log entry " + index, e);
+        }
+    }
+
+    @Override
+    public List<LogEntry> entriesFrom(int fromIndex) {
+        int last = lastIndex();
+        List<LogEntry> entries = new ArrayList<>(Math.max(0, last - fromIndex + 1));
+        for (int i = fromIndex; i <= last; i++) {
+            entries.add(get(i));
+        }
+        return entries;
+    }
+
+    @Override
+    public void append(LogEntry entry) {
+        if (entry.getIndex() != lastIndex() + 1) {
+            throw new IllegalArgumentException("Expected index " + (lastIndex() + 1) + " but got " + entry.getIndex());
+        }
+        try {
+            if (segments.isEmpty() || segments.get(segments.size() - 1).isFull(segmentBytes)) {
+                if (!segments.isEmpty()) {
+                    segments.get(segments.size() - 1).sync(); // дальше sync() трогает только последний сегмент
+                }
+                segments.add(Segment.open(directory, entry.getIndex(), segmentEntries));
+            }
+            segments.get(segments.size() - 1).append(entry);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to append log entry " + entry.getIndex(), e);
+        }
+        cache[entry.getIndex() & (CACHE_SIZE - 1)] = entry;
+        dirty = true;
+    }
+
+    @Override
+    public void truncateFrom(int fromIndex) {
+        int last = lastIndex();
+        if (fromIndex > last) {
+            return;
+        }
+        try {
+            // сегменты удаляются с конца, чтобы после сбоя на диске оставался непрерывный префикс
+            while (!segments.isEmpty() && segments.get(segments.size() - 1).firstIndex >= fromIndex) {
+                segments.remove(segments.size() - 1).delete();
+            }
+            if (!segments.isEmpty()) {
+                Segment tail = segments.get(segments.size() - 1);
+                tail.truncate(fromIndex - tail.firstIndex);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to truncate log from " + fromIndex, e);
+        }
+        for (int i = fromIndex; i <= last && i < fromIndex + CACHE_SIZE; i++) {
+            cache[i & (CACHE_SIZE - 1)] = null;
+        }
+        dirty = true;
+    }
+
+    @Override
+    public void sync() {
+        if (!dirty || segments.isEmpty()) {
+            return;
+        }
+        try {
+            segments.get(segments.size() - 1).sync();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to sync log", e);
+        }
+        dirty = false;
+    }
+
+    @Override
+    public void replay(int fromIndex, int toIndex, Consumer<List<LogEntry>> batches) {
+        List<LogEntry> batch = new ArrayList<>(REPLAY_BATCH);
+        ByteBuffer buffer = ByteBuffer.allocate(REPLAY_BUFFER_BYTES);
+        CRC32 crc = new CRC32();
+        for (Segment segment : segments) {
+            int fromSlot = Math.max(fromIndex, segment.firstIndex) - segment.firstIndex;
+            int toSlot = Math.min(toIndex, segment.firstIndex + segment.count - 1) - segment.firstIndex;
+            if (fromSlot > toSlot) {
+                continue;
+            }
+            try {
+                SequentialReader reader = new SequentialReader(segment.data, segment.offset(fromSlot), buffer);
+                for (int slot = fromSlot; slot <= toSlot; slot++) {
+                    ByteBuffer header = reader.require(HEADER_BYTES);
+                    long term = header.getLong();
+                    int index = header.getInt();
+                    int flaggedLength = header.getInt();
+                    int length = flaggedLength & LENGTH_MASK;
+                    int checksum = header.getInt();
+                    byte[] command = new byte[length];
+                    reader.require(length).get(command);
+                    crc.reset();
+                    crc.update(command);
+                    if (index != segment.firstIndex + slot || (int) crc.getValue() != checksum) {
+                        throw new IOException("Corrupted log entry " + (segment.firstIndex + slot));
+                    }
+                    batch.add(new LogEntry(term, index, command, (flaggedLength & CONFIGURATION_FLAG) != 0));
+                    if (batch.size() == REPLAY_BATCH) {
+                        batches.accept(batch);
+                        batch = new ArrayList<>(REPLAY_BATCH);
+                    }
+                }
+                buffer = reader.buffer;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to replay log segment " + segment.firstIndex, e);
+            }
+        }
+        if (!batch.isEmpty()) {
+            batches.accept(batch);
+        }
+    }
+
+    @Override
+    public HardState loadHardState() {
+        return state.load();
+    }
+
+    @Override
+    public void saveTermAndVote(long term, String votedFor) {
+        state.saveTermAndVote(term, votedFor);
+    }
+
+    @Override
+    public void saveCommitIndex(int commitIndex) {
+        state.saveCommitIndex(commitIndex);
+    }
+
+    int segmentCount() {
+        return segments.size();
+    }
+
+    @Override
+    public void close() {
+        sync();
+        for (Segment segment : segments) {
+            segment.close();
+        }
+        state.close();
+    }
+
+    private Segment segmentFor(int index) {
+        if (index < 1 || index > lastIndex()) {
+            throw new IndexOutOfBoundsException("Log index " + index + ", last " + lastIndex());
+        }
+        int low = 0;
+        int high = segments.size() - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (segments.get(mid).firstIndex <= index) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return segments.get(low);
+    }
+
+    private static int checksum(byte[] command) {
+        CRC32 crc = new CRC32();
+        crc.update(command);
+        return (int) crc.getValue();
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException("Unexpected end of log segment at " + position);
+            }
+            position += read;
+        }
+    }
+
+    // Один сегмент: файл записей и mmap-индекс на segmentEntries записей
+    private static final class Segment {
+        final int firstIndex;
+        final Path dataPath;
+        final Path indexPath;
+        final FileChannel data;
+        final FileChannel indexChannel;
+        final MappedByteBuffer index;
+        final int capacity;
+        int count;
+        long size;
+
+        private Segment(Path directory, int firstIndex, int capacity) throws IOException {
+            this.firstIndex = firstIndex;
+            this.capacity = capacity;
+            String name = String.format("%s%020d", SEGMENT_PREFIX, firstIndex);
+            this.dataPath = directory.resolve(name + ".log");
+            this.indexPath = directory.resolve(name + ".idx");
+            this.data = FileChannel.open(dataPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.indexChannel = FileChannel.open(indexPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, (long) capacity * INDEX_RECORD_BYTES);
+        }
+
+        static Segment open(Path directory, int firstIndex, int capacity) throws IOException {
+            Segment segment = new Segment(directory, firstIndex, capacity);
+            segment.recover();
+            return segment;
+        }
+
+        // Конец индекса — первая пустая запись (бинарный поиск); последние записи проверяются по файлу,
+        // недописанные при сбое отбрасываются
+        private void recover() throws IOException {
+            int low = 0;
+            int high = capacity;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (index.getLong(mid * INDEX_RECORD_BYTES) != 0) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            count = low;
+            long fileSize = data.size();
+            size = 0;
+            while (count > 0) {
+                long end = validEnd(count - 1, fileSize);
+                if (end >= 0) {
+                    size = end;
+                    break;
+                }
+                clear(count - 1);
+                count--;
+            }
+            if (fileSize > size) {
+                data.truncate(size);
+            }
+        }
+
+        private long validEnd(int slot, long fileSize) throws IOException {
+            long offset = offset(slot);
+            if (offset + HEADER_BYTES > fileSize) {
+                return -1;
+            }
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            readFully(data, header, offset);
+            header.flip();
+            long term = header.getLong();
+            int entryIndex = header.getInt();
+            int length = header.getInt() & LENGTH_MASK;
+            int checksum = header.getInt();
+            if (term != termAt(slot) || entryIndex != firstIndex + slot
+                    || offset + HEADER_BYTES + length > fileSize) {
+                return -1;
+            }
+            ByteBuffer command = ByteBuffer.allocate(length);
+            readFully(data, command, offset + HEADER_BYTES);
+            if (checksum(command.array()) != checksum) {
+                return -1;
+            }
+            return offset + HEADER_BYTES + length;
+        }
+
+        boolean isFull(long maxBytes) {
+            return count == capacity || size >= maxBytes;
+        }
+
+        long offset(int slot) {
+            return index.getLong(slot * INDEX_RECORD_BYTES) - 1;
+        }
+
+        long termAt(int slot) {
+            return index.getLong(slot * INDEX_RECORD_BYTES + 8);
+        }
+
+        // Длина записи известна из смещения следующей, поэтому запись читается одним вызовом
+        LogEntry read(int slot) throws IOException {
+            long offset = offset(slot);
+            long end = slot + 1 < count ? offset(slot + 1) : size;
+            ByteBuffer buffer = ByteBuffer.allocate((int) (end - offset));
+            readFully(data, buffer, offset);
+            byte[] command = new byte[buffer.capacity() - HEADER_BYTES];
+            System.arraycopy(buffer.array(), HEADER_BYTES, command, 0, command.length);
+            return new LogEntry(buffer.getLong(0), buffer.getInt(8), command, (buffer.getInt(12) & CONFIGURATION_FLAG) != 0);
+        }
+
+        void append(LogEntry entry) throws IOException {
+            byte[] command = entry.getCommand();
+            ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + command.length);
+            buffer.putLong(entry.getTerm())
+                    .putInt(entry.getIndex())
+                    .putInt(entry.isConfiguration() ? command.length | CONFIGURATION_FLAG : command.length)
+                    .putInt(checksum(command))
+                    .put(command)
+                    .flip();
+            long position = size;
+            while (buffer.hasRemaining()) {
+                position += data.write(buffer, position);
+            }
+            // индекс пишется после данных: при сбое запись без данных отбросит recover()
+            index.putLong(count * INDEX_RECORD_BYTES, size + 1);
+            index.putLong(count * INDEX_RECORD_BYTES + 8, entry.getTerm());
+            count++;
+            size = position;
+        }
+
+        void truncate(int fromSlot) throws IOException {
+            if (fromSlot >= count) {
+                return;
+            }
+            long newSize = offset(fromSlot);
+            for (int slot = count - 1; slot >= fromSlot; slot--) {
+                clear(slot);
+            }
+            count = fromSlot;
+            size = newSize;
+            data.truncate(newSize);
+        }
+
+        private void clear(int slot) {
+            index.putLong(slot * INDEX_RECORD_BYTES, 0);
+            index.putLong(slot * INDEX_RECORD_BYTES + 8, 0);
+        }
+
+        void sync() throws IOException {
+            data.force(false);
+            index.force();
+        }
+
+        void close() {
+            try {
+                data.close();
+                indexChannel.close();
+            } catch (IOException e) {
+                LOGGER.warn("Failed to close log segment {}: {}", dataPath, e.getMessage());
+            }
+        }
+
+        void delete() throws IOException {
+            close();
+            Files.deleteIfExists(indexPath);
+            Files.deleteIfExists(dataPath);
+        }
+    }
+
+    // Последовательное чтение файла сегмента блоками размера буфера
+    private static final class SequentialReader {
+        private final FileChannel channel;
+        private long position;
+        ByteBuffer buffer;
+
+        SequentialReader(FileChannel channel, long position, ByteBuffer buffer) {
+            this.channel = channel;
+            this.position = position;
+            this.buffer = buffer;
+            buffer.clear().flip();
+        }
+
+        ByteBuffer require(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes) {
+                return buffer;
+            }
+            if (bytes > buffer.capacity()) {
+                ByteBuffer larger = ByteBuffer.allocate(bytes);
+                larger.put(buffer);
+                buffer = larger;
+            } else {
+                buffer.compact();
+            }
+            while (buffer.position() < bytes) {
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    throw new EOFException("Unexpected end of log segment at " + position);
+                }
+                position += read;
+            }
+            buffer.flip();
+            return buffer;
+        }
+    }
+
+    // term, commitIndex и голос в отображенном в память файле фиксированного размера
+    private static final class StateFile {
+        private static final int SIZE = 4096;
+        private static final int VOTE_OFFSET = 14;
+
+        private final FileChannel channel;
+        private final MappedByteBuffer buffer;
+        private long term;
+        private String votedFor;
+
+        StateFile(Path path) throws IOException {
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, SIZE);
+            this.term = buffer.getLong(0);
+            int voteLength = buffer.getShort(12);
+            if (voteLength > 0) {
+                byte[] vote = new byte[voteLength];
+                buffer.duplicate().position(VOTE_OFFSET).get(vote);
+                this.votedFor = new String(vote, StandardCharsets.UTF_8);
+            }
+        }
+
+        HardState load() {
+            return new HardState(term, votedFor, buffer.getInt(8));
+        }
+
+        void saveTermAndVote(long newTerm, String newVotedFor) {
+            if (newTerm == term && Objects.equals(newVotedFor, votedFor)) {
+                return;
+            }
+            byte[] vote = newVotedFor != null ? newVotedFor.getBytes(StandardCharsets.UTF_8) : new byte[0];
+            if (VOTE_OFFSET + vote.length > SIZE) {
+                throw new IllegalArgumentException("Node id is too long: " + newVotedFor);
+            }
+            buffer.putLong(0, newTerm);
+            buffer.putShort(12, (short) vote.length);
+            buffer.duplicate().position(VOTE_OFFSET).put(vote);
+            buffer.force();
+            term = newTerm;
+            votedFor = newVotedFor;
+        }
+
+        // Без force: страница попадет на диск вместе со следующим sync или при выгрузке ОС
+        void saveCommitIndex(int commitIndex) {
+            buffer.putInt(8, commitIndex);
+        }
+
+        void close() {
+            buffer.force();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOGGER.warn("Failed to close log state: {}", e.getMessage());
+            }
+        }
+    }
+}
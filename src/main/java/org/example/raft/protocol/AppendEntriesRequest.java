@@ -1,9 +1,12 @@
 package org.example.raft.protocol;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import org.example.raft.log.LogEntry;
 
+import java.util.Collections;
 import java.util.List;
 
 public final class AppendEntriesRequest {
@@ -13,6 +16,18 @@ public final class AppendEntriesRequest {
     private final long prevLogTerm;
     private final List<LogEntry> entries;
     private final int leaderCommit;
+    // Пакет записей, сжатый EntryBatchCodec; тогда entries пуст
+    private final byte[] compressedEntries;
+    // Election timeout, вычисленный лидером по RTT; 0 — лидер использует постоянные таймауты
+    private final long electionTimeoutMillis;
+    // Сколько мс назад кворум последний раз подтвердил лидерство: состояние до leaderCommit
+    // актуально не раньше этого момента. Относительное время не зависит от расхождения часов нод
+    private final long commitAgeMillis;
+
+    public AppendEntriesRequest(long term, String leaderId, int prevLogIndex, long prevLogTerm,
+                                List<LogEntry> entries, int leaderCommit) {
+        this(term, leaderId, prevLogIndex, prevLogTerm, entries, leaderCommit, null, 0, 0);
+    }
 
     @JsonCreator
     public AppendEntriesRequest(@JsonProperty("term") long term,
@@ -20,13 +35,34 @@ public final class AppendEntriesRequest {
                                 @JsonProperty("prevLogIndex") int prevLogIndex,
                                 @JsonProperty("prevLogTerm") long prevLogTerm,
                                 @JsonProperty("entries") List<LogEntry> entries,
-                                @JsonProperty("leaderCommit") int leaderCommit) {
+                                @JsonProperty("leaderCommit") int leaderCommit,
+                                @JsonProperty("compressedEntries") byte[] compressedEntries,
+                                @JsonProperty("electionTimeoutMillis") long electionTimeoutMillis,
+                                @JsonProperty("commitAgeMillis") long commitAgeMillis) {
         this.term = term;
         this.leaderId = leaderId;
         this.prevLogIndex = prevLogIndex;
         this.prevLogTerm = prevLogTerm;
-        this.entries = entries;
+        this.entries = entries != null ? entries : Collections.emptyList();
         this.leaderCommit = leaderCommit;
+        this.compressedEntries = compressedEntries;
+        this.electionTimeoutMillis = electionTimeoutMillis;
+        this.commitAgeMillis = commitAgeMillis;
+    }
+
+    // Тот же запрос с записями, сжатыми в одно поле
+    public AppendEntriesRequest compress() {
+        return new AppendEntriesRequest(term, leaderId, prevLogIndex, prevLogTerm, Collections.emptyList(),
+                leaderCommit, EntryBatchCodec.compress(entries), electionTimeoutMillis, commitAgeMillis);
+    }
+
+    // Тот же запрос с распакованными записями; несжатый запрос возвращается как есть
+    public AppendEntriesRequest decompress() {
+        if (compressedEntries == null) {
+            return this;
+        }
+        return new AppendEntriesRequest(term, leaderId, prevLogIndex, prevLogTerm,
+                EntryBatchCodec.decompress(compressedEntries), leaderCommit, null, electionTimeoutMillis, commitAgeMillis);
     }
 
     public long getTerm() {
@@ -52,6 +88,26 @@ public final class AppendEntriesRequest {
     public int getLeaderCommit() {
         return leaderCommit;
     }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public byte[] getCompressedEntries() {
+        return compressedEntries;
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_DEFAULT)
+    public long getElectionTimeoutMillis() {
+        return electionTimeoutMillis;
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_DEFAULT)
+    public long getCommitAgeMillis() {
+        return commitAgeMillis;
+    }
+
+    @JsonIgnore
+    public boolean isCompressed() {
+        return compressedEntries != null;
+    }
 }
 
 
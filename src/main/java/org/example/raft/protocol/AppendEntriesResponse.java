@@ -1,20 +1,32 @@
 package org.example.raft.protocol;
 
 import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
+import java.util.Collections;
+import java.util.List;
+
 public final class AppendEntriesResponse {
     private final long term;
     private final boolean success;
     private final int matchIndex;
+    // Кодеки, которыми лидер может сжимать записи для этого пира; старые версии поле не присылают
+    private final List<String> codecs;
+
+    public AppendEntriesResponse(long term, boolean success, int matchIndex) {
+        this(term, success, matchIndex, Collections.emptyList());
+    }
 
     @JsonCreator
     public AppendEntriesResponse(@JsonProperty("term") long term,
                                  @JsonProperty("success") boolean success,
-                                 @JsonProperty("matchIndex") int matchIndex) {
+                                 @JsonProperty("matchIndex") int matchIndex,
+                                 @JsonProperty("codecs") List<String> codecs) {
         this.term = term;
         this.success = success;
         this.matchIndex = matchIndex;
+        this.codecs = codecs != null ? codecs : Collections.emptyList();
     }
 
     public long getTerm() {
@@ -28,6 +40,11 @@ public final class AppendEntriesResponse {
     public int getMatchIndex() {
         return matchIndex;
     }
+
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    public List<String> getCodecs() {
+        return codecs;
+    }
 }
 
 
@@ -0,0 +1,107 @@
+package org.example.raft.protocol;
+
+import org.example.raft.log.LogEntry;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Сжатие пакета записей AppendEntries. Записи кодируются в бинарный вид (без Base64 на каждую команду)
+ * и сжимаются Deflater'ом; в JSON запроса весь пакет уходит одним полем.
+ */
+public final class EntryBatchCodec {
+    public static final String DEFLATE = "deflate";
+    private static final int ENTRY_HEADER_BYTES = 8 + 4 + 1 + 4; // term, index, configuration, длина команды
+    private static final int MAX_DEFLATE_RATIO = 1032; // предел сжатия deflate: 258 байт на 2 бита
+
+    private EntryBatchCodec() {
+    }
+
+    // Размер пакета до сжатия — по нему решаем, стоит ли сжимать
+    public static int rawSize(List<LogEntry> entries) {
+        int size = 4;
+        for (LogEntry entry : entries) {
+            size += ENTRY_HEADER_BYTES + (entry.getCommand() != null ? entry.getCommand().length : 0);
+        }
+        return size;
+    }
+
+    public static byte[] compress(List<LogEntry> entries) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(rawSize(entries) / 2 + 64);
+        try (DataOutputStream output = new DataOutputStream(new DeflaterOutputStream(buffer, deflater, 8192))) {
+            output.writeInt(entries.size());
+            for (LogEntry entry : entries) {
+                byte[] command = entry.getCommand() != null ? entry.getCommand() : new byte[0];
+                output.writeLong(entry.getTerm());
+                output.writeInt(entry.getIndex());
+                output.writeBoolean(entry.isConfiguration());
+                output.writeInt(command.length);
+                output.write(command);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            deflater.end();
+        }
+        return buffer.toByteArray();
+    }
+
+    // Число записей и длины команд приходят по сети: проверяем их по размеру распакованного пакета,
+    // чтобы битые данные давали IOException, а не огромный массив или NegativeArraySizeException
+    public static List<LogEntry> decompress(byte[] compressed) {
+        try {
+            byte[] raw = inflate(compressed);
+            DataInputStream input = new DataInputStream(new ByteArrayInputStream(raw));
+            int count = input.readInt();
+            if (count < 0 || count > input.available() / ENTRY_HEADER_BYTES) {
+                throw new IOException("Entry count " + count + " does not fit in " + raw.length + " bytes");
+            }
+            List<LogEntry> entries = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                long term = input.readLong();
+                int index = input.readInt();
+                boolean configuration = input.readBoolean();
+                int length = input.readInt();
+                if (length < 0 || length > input.available()) {
+                    throw new IOException("Command length " + length + " of entry " + index + " exceeds the batch");
+                }
+                byte[] command = new byte[length];
+                input.readFully(command);
+                entries.add(new LogEntry(term, index, command, configuration));
+            }
+            if (input.available() > 0) {
+                throw new IOException(input.available() + " trailing bytes after " + count + " entries");
+            }
+            return entries;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Corrupted compressed entries", e);
+        }
+    }
+
+    // Распаковка целиком; deflate не сжимает сильнее MAX_DEFLATE_RATIO, больший результат — не наш пакет
+    private static byte[] inflate(byte[] compressed) throws IOException {
+        long limit = Math.min((long) compressed.length * MAX_DEFLATE_RATIO + 64, Integer.MAX_VALUE - 8);
+        ByteArrayOutputStream raw = new ByteArrayOutputStream((int) Math.min((long) compressed.length * 4, limit));
+        try (InflaterInputStream input = new InflaterInputStream(new ByteArrayInputStream(compressed))) {
+            byte[] chunk = new byte[8192];
+            int read;
+            while ((read = input.read(chunk)) >= 0) {
+                if (raw.size() + (long) read > limit) {
+                    throw new IOException("Inflated batch exceeds " + limit + " bytes");
+                }
+                raw.write(chunk, 0, read);
+            }
+        }
+        return raw.toByteArray();
+    }
+}
@@ -0,0 +1,27 @@
+package org.example.raft.protocol;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+// Пакет команд клиентов, пересылаемый фолловером лидеру
+public final class ForwardRequest {
+    private final String sourceId;
+    private final List<byte[]> commands;
+
+    @JsonCreator
+    public ForwardRequest(@JsonProperty("sourceId") String sourceId,
+                          @JsonProperty("commands") List<byte[]> commands) {
+        this.sourceId = sourceId;
+        this.commands = commands;
+    }
+
+    public String getSourceId() {
+        return sourceId;
+    }
+
+    public List<byte[]> getCommands() {
+        return commands;
+    }
+}
@@ -0,0 +1,82 @@
+package org.example.raft.protocol;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.List;
+
+// Результаты пересланных команд в том же порядке; при success=false — подсказка, кто сейчас лидер.
+// success=false значит, что лидер не добавил в лог ни одной команды пакета и их можно отправить заново.
+// При success=true у отдельных команд может быть ошибка в errors: результат такой команды неизвестен
+public final class ForwardResponse {
+    public static final String NOT_LEADER = "not-leader"; // лидерство потеряно или запись усечена
+    public static final String TIMEOUT = "timeout"; // запись не закоммичена за таймаут предложения
+
+    private final boolean success;
+    private final String leaderHint;
+    private final List<byte[]> results;
+    private final long retryAfterMillis; // > 0 — лидер перегружен и отклонил пакет
+    private final List<String> errors; // null — все команды применены; иначе ошибка команды или null
+    private final int firstIndex; // индекс первой команды пакета в логе лидера, 0 — неизвестен
+
+    public ForwardResponse(boolean success, String leaderHint, List<byte[]> results) {
+        this(success, leaderHint, results, 0, null);
+    }
+
+    public ForwardResponse(boolean success, String leaderHint, List<byte[]> results, long retryAfterMillis) {
+        this(success, leaderHint, results, retryAfterMillis, null);
+    }
+
+    public ForwardResponse(boolean success, String leaderHint, List<byte[]> results, long retryAfterMillis, List<String> errors) {
+        this(success, leaderHint, results, retryAfterMillis, errors, 0);
+    }
+
+    @JsonCreator
+    public ForwardResponse(@JsonProperty("success") boolean success,
+                           @JsonProperty("leaderHint") String leaderHint,
+                           @JsonProperty("results") List<byte[]> results,
+                           @JsonProperty("retryAfterMillis") long retryAfterMillis,
+                           @JsonProperty("errors") List<String> errors,
+                           @JsonProperty("firstIndex") int firstIndex) {
+        this.success = success;
+        this.leaderHint = leaderHint;
+        this.results = results;
+        this.retryAfterMillis = retryAfterMillis;
+        this.errors = errors;
+        this.firstIndex = firstIndex;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    public String getLeaderHint() {
+        return leaderHint;
+    }
+
+    public List<byte[]> getResults() {
+        return results;
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_DEFAULT)
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public List<String> getErrors() {
+        return errors;
+    }
+
+    // Команды пакета лежат в логе лидера подряд, начиная с этого индекса
+    @JsonInclude(JsonInclude.Include.NON_DEFAULT)
+    public int getFirstIndex() {
+        return firstIndex;
+    }
+
+    // Ошибка команды index или null, если она применена
+    public String errorAt(int index) {
+        return errors != null ? errors.get(index) : null;
+    }
+}
@@ -0,0 +1,25 @@
+package org.example.raft.protocol;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+// Лидер передает лидерство: получатель сразу начинает выборы, не дожидаясь election timeout
+public final class TimeoutNowRequest {
+    private final long term;
+    private final String leaderId;
+
+    @JsonCreator
+    public TimeoutNowRequest(@JsonProperty("term") long term,
+                             @JsonProperty("leaderId") String leaderId) {
+        this.term = term;
+        this.leaderId = leaderId;
+    }
+
+    public long getTerm() {
+        return term;
+    }
+
+    public String getLeaderId() {
+        return leaderId;
+    }
+}
@@ -0,0 +1,24 @@
+package org.example.raft.protocol;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+public final class TimeoutNowResponse {
+    private final long term;
+    private final boolean success;
+
+    @JsonCreator
+    public TimeoutNowResponse(@JsonProperty("term") long term,
+                              @JsonProperty("success") boolean success) {
+        this.term = term;
+        this.success = success;
+    }
+
+    public long getTerm() {
+        return term;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+}
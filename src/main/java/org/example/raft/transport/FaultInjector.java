@@ -0,0 +1,213 @@
+package org.example.raft.transport;
+
+import org.example.raft.cluster.PeerEndpoint;
+import org.example.raft.protocol.AppendEntriesRequest;
+import org.example.raft.protocol.AppendEntriesResponse;
+import org.example.raft.protocol.ForwardRequest;
+import org.example.raft.protocol.ForwardResponse;
+import org.example.raft.protocol.RequestVoteRequest;
+import org.example.raft.protocol.RequestVoteResponse;
+import org.example.raft.protocol.TimeoutNowRequest;
+import org.example.raft.protocol.TimeoutNowResponse;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Отказы сети для нескольких нод одного кластера: разделение на группы, односторонние потери,
+ * задержки и паузы нод. Транспорт каждой ноды оборачивается через wrap, состояние отказов у всех общее.
+ *
+ * Потерянный запрос или ответ завершается ошибкой только по таймауту, как у настоящей сети.
+ * Пауза имитирует остановку процесса (GC, SIGSTOP): RPC от ноды и к ней задерживаются
+ * до resume и затем доставляются, а не теряются. Без хуков из attach таймеры самой ноды при этом продолжают
+ * работать и пауза — это разделение с отложенной доставкой; с хуками (RaftNode::pause, RaftNode::resume)
+ * замирает и сама нода.
+ */
+public final class FaultInjector {
+    private final Set<String> dropped = ConcurrentHashMap.newKeySet(); // ключ "from->to"
+    private final Map<String, Duration> delays = new ConcurrentHashMap<>(); // ключ "from->to"
+    private final Map<String, CompletableFuture<Void>> paused = new ConcurrentHashMap<>();
+    private final Map<String, Runnable[]> pauseHooks = new ConcurrentHashMap<>(); // {pause, resume}
+    private final Duration requestTimeout;
+
+    public FaultInjector(Duration requestTimeout) {
+        this.requestTimeout = requestTimeout;
+    }
+
+    public RaftTransport wrap(String localId, RaftTransport delegate) {
+        return new FaultInjectingTransport(localId, delegate);
+    }
+
+    // Ноды из разных групп перестают слышать друг друга в обе стороны; ноды вне групп не затронуты
+    @SafeVarargs
+    public final void partition(Collection<String>... groups) {
+        for (int i = 0; i < groups.length; i++) {
+            for (int j = 0; j < groups.length; j++) {
+                if (i == j) {
+                    continue;
+                }
+                for (String from : groups[i]) {
+                    for (String to : groups[j]) {
+                        dropped.add(key(from, to));
+                    }
+                }
+            }
+        }
+    }
+
+    // Нода не слышит никого из остальных и не слышна им
+    public void isolate(String nodeId, Collection<String> others) {
+        for (String other : others) {
+            if (!other.equals(nodeId)) {
+                partition(List.of(nodeId), List.of(other));
+            }
+        }
+    }
+
+    // Односторонняя потеря: сообщения from -> to теряются, в обратную сторону доходят
+    public void drop(String fromId, String toId) {
+        dropped.add(key(fromId, toId));
+    }
+
+    public void restore(String fromId, String toId) {
+        dropped.remove(key(fromId, toId));
+    }
+
+    // Дополнительная задержка сообщений from -> to поверх задержки самого транспорта
+    public void delay(String fromId, String toId, Duration delay) {
+        if (delay.isZero()) {
+            delays.remove(key(fromId, toId));
+        } else {
+            delays.put(key(fromId, toId), delay);
+        }
+    }
+
+    // Хуки, которыми pause и resume замораживают и размораживают саму ноду, а не только ее RPC
+    public void attach(String nodeId, Runnable pause, Runnable resume) {
+        pauseHooks.put(nodeId, new Runnable[] {pause, resume});
+    }
+
+    public void pause(String nodeId) {
+        if (paused.putIfAbsent(nodeId, new CompletableFuture<>()) == null) {
+            Runnable[] hooks = pauseHooks.get(nodeId);
+            if (hooks != null) {
+                hooks[0].run();
+            }
+        }
+    }
+
+    public void resume(String nodeId) {
+        CompletableFuture<Void> gate = paused.remove(nodeId);
+        if (gate != null) {
+            Runnable[] hooks = pauseHooks.get(nodeId);
+            if (hooks != null) {
+                hooks[1].run();
+            }
+            // задержанные RPC доставляются не в потоке сценария
+            CompletableFuture.runAsync(() -> gate.complete(null));
+        }
+    }
+
+    // Снимает все отказы; задержанные паузой RPC доставляются
+    public void heal() {
+        dropped.clear();
+        delays.clear();
+        for (String nodeId : List.copyOf(paused.keySet())) {
+            resume(nodeId);
+        }
+    }
+
+    public boolean isPaused(String nodeId) {
+        return paused.containsKey(nodeId);
+    }
+
+    private boolean isDropped(String fromId, String toId) {
+        return dropped.contains(key(fromId, toId));
+    }
+
+    private CompletableFuture<Void> gate(String nodeId) {
+        CompletableFuture<Void> gate = paused.get(nodeId);
+        return gate != null ? gate : CompletableFuture.completedFuture(null);
+    }
+
+    private CompletableFuture<Void> delayed(String fromId, String toId) {
+        Duration delay = delays.get(key(fromId, toId));
+        if (delay == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return CompletableFuture.runAsync(() -> { },
+                CompletableFuture.delayedExecutor(delay.toNanos(), TimeUnit.NANOSECONDS));
+    }
+
+    private static String key(String fromId, String toId) {
+        return fromId + "->" + toId;
+    }
+
+    private <R> CompletableFuture<R> call(String fromId, String toId, Supplier<CompletableFuture<R>> rpc) {
+        CompletableFuture<R> result;
+        if (isDropped(fromId, toId)) {
+            result = new CompletableFuture<>(); // запрос потерян: клиент дождется только таймаута
+        } else {
+            result = gate(fromId)
+                    .thenCompose(ignored -> gate(toId))
+                    .thenCompose(ignored -> delayed(fromId, toId))
+                    .thenCompose(ignored -> rpc.get())
+                    .thenCompose(response -> {
+                        if (isDropped(toId, fromId)) {
+                            return new CompletableFuture<>(); // запрос обработан, но ответ потерян
+                        }
+                        return gate(toId)
+                                .thenCompose(ignored -> delayed(toId, fromId))
+                                .thenApply(ignored -> response);
+                    });
+        }
+        return result.orTimeout(requestTimeout.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private final class FaultInjectingTransport implements RaftTransport {
+        private final String localId;
+        private final RaftTransport delegate;
+
+        private FaultInjectingTransport(String localId, RaftTransport delegate) {
+            this.localId = localId;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public CompletableFuture<AppendEntriesResponse> appendEntries(String targetNodeId, AppendEntriesRequest request) {
+            return call(localId, targetNodeId, () -> delegate.appendEntries(targetNodeId, request));
+        }
+
+        @Override
+        public CompletableFuture<RequestVoteResponse> requestVote(String targetNodeId, RequestVoteRequest request) {
+            return call(localId, targetNodeId, () -> delegate.requestVote(targetNodeId, request));
+        }
+
+        @Override
+        public CompletableFuture<RequestVoteResponse> preVote(String targetNodeId, RequestVoteRequest request) {
+            return call(localId, targetNodeId, () -> delegate.preVote(targetNodeId, request));
+        }
+
+        @Override
+        public CompletableFuture<TimeoutNowResponse> timeoutNow(String targetNodeId, TimeoutNowRequest request) {
+            return call(localId, targetNodeId, () -> delegate.timeoutNow(targetNodeId, request));
+        }
+
+        @Override
+        public CompletableFuture<ForwardResponse> forwardCommands(String targetNodeId, ForwardRequest request) {
+            return call(localId, targetNodeId, () -> delegate.forwardCommands(targetNodeId, request));
+        }
+
+        @Override
+        public void updatePeers(Collection<PeerEndpoint> peers) {
+            delegate.updatePeers(peers);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package org.example.raft.transport;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Сценарий отказов: шаги со смещением от начала воспроизведения, например
+ * "на 0 мс изолировать лидера, на 2000 мс вылечить сеть". Шаги выполняются по порядку смещений.
+ */
+public final class FaultScenario {
+    private final List<Step> steps = new ArrayList<>();
+
+    public FaultScenario at(Duration offset, String name, Consumer<FaultInjector> action) {
+        steps.add(new Step(offset, name, action));
+        return this;
+    }
+
+    /**
+     * Запускает сценарий в отдельном потоке. Результат — момент (System.nanoTime) выполнения
+     * каждого шага по имени, по нему считаются интервалы от внесения отказа.
+     */
+    public CompletableFuture<Map<String, Long>> play(FaultInjector injector) {
+        List<Step> ordered = new ArrayList<>(steps);
+        ordered.sort(Comparator.comparing(step -> step.offset));
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "fault-scenario");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Map<String, Long> executed = new LinkedHashMap<>();
+        CompletableFuture<Map<String, Long>> result = new CompletableFuture<>();
+        long start = System.nanoTime();
+        scheduler.execute(() -> {
+            for (Step step : ordered) {
+                long wait = start + step.offset.toNanos() - System.nanoTime();
+                if (wait > 0) {
+                    try {
+                        TimeUnit.NANOSECONDS.sleep(wait);
+                    } catch (InterruptedException e) {
+                        result.cancel(false);
+                        return;
+                    }
+                }
+                try {
+                    step.action.accept(injector);
+                } catch (RuntimeException e) {
+                    result.completeExceptionally(e);
+                    return;
+                }
+                executed.put(step.name, System.nanoTime());
+            }
+            result.complete(executed);
+        });
+        result.whenComplete((value, error) -> scheduler.shutdownNow());
+        return result;
+    }
+
+    private static final class Step {
+        private final Duration offset;
+        private final String name;
+        private final Consumer<FaultInjector> action;
+
+        private Step(Duration offset, String name, Consumer<FaultInjector> action) {
+            this.offset = offset;
+            this.name = name;
+            this.action = action;
+        }
+    }
+}
@@ -5,54 +5,103 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import org.example.raft.cluster.PeerEndpoint;
 import org.example.raft.protocol.AppendEntriesRequest;
 import org.example.raft.protocol.AppendEntriesResponse;
+import org.example.raft.protocol.ForwardRequest;
+import org.example.raft.protocol.ForwardResponse;
 import org.example.raft.protocol.RequestVoteRequest;
 import org.example.raft.protocol.RequestVoteResponse;
+import org.example.raft.protocol.TimeoutNowRequest;
+import org.example.raft.protocol.TimeoutNowResponse;
 import org.example.raft.util.Json;
 
 import java.io.Closeable;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
 import java.net.URI;
-import java.net.URL;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
 import java.time.Duration;
+import java.util.Collection;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
-
+/**
+ * HTTP-транспорт с двумя полосами. Heartbeat (пустой AppendEntries), голосования и TimeoutNow идут по
+ * управляющей полосе, записи и пересылка команд — по полосе данных. У каждой полосы свой пул потоков,
+ * свой HttpClient (а значит, свои keep-alive соединения) и свои таймауты: большой пакет записей
+ * медленному фолловеру не задерживает heartbeat и не вызывает ложных выборов.
+ */
 public final class HttpRaftTransport implements RaftTransport, Closeable {
 
     private final ObjectMapper mapper; // общий JSON‑сериализатор/десериализатор для всех запросов и ответов
-    private final Map<String, URI> appendUris; // "таблица маршрутизации" для RPC appendEntries
-    private final Map<String, URI> voteUris; // "таблица маршрутизации" для RPC requestVote
-    private final int timeoutMillis;
+    // "таблицы маршрутизации" по RPC: пересобираются целиком при изменении состава кластера
+    private volatile Map<String, URI> appendUris;
+    private volatile Map<String, URI> voteUris;
+    private volatile Map<String, URI> preVoteUris;
+    private volatile Map<String, URI> timeoutNowUris;
+    private volatile Map<String, URI> forwardUris; // пересылка команд лидеру
+    private final Lane control;
+    private final Lane data;
 
     public HttpRaftTransport(Map<String, PeerEndpoint> peers, Duration requestTimeout) {
+        this(peers, TransportLane.control(requestTimeout, 8), TransportLane.data(requestTimeout, 16));
+    }
+
+    public HttpRaftTransport(Map<String, PeerEndpoint> peers, TransportLane control, TransportLane data) {
         this.mapper = Json.mapper();
-        this.timeoutMillis = Math.toIntExact(Math.min(Integer.MAX_VALUE, Math.max(1, requestTimeout.toMillis())));
-        this.appendUris = java.util.Collections.unmodifiableMap(
-                peers.entrySet().stream()
-                        .collect(Collectors.toMap(Map.Entry::getKey,
-                                e -> URI.create(e.getValue().asHttpBase() + "/raft/append"))));
-        this.voteUris = java.util.Collections.unmodifiableMap(
-                peers.entrySet().stream()
-                        .collect(Collectors.toMap(Map.Entry::getKey,
-                                e -> URI.create(e.getValue().asHttpBase() + "/raft/vote"))));
+        this.control = new Lane(control, Thread.MAX_PRIORITY);
+        this.data = new Lane(data, Thread.NORM_PRIORITY);
+        updatePeers(peers.values());
+    }
+
+    @Override
+    public synchronized void updatePeers(Collection<PeerEndpoint> peers) {
+        this.appendUris = routes(peers, "/raft/append");
+        this.voteUris = routes(peers, "/raft/vote");
+        this.preVoteUris = routes(peers, "/raft/prevote");
+        this.timeoutNowUris = routes(peers, "/raft/timeout-now");
+        this.forwardUris = routes(peers, "/raft/forward");
+    }
+
+    private static Map<String, URI> routes(Collection<PeerEndpoint> peers, String path) {
+        return peers.stream().collect(Collectors.toUnmodifiableMap(PeerEndpoint::getId,
+                peer -> URI.create(peer.asHttpBase() + path)));
     }
 
     @Override
     public CompletableFuture<AppendEntriesResponse> appendEntries(String targetNodeId, AppendEntriesRequest request) {
-        return send(targetNodeId, request, appendUris, new TypeReference<AppendEntriesResponse>(){});
+        // пустой AppendEntries — heartbeat, ему нужна не пропускная способность, а малая задержка
+        Lane lane = request.getEntries().isEmpty() && !request.isCompressed() ? control : data;
+        return send(lane, targetNodeId, request, appendUris, new TypeReference<AppendEntriesResponse>(){});
     }
 
     @Override
     public CompletableFuture<RequestVoteResponse> requestVote(String targetNodeId, RequestVoteRequest request) {
-        return send(targetNodeId, request, voteUris, new TypeReference<RequestVoteResponse>(){});
+        return send(control, targetNodeId, request, voteUris, new TypeReference<RequestVoteResponse>(){});
+    }
+
+    @Override
+    public CompletableFuture<RequestVoteResponse> preVote(String targetNodeId, RequestVoteRequest request) {
+        return send(control, targetNodeId, request, preVoteUris, new TypeReference<RequestVoteResponse>(){});
+    }
+
+    @Override
+    public CompletableFuture<TimeoutNowResponse> timeoutNow(String targetNodeId, TimeoutNowRequest request) {
+        return send(control, targetNodeId, request, timeoutNowUris, new TypeReference<TimeoutNowResponse>(){});
+    }
+
+    @Override
+    public CompletableFuture<ForwardResponse> forwardCommands(String targetNodeId, ForwardRequest request) {
+        return send(data, targetNodeId, request, forwardUris, new TypeReference<ForwardResponse>(){});
     }
 
-    private <T> CompletableFuture<T> send(String targetNodeId,
+    private <T> CompletableFuture<T> send(Lane lane,
+                                          String targetNodeId,
                                           Object body,
                                           Map<String, URI> endpoints,
                                           TypeReference<T> responseType) {
@@ -71,56 +120,65 @@ public final class HttpRaftTransport implements RaftTransport, Closeable {
             return failed;
         }
 
-        return CompletableFuture.supplyAsync(() -> execute(uri, payload, responseType, targetNodeId));
+        try {
+            return CompletableFuture.supplyAsync(() -> execute(lane, uri, payload, responseType, targetNodeId), lane.executor);
+        } catch (RejectedExecutionException e) {
+            // очередь полосы полна: запрос все равно устарел бы, пока дождется потока
+            CompletableFuture<T> failed = new CompletableFuture<>();
+            failed.completeExceptionally(new IllegalStateException("Lane " + lane.name + " to " + targetNodeId + " is saturated", e));
+            return failed;
+        }
     }
 
-    private <T> T execute(URI uri, byte[] payload, TypeReference<T> responseType, String targetNodeId) {
-        HttpURLConnection connection = null;
+    private <T> T execute(Lane lane, URI uri, byte[] payload, TypeReference<T> responseType, String targetNodeId) {
+        HttpRequest request = HttpRequest.newBuilder(uri)
+                .timeout(lane.requestTimeout)
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(payload))
+                .build();
         try {
-            URL url = uri.toURL();
-            connection = (HttpURLConnection) url.openConnection();
-            connection.setConnectTimeout(timeoutMillis);
-            connection.setReadTimeout(timeoutMillis);
-            connection.setRequestMethod("POST");
-            connection.setDoOutput(true);
-            connection.setRequestProperty("Content-Type", "application/json");
-            try (OutputStream output = connection.getOutputStream()) {
-                output.write(payload);
-            }
-            int status = connection.getResponseCode();
-            InputStream responseStream = status >= 200 && status < 300
-                    ? connection.getInputStream()
-                    : connection.getErrorStream();
-            byte[] responseBody = readAll(responseStream);
-            if (status >= 200 && status < 300) {
-                return mapper.readValue(responseBody, responseType);
+            HttpResponse<byte[]> response = lane.client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+            if (response.statusCode() >= 200 && response.statusCode() < 300) {
+                return mapper.readValue(response.body(), responseType);
             }
-            throw new IllegalStateException("HTTP " + status + " from " + targetNodeId);
+            throw new IllegalStateException("HTTP " + response.statusCode() + " from " + targetNodeId);
         } catch (IOException e) {
             throw new RuntimeException("Transport to " + targetNodeId + " failed", e);
-        } finally {
-            if (connection != null) {
-                connection.disconnect();
-            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Transport to " + targetNodeId + " interrupted", e);
         }
     }
 
-    private static byte[] readAll(InputStream stream) throws IOException {
-        if (stream == null) {
-            return new byte[0];
-        }
-        try (InputStream input = stream;
-             java.io.ByteArrayOutputStream buffer = new java.io.ByteArrayOutputStream()) {
-            byte[] data = new byte[4096];
-            int read;
-            while ((read = input.read(data)) != -1) {
-                buffer.write(data, 0, read);
-            }
-            return buffer.toByteArray();
-        }
+    @Override
+    public void close() {
+        control.executor.shutdownNow();
+        data.executor.shutdownNow();
     }
 
-    @Override
-    public void close() {}
-}
+    // Потоки полосы выполняют блокирующие запросы, поэтому их число и есть предел одновременных RPC
+    private static final class Lane {
+        private final String name;
+        private final Duration requestTimeout;
+        private final HttpClient client;
+        private final ThreadPoolExecutor executor;
 
+        private Lane(TransportLane options, int priority) {
+            this.name = options.getName();
+            this.requestTimeout = options.getRequestTimeout();
+            this.client = HttpClient.newBuilder()
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .connectTimeout(options.getConnectTimeout())
+                    .build();
+            AtomicInteger threads = new AtomicInteger();
+            this.executor = new ThreadPoolExecutor(options.getMaxConcurrency(), options.getMaxConcurrency(),
+                    60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(options.getMaxQueued()), runnable -> {
+                        Thread thread = new Thread(runnable, "raft-" + name + "-" + threads.incrementAndGet());
+                        thread.setDaemon(true);
+                        thread.setPriority(priority);
+                        return thread;
+                    });
+            this.executor.allowCoreThreadTimeOut(true);
+        }
+    }
+}
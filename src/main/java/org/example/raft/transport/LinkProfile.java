@@ -0,0 +1,53 @@
+package org.example.raft.transport;
+
+import java.time.Duration;
+
+/**
+ * Параметры однонаправленного канала между нодами в LoopbackNetwork.
+ */
+public final class LinkProfile {
+    private static final LinkProfile IDEAL = new LinkProfile(Duration.ZERO, 0, 0.0);
+
+    private final Duration latency; // задержка распространения в одну сторону
+    private final long bandwidthBytesPerSecond; // 0 — без ограничения
+    private final double lossProbability; // вероятность потери сообщения, [0, 1]
+
+    public LinkProfile(Duration latency, long bandwidthBytesPerSecond, double lossProbability) {
+        if (latency.isNegative()) {
+            throw new IllegalArgumentException("latency must not be negative");
+        }
+        if (bandwidthBytesPerSecond < 0) {
+            throw new IllegalArgumentException("bandwidth must not be negative");
+        }
+        if (lossProbability < 0.0 || lossProbability > 1.0) {
+            throw new IllegalArgumentException("loss probability must be in [0, 1]");
+        }
+        this.latency = latency;
+        this.bandwidthBytesPerSecond = bandwidthBytesPerSecond;
+        this.lossProbability = lossProbability;
+    }
+
+    public static LinkProfile ideal() {
+        return IDEAL;
+    }
+
+    public Duration getLatency() {
+        return latency;
+    }
+
+    public long getBandwidthBytesPerSecond() {
+        return bandwidthBytesPerSecond;
+    }
+
+    public double getLossProbability() {
+        return lossProbability;
+    }
+
+    // Время передачи сообщения заданного размера без учета задержки распространения
+    long transmissionNanos(int bytes) {
+        if (bandwidthBytesPerSecond == 0) {
+            return 0;
+        }
+        return bytes * 1_000_000_000L / bandwidthBytesPerSecond;
+    }
+}
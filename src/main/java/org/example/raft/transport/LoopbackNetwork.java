@@ -0,0 +1,217 @@
+package org.example.raft.transport;
+
+import org.example.raft.log.LogEntry;
+import org.example.raft.protocol.AppendEntriesRequest;
+import org.example.raft.protocol.AppendEntriesResponse;
+import org.example.raft.protocol.ForwardRequest;
+import org.example.raft.protocol.ForwardResponse;
+import org.example.raft.protocol.RequestVoteRequest;
+import org.example.raft.protocol.RequestVoteResponse;
+import org.example.raft.protocol.TimeoutNowRequest;
+import org.example.raft.protocol.TimeoutNowResponse;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Сеть в памяти одной JVM: соединяет несколько нод без HTTP.
+ * Для каждого направленного канала можно задать задержку, пропускную способность и потери.
+ * Как у HttpRaftTransport, AppendEntries с записями и пересылка команд идут по полосе данных, остальное — по
+ * управляющей; пока полосе данных не задан свой профиль, обе полосы делят один канал.
+ */
+public final class LoopbackNetwork implements Closeable {
+    private static final int RPC_OVERHEAD_BYTES = 128; // заголовки и поля запроса
+    private static final int ENTRY_OVERHEAD_BYTES = 48; // term/index и JSON-обвязка записи
+
+    private final Map<String, RaftRpcHandler> nodes = new ConcurrentHashMap<>();
+    private final Map<String, Link> links = new ConcurrentHashMap<>(); // ключ "from->to"
+    private final Map<String, Link> dataLinks = new ConcurrentHashMap<>(); // отдельные каналы полосы данных
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(); // отложенная доставка
+    private final ExecutorService delivery = Executors.newCachedThreadPool(); // вызов обработчиков на целевой ноде
+    private final Duration requestTimeout;
+    private volatile LinkProfile defaultProfile;
+
+    public LoopbackNetwork(LinkProfile defaultProfile, Duration requestTimeout) {
+        this.defaultProfile = defaultProfile;
+        this.requestTimeout = requestTimeout;
+    }
+
+    public void register(RaftRpcHandler node) {
+        nodes.put(node.getLocalId(), node);
+    }
+
+    // Нода становится недоступной: запросы к ней завершаются ошибкой, как при отказе соединения
+    public void unregister(String nodeId) {
+        nodes.remove(nodeId);
+    }
+
+    public void setDefaultProfile(LinkProfile profile) {
+        this.defaultProfile = profile;
+        links.clear();
+        dataLinks.clear();
+    }
+
+    public void setLinkProfile(String fromId, String toId, LinkProfile profile) {
+        links.put(fromId + "->" + toId, new Link(profile));
+    }
+
+    // Полоса данных получает свой канал: сообщения управляющей полосы не ждут в его очереди
+    public void setDataLinkProfile(String fromId, String toId, LinkProfile profile) {
+        dataLinks.put(fromId + "->" + toId, new Link(profile));
+    }
+
+    public RaftTransport transportFor(String localId) {
+        return new LoopbackTransport(localId);
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+        delivery.shutdownNow();
+    }
+
+    private Link link(String fromId, String toId) {
+        return links.computeIfAbsent(fromId + "->" + toId, key -> new Link(defaultProfile));
+    }
+
+    private Link link(String fromId, String toId, boolean data) {
+        Link link = data ? dataLinks.get(fromId + "->" + toId) : null;
+        return link != null ? link : link(fromId, toId);
+    }
+
+    private <R> CompletableFuture<R> call(String fromId,
+                                          String toId,
+                                          boolean data,
+                                          int requestBytes,
+                                          Function<RaftRpcHandler, CompletableFuture<R>> handler,
+                                          Function<R, Integer> responseBytes) {
+        CompletableFuture<R> result = new CompletableFuture<>();
+        Link forward = link(fromId, toId, data);
+        // Потерянный запрос никто не обработает: клиент узнает об этом только по таймауту
+        forward.send(requestBytes, () -> {
+            RaftRpcHandler target = nodes.get(toId);
+            if (target == null) {
+                result.completeExceptionally(new IllegalStateException("Peer " + toId + " is unreachable"));
+                return;
+            }
+            CompletableFuture<R> response;
+            try {
+                response = handler.apply(target);
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+                return;
+            }
+            response.whenComplete((value, error) -> {
+                if (error != null) {
+                    result.completeExceptionally(error);
+                } else {
+                    link(toId, fromId, data).send(responseBytes.apply(value), () -> result.complete(value));
+                }
+            });
+        });
+        return result.orTimeout(requestTimeout.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private static int sizeOf(AppendEntriesRequest request) {
+        int size = RPC_OVERHEAD_BYTES;
+        if (request.isCompressed()) {
+            size += (request.getCompressedEntries().length + 2) / 3 * 4;
+        }
+        for (LogEntry entry : request.getEntries()) {
+            int command = entry.getCommand() != null ? entry.getCommand().length : 0;
+            size += ENTRY_OVERHEAD_BYTES + (command + 2) / 3 * 4; // команды уходят в Base64
+        }
+        return size;
+    }
+
+    private static int sizeOf(List<byte[]> payloads) {
+        int size = RPC_OVERHEAD_BYTES;
+        for (byte[] payload : payloads) {
+            size += 4 + (payload.length + 2) / 3 * 4;
+        }
+        return size;
+    }
+
+    private final class LoopbackTransport implements RaftTransport {
+        private final String localId;
+
+        private LoopbackTransport(String localId) {
+            this.localId = localId;
+        }
+
+        @Override
+        public CompletableFuture<AppendEntriesResponse> appendEntries(String targetNodeId, AppendEntriesRequest request) {
+            boolean data = !request.getEntries().isEmpty() || request.isCompressed();
+            return call(localId, targetNodeId, data, sizeOf(request),
+                    node -> CompletableFuture.completedFuture(node.handleAppendEntries(request)), response -> RPC_OVERHEAD_BYTES);
+        }
+
+        @Override
+        public CompletableFuture<RequestVoteResponse> requestVote(String targetNodeId, RequestVoteRequest request) {
+            return call(localId, targetNodeId, false, RPC_OVERHEAD_BYTES,
+                    node -> CompletableFuture.completedFuture(node.handleRequestVote(request)), response -> RPC_OVERHEAD_BYTES);
+        }
+
+        @Override
+        public CompletableFuture<RequestVoteResponse> preVote(String targetNodeId, RequestVoteRequest request) {
+            return call(localId, targetNodeId, false, RPC_OVERHEAD_BYTES,
+                    node -> CompletableFuture.completedFuture(node.handlePreVote(request)), response -> RPC_OVERHEAD_BYTES);
+        }
+
+        @Override
+        public CompletableFuture<TimeoutNowResponse> timeoutNow(String targetNodeId, TimeoutNowRequest request) {
+            return call(localId, targetNodeId, false, RPC_OVERHEAD_BYTES,
+                    node -> CompletableFuture.completedFuture(node.handleTimeoutNow(request)), response -> RPC_OVERHEAD_BYTES);
+        }
+
+        @Override
+        public CompletableFuture<ForwardResponse> forwardCommands(String targetNodeId, ForwardRequest request) {
+            return call(localId, targetNodeId, true, sizeOf(request.getCommands()),
+                    node -> node.handleForward(request),
+                    response -> sizeOf(response.getResults() != null ? response.getResults() : List.of()));
+        }
+    }
+
+    // Направленный канал: сообщения сериализуются по пропускной способности и доставляются с задержкой
+    private final class Link {
+        private final LinkProfile profile;
+        private long busyUntilNanos; // момент, когда канал освободится от предыдущих сообщений
+
+        private Link(LinkProfile profile) {
+            this.profile = profile;
+        }
+
+        void send(int bytes, Runnable onDelivery) {
+            if (profile.getLossProbability() > 0 && ThreadLocalRandom.current().nextDouble() < profile.getLossProbability()) {
+                return;
+            }
+            long now = System.nanoTime();
+            long sentAt;
+            synchronized (this) {
+                sentAt = Math.max(now, busyUntilNanos) + profile.transmissionNanos(bytes);
+                busyUntilNanos = sentAt;
+            }
+            long delay = sentAt - now + profile.getLatency().toNanos();
+            try {
+                if (delay <= 0) {
+                    delivery.execute(onDelivery);
+                } else {
+                    scheduler.schedule(() -> delivery.execute(onDelivery), delay, TimeUnit.NANOSECONDS);
+                }
+            } catch (RejectedExecutionException ignored) {
+                // сеть закрыта — сообщение теряется
+            }
+        }
+    }
+}
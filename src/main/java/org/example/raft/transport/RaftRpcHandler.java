@@ -0,0 +1,30 @@
+package org.example.raft.transport;
+
+import org.example.raft.protocol.AppendEntriesRequest;
+import org.example.raft.protocol.AppendEntriesResponse;
+import org.example.raft.protocol.ForwardRequest;
+import org.example.raft.protocol.ForwardResponse;
+import org.example.raft.protocol.RequestVoteRequest;
+import org.example.raft.protocol.RequestVoteResponse;
+import org.example.raft.protocol.TimeoutNowRequest;
+import org.example.raft.protocol.TimeoutNowResponse;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Принимающая сторона RPC: то, что транспорт вызывает на целевой ноде.
+ */
+public interface RaftRpcHandler {
+    String getLocalId();
+
+    AppendEntriesResponse handleAppendEntries(AppendEntriesRequest request);
+
+    RequestVoteResponse handleRequestVote(RequestVoteRequest request);
+
+    RequestVoteResponse handlePreVote(RequestVoteRequest request);
+
+    TimeoutNowResponse handleTimeoutNow(TimeoutNowRequest request);
+
+    // Завершается, когда пересланные команды применены лидером
+    CompletableFuture<ForwardResponse> handleForward(ForwardRequest request);
+}
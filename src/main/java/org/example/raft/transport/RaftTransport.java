@@ -1,17 +1,35 @@
 package org.example.raft.transport;
 
+import java.util.Collection;
 import java.util.concurrent.CompletableFuture;
 
+import org.example.raft.cluster.PeerEndpoint;
 import org.example.raft.protocol.AppendEntriesRequest;
 import org.example.raft.protocol.AppendEntriesResponse;
+import org.example.raft.protocol.ForwardRequest;
+import org.example.raft.protocol.ForwardResponse;
 import org.example.raft.protocol.RequestVoteRequest;
 import org.example.raft.protocol.RequestVoteResponse;
+import org.example.raft.protocol.TimeoutNowRequest;
+import org.example.raft.protocol.TimeoutNowResponse;
 
 
 public interface RaftTransport {
     CompletableFuture<AppendEntriesResponse> appendEntries(String targetNodeId, AppendEntriesRequest request);
 
     CompletableFuture<RequestVoteResponse> requestVote(String targetNodeId, RequestVoteRequest request);
+
+    // Пробное голосование: терм в запросе — тот, с которым кандидат пошел бы на выборы, состояние получателя не меняется
+    CompletableFuture<RequestVoteResponse> preVote(String targetNodeId, RequestVoteRequest request);
+
+    CompletableFuture<TimeoutNowResponse> timeoutNow(String targetNodeId, TimeoutNowRequest request);
+
+    CompletableFuture<ForwardResponse> forwardCommands(String targetNodeId, ForwardRequest request);
+
+    // Состав кластера изменился: RPC новым нодам должны доходить, удаленным — нет.
+    // Транспорт, который находит ноды по id без таблицы адресов, может ничего не делать
+    default void updatePeers(Collection<PeerEndpoint> peers) {
+    }
 }
 
 
@@ -0,0 +1,57 @@
+package org.example.raft.transport;
+
+import java.time.Duration;
+
+/**
+ * Настройки полосы HttpRaftTransport: свои потоки, свои соединения и свои таймауты.
+ * Управляющая полоса (heartbeat, голосования) короткая и быстрая, полоса данных рассчитана на
+ * большие пакеты записей и пересылку команд.
+ */
+public final class TransportLane {
+    private final String name;
+    private final Duration connectTimeout;
+    private final Duration requestTimeout;
+    private final int maxConcurrency; // одновременных запросов полосы
+    private final int maxQueued; // запросов, ждущих свободного потока; сверх этого запрос сразу завершается ошибкой
+
+    public TransportLane(String name, Duration connectTimeout, Duration requestTimeout, int maxConcurrency, int maxQueued) {
+        if (maxConcurrency < 1 || maxQueued < 1) {
+            throw new IllegalArgumentException("Lane " + name + " needs at least one thread and one queue slot");
+        }
+        this.name = name;
+        this.connectTimeout = connectTimeout;
+        this.requestTimeout = requestTimeout;
+        this.maxConcurrency = maxConcurrency;
+        this.maxQueued = maxQueued;
+    }
+
+    // heartbeat устаревает за интервал heartbeat, поэтому очередь короткая, а таймаут меньше election timeout
+    public static TransportLane control(Duration requestTimeout, int maxConcurrency) {
+        return new TransportLane("control", Duration.ofMillis(Math.max(1, requestTimeout.toMillis() / 2)), requestTimeout,
+                maxConcurrency, maxConcurrency * 4);
+    }
+
+    public static TransportLane data(Duration requestTimeout, int maxConcurrency) {
+        return new TransportLane("data", Duration.ofSeconds(1), requestTimeout, maxConcurrency, maxConcurrency * 64);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Duration getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public Duration getRequestTimeout() {
+        return requestTimeout;
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    public int getMaxQueued() {
+        return maxQueued;
+    }
+}
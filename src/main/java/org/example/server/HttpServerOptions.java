@@ -0,0 +1,167 @@
+package org.example.server;
+
+import java.time.Duration;
+
+/**
+ * Настройки HTTP-сервера. Значения по умолчанию сохраняют исходное поведение.
+ */
+public final class HttpServerOptions {
+    private int traceSampleRate = 0; // трассировать каждую N-ю запись; 0 — трассировка выключена
+    private int traceBufferSize = 256; // сколько последних трасс хранит /debug/traces
+    private boolean serverTiming = false; // заголовок Server-Timing с этапами в ответе на каждую запись
+    // Чтения с ограниченной устарелостью: нода отвечает, только если отстает от лидера не больше чем на
+    // readMaxLag записей и readMaxStalenessMillis мс; -1 — граница не задана, по умолчанию чтения не проверяются
+    private long readMaxLag = -1;
+    private long readMaxStalenessMillis = -1;
+    private Duration staleReadWait = Duration.ZERO; // сколько ждать догона, прежде чем отправить клиента к лидеру
+    // Коннектор Jetty: по умолчанию те же значения, что у new Server(port)
+    private int minThreads = 8;
+    private int maxThreads = 200;
+    private int acceptors = -1; // -1 — Jetty выбирает по числу ядер
+    private int selectors = -1;
+    private int acceptQueueSize = 0; // backlog сокета; 0 — значение ОС
+    private Duration idleTimeout = Duration.ofSeconds(30); // сколько keep-alive соединение живет без запросов
+    // HTTP/2 без TLS (h2c) на том же порту, что и HTTP/1.1: клиент мультиплексирует запросы в одном соединении
+    private boolean h2c = false;
+    private int h2MaxConcurrentStreams = 128; // одновременных запросов в одном h2c-соединении
+    private long maxRequestBodyBytes = -1; // тело запроса /kv/* больше этого — 413; -1 — без ограничения
+
+    public int getTraceSampleRate() {
+        return traceSampleRate;
+    }
+
+    public HttpServerOptions setTraceSampleRate(int traceSampleRate) {
+        this.traceSampleRate = traceSampleRate;
+        return this;
+    }
+
+    public int getTraceBufferSize() {
+        return traceBufferSize;
+    }
+
+    public HttpServerOptions setTraceBufferSize(int traceBufferSize) {
+        this.traceBufferSize = traceBufferSize;
+        return this;
+    }
+
+    public boolean isServerTiming() {
+        return serverTiming;
+    }
+
+    public HttpServerOptions setServerTiming(boolean serverTiming) {
+        this.serverTiming = serverTiming;
+        return this;
+    }
+
+    public long getReadMaxLag() {
+        return readMaxLag;
+    }
+
+    public HttpServerOptions setReadMaxLag(long readMaxLag) {
+        this.readMaxLag = readMaxLag;
+        return this;
+    }
+
+    public long getReadMaxStalenessMillis() {
+        return readMaxStalenessMillis;
+    }
+
+    public HttpServerOptions setReadMaxStalenessMillis(long readMaxStalenessMillis) {
+        this.readMaxStalenessMillis = readMaxStalenessMillis;
+        return this;
+    }
+
+    public Duration getStaleReadWait() {
+        return staleReadWait;
+    }
+
+    public HttpServerOptions setStaleReadWait(Duration staleReadWait) {
+        this.staleReadWait = staleReadWait;
+        return this;
+    }
+
+    public int getMinThreads() {
+        return minThreads;
+    }
+
+    public HttpServerOptions setMinThreads(int minThreads) {
+        this.minThreads = minThreads;
+        return this;
+    }
+
+    public int getMaxThreads() {
+        return maxThreads;
+    }
+
+    public HttpServerOptions setMaxThreads(int maxThreads) {
+        this.maxThreads = maxThreads;
+        return this;
+    }
+
+    public int getAcceptors() {
+        return acceptors;
+    }
+
+    public HttpServerOptions setAcceptors(int acceptors) {
+        this.acceptors = acceptors;
+        return this;
+    }
+
+    public int getSelectors() {
+        return selectors;
+    }
+
+    public HttpServerOptions setSelectors(int selectors) {
+        this.selectors = selectors;
+        return this;
+    }
+
+    public int getAcceptQueueSize() {
+        return acceptQueueSize;
+    }
+
+    public HttpServerOptions setAcceptQueueSize(int acceptQueueSize) {
+        this.acceptQueueSize = acceptQueueSize;
+        return this;
+    }
+
+    public Duration getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    public HttpServerOptions setIdleTimeout(Duration idleTimeout) {
+        this.idleTimeout = idleTimeout;
+        return this;
+    }
+
+    public boolean isH2c() {
+        return h2c;
+    }
+
+    public HttpServerOptions setH2c(boolean h2c) {
+        this.h2c = h2c;
+        return this;
+    }
+
+    public int getH2MaxConcurrentStreams() {
+        return h2MaxConcurrentStreams;
+    }
+
+    public HttpServerOptions setH2MaxConcurrentStreams(int h2MaxConcurrentStreams) {
+        this.h2MaxConcurrentStreams = h2MaxConcurrentStreams;
+        return this;
+    }
+
+    public long getMaxRequestBodyBytes() {
+        return maxRequestBodyBytes;
+    }
+
+    public HttpServerOptions setMaxRequestBodyBytes(long maxRequestBodyBytes) {
+        this.maxRequestBodyBytes = maxRequestBodyBytes;
+        return this;
+    }
+
+    public boolean isBoundedStaleness() {
+        return readMaxLag >= 0 || readMaxStalenessMillis >= 0;
+    }
+}
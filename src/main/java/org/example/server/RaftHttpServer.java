@@ -1,31 +1,57 @@
 package org.example.server;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnectionFactory;
 import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
 import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
 import org.example.kv.KeyValueCommand;
+import org.example.kv.KeyValueResult;
 import org.example.raft.NotLeaderException;
+import org.example.raft.OverloadedException;
+import org.example.raft.ProposalTrace;
 import org.example.raft.RaftNode;
+import org.example.raft.ReadFreshness;
+import org.example.raft.StateMachineQuery;
+import org.example.raft.VersionedQuery;
+import org.example.raft.cluster.PeerEndpoint;
 import org.example.raft.protocol.AppendEntriesRequest;
 import org.example.raft.protocol.AppendEntriesResponse;
+import org.example.raft.protocol.ForwardRequest;
+import org.example.raft.protocol.ForwardResponse;
 import org.example.raft.protocol.RequestVoteRequest;
 import org.example.raft.protocol.RequestVoteResponse;
+import org.example.raft.protocol.TimeoutNowRequest;
+import org.example.raft.protocol.TimeoutNowResponse;
 import org.example.raft.util.Json;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayOutputStream;
 import java.io.Closeable;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
 
 /**
  * HTTP-сервер, предоставляющий доступ к RPC и KV endpoints.
@@ -36,22 +62,74 @@ public final class RaftHttpServer implements Closeable {
     private static final long CLIENT_TIMEOUT_MILLIS = Long.parseLong(
         System.getProperty("raft.client.timeout", "5000")
     );
+    // Запас сверх дедлайна предложения: ответ о таймауте должен прийти от ноды, а не от ожидания сервера
+    private static final long PROPOSAL_WAIT_MARGIN_MILLIS = 1000;
+    private static final int MAX_SCAN_LIMIT = 10_000;
 
     private final Server server;
     private final RaftNode node;
+    private final long writeWaitMillis; // ожидание коммита записи, дольше дедлайна предложения
+    // Чтения по ключу в обход кодирования команды; null — GET идет через readFromStateMachine
+    private final StateMachineQuery<String, byte[]> reads;
+    // Чтения на индексе лога (параметр index, /kv/scan); null — state machine не хранит версии
+    private final VersionedQuery<String, byte[]> versions;
+    private final TraceSampler traces;
+    private final HttpServerOptions options;
     private final ObjectMapper mapper = Json.mapper();
 
     public RaftHttpServer(int port, RaftNode node) {
+        this(port, node, null);
+    }
+
+    public RaftHttpServer(int port, RaftNode node, StateMachineQuery<String, byte[]> reads) {
+        this(port, node, reads, new HttpServerOptions());
+    }
+
+    @SuppressWarnings("unchecked")
+    public RaftHttpServer(int port, RaftNode node, StateMachineQuery<String, byte[]> reads, HttpServerOptions options) {
         this.node = node;
-        this.server = new Server(port);
+        this.writeWaitMillis = Math.max(CLIENT_TIMEOUT_MILLIS, node.getProposalTimeoutMillis() + PROPOSAL_WAIT_MARGIN_MILLIS);
+        this.reads = reads;
+        this.versions = reads instanceof VersionedQuery ? (VersionedQuery<String, byte[]>) reads : null;
+        this.traces = new TraceSampler(options);
+        this.options = options;
+        this.server = createServer(port, options);
         server.setHandler(new RaftHandler());
     }
 
+    // Пул потоков и коннектор из настроек; с h2c тот же порт принимает и HTTP/1.1, и HTTP/2 без TLS
+    // (по prior knowledge или через Upgrade: h2c)
+    private static Server createServer(int port, HttpServerOptions options) {
+        QueuedThreadPool threads = new QueuedThreadPool(options.getMaxThreads(), options.getMinThreads());
+        threads.setName("http");
+        Server server = new Server(threads);
+        HttpConfiguration configuration = new HttpConfiguration();
+        HttpConnectionFactory http1 = new HttpConnectionFactory(configuration);
+        ServerConnector connector;
+        if (options.isH2c()) {
+            HTTP2CServerConnectionFactory http2 = new HTTP2CServerConnectionFactory(configuration);
+            http2.setMaxConcurrentStreams(options.getH2MaxConcurrentStreams());
+            connector = new ServerConnector(server, options.getAcceptors(), options.getSelectors(), http1, http2);
+        } else {
+            connector = new ServerConnector(server, options.getAcceptors(), options.getSelectors(), http1);
+        }
+        connector.setPort(port);
+        connector.setIdleTimeout(options.getIdleTimeout().toMillis());
+        connector.setAcceptQueueSize(options.getAcceptQueueSize());
+        server.addConnector(connector);
+        return server;
+    }
+
     public void start() throws Exception {
         server.start();
         LOGGER.info("HTTP server listening on {}", server.getURI());
     }
 
+    // Фактический порт: с портом 0 его выбирает ОС
+    public int getPort() {
+        return ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+    }
+
     @Override
     public void close() throws IOException {
         try {
@@ -70,7 +148,15 @@ public final class RaftHttpServer implements Closeable {
                     // запрос на репликацию лога
                     case "/raft/append": {
                         AppendEntriesRequest req = readJson(request, AppendEntriesRequest.class);
-                        AppendEntriesResponse resp = node.handleAppendEntries(req);
+                        AppendEntriesResponse resp;
+                        try {
+                            resp = node.handleAppendEntries(req);
+                        } catch (UncheckedIOException e) {
+                            // битый сжатый пакет: отклоняем запрос, лидер повторит репликацию
+                            LOGGER.warn("Rejected append from {}: {}", req.getLeaderId(), e.getCause().getMessage());
+                            writeBytes(response, 400, ("error:" + e.getMessage()).getBytes(StandardCharsets.UTF_8));
+                            break;
+                        }
                         writeJson(response, 200, resp);
                         break;
                     }
@@ -81,27 +167,136 @@ public final class RaftHttpServer implements Closeable {
                         writeJson(response, 200, resp);
                         break;
                     }
+                    // пробное голосование перед выборами: не меняет терм получателя
+                    case "/raft/prevote": {
+                        RequestVoteRequest req = readJson(request, RequestVoteRequest.class);
+                        RequestVoteResponse resp = node.handlePreVote(req);
+                        writeJson(response, 200, resp);
+                        break;
+                    }
+                    // лидер передает лидерство: начать выборы немедленно
+                    case "/raft/timeout-now": {
+                        TimeoutNowRequest req = readJson(request, TimeoutNowRequest.class);
+                        TimeoutNowResponse resp = node.handleTimeoutNow(req);
+                        writeJson(response, 200, resp);
+                        break;
+                    }
+                    // команды клиентов, пересланные фолловером лидеру
+                    case "/raft/forward": {
+                        ForwardRequest req = readJson(request, ForwardRequest.class);
+                        ForwardResponse resp;
+                        try {
+                            resp = node.handleForward(req).get(writeWaitMillis, TimeUnit.MILLISECONDS);
+                        } catch (TimeoutException e) {
+                            writeBytes(response, 504, "error:forwarded commands were not resolved in time".getBytes(StandardCharsets.UTF_8));
+                            break;
+                        }
+                        writeJson(response, 200, resp);
+                        break;
+                    }
                     // запрос на запись значения
                     case "/kv/put": {
+                        ProposalTrace trace = traces.start(baseRequest.getTimeStamp());
                         KeyValueCommand payload = readJson(request, KeyValueCommand.class);
-                        KeyValueCommand command = new KeyValueCommand(KeyValueCommand.Type.PUT, payload.getKey(), payload.getValue());
-                        handleWrite(response, command);
+                        KeyValueCommand command = payload.withTypeAndTimestamp(KeyValueCommand.Type.PUT, System.currentTimeMillis());
+                        handleWrite(response, command, trace);
                         break;
                     }
                     // запрос на удаление значения
                     case "/kv/delete": {
+                        ProposalTrace trace = traces.start(baseRequest.getTimeStamp());
                         KeyValueCommand payload = readJson(request, KeyValueCommand.class);
-                        KeyValueCommand command = new KeyValueCommand(KeyValueCommand.Type.DELETE, payload.getKey(), payload.getValue());
-                        handleWrite(response, command);
+                        KeyValueCommand command = payload.withTypeAndTimestamp(KeyValueCommand.Type.DELETE, System.currentTimeMillis());
+                        handleWrite(response, command, trace);
+                        break;
+                    }
+                    // условные записи: проверка и запись за одно применение из лога, без чтения перед записью
+                    case "/kv/cas":
+                    case "/kv/increment":
+                    case "/kv/put-if-absent": {
+                        ProposalTrace trace = traces.start(baseRequest.getTimeStamp());
+                        KeyValueCommand payload = readJson(request, KeyValueCommand.class);
+                        KeyValueCommand.Type type = target.equals("/kv/cas") ? KeyValueCommand.Type.CAS
+                                : target.equals("/kv/increment") ? KeyValueCommand.Type.INCREMENT : KeyValueCommand.Type.PUT_IF_ABSENT;
+                        handleWrite(response, payload.withTypeAndTimestamp(type, System.currentTimeMillis()), trace);
+                        break;
+                    }
+                    // пакет команд одним запросом: записи реплицируются вместе, результаты в том же порядке
+                    case "/kv/batch": {
+                        KeyValueCommand[] commands = readJson(request, KeyValueCommand[].class);
+                        handleBatch(response, commands);
                         break;
                     }
                     // запрос на чтение значения
                     case "/kv/get": {
-                        String key = extractKeyFromQuery(request.getQueryString());
+                        if (!checkFreshness(response)) {
+                            break;
+                        }
+                        String key = defaultIfNull(queryParam(request.getQueryString(), "key"), "");
+                        String index = queryParam(request.getQueryString(), "index");
+                        if (index != null) {
+                            handleVersionedGet(response, key, index);
+                            break;
+                        }
+                        // последнее значение берется без снимка: версия лежит в той же записи
+                        if (versions != null) {
+                            Map.Entry<Long, byte[]> latest = versions.queryLatest(key);
+                            writeBytes(response, 200, latest != null
+                                    ? KeyValueResult.encodeGet(latest.getValue(), latest.getKey())
+                                    : KeyValueResult.encodeGet(null));
+                            break;
+                        }
+                        if (reads != null) {
+                            writeBytes(response, 200, KeyValueResult.encodeGet(reads.query(key)));
+                            break;
+                        }
                         KeyValueCommand command = new KeyValueCommand(KeyValueCommand.Type.GET, key, null);
                         handleRead(response, command);
                         break;
                     }
+                    // чтение нескольких ключей: тело ["k1", "k2", ...], результаты в том же порядке
+                    case "/kv/mget": {
+                        if (!checkFreshness(response)) {
+                            break;
+                        }
+                        String[] keys = readJson(request, String[].class);
+                        handleMultiGet(response, keys, queryParam(request.getQueryString(), "index"));
+                        break;
+                    }
+                    // обход ключей [from, to) на одном индексе лога: постранично, следующая страница — с from=next и тем же index
+                    case "/kv/scan": {
+                        if (!checkFreshness(response)) {
+                            break;
+                        }
+                        handleScan(response, request.getQueryString());
+                        break;
+                    }
+                    // админский запрос: передать лидерство ноде target (без target — самому догнавшему пиру)
+                    case "/raft/transfer-leadership": {
+                        handleTransferLeadership(request, response);
+                        break;
+                    }
+                    // админские запросы изменения состава кластера: по одной ноде, через лог
+                    case "/raft/members": {
+                        writeJson(response, 200, node.getMembers());
+                        break;
+                    }
+                    case "/raft/members/add": {
+                        PeerEndpoint member = readJson(request, PeerEndpoint.class);
+                        handleMembershipChange(response, () -> node.changeMember(member));
+                        break;
+                    }
+                    case "/raft/members/remove": {
+                        JsonNode body = mapper.readTree(request.getInputStream());
+                        String id = body != null && body.hasNonNull("id") ? body.get("id").asText() : "";
+                        handleMembershipChange(response, () -> node.removeMember(id));
+                        break;
+                    }
+                    // последние выбранные трассы записей: этапы и ответы пиров в микросекундах
+                    case "/debug/traces": {
+                        writeJson(response, 200, traces.recent());
+                        break;
+                    }
                     // запрос на получение статуса ноды
                     case "/raft/status": {
                         Map<String, Object> status = new HashMap<>();
@@ -109,6 +304,12 @@ public final class RaftHttpServer implements Closeable {
                         status.put("role", node.getState().toString());
                         status.put("leader", node.getCurrentLeader());
                         status.put("term", node.getCurrentTerm());
+                        status.put("learner", node.isLearner());
+                        status.put("pendingProposals", node.getPendingProposals());
+                        status.put("admission", node.getAdmission());
+                        status.put("timeouts", node.getTimeouts());
+                        status.put("compression", node.getCompressionMetrics().snapshot());
+                        status.put("readFreshness", node.readFreshness());
                         writeJson(response, 200, status);
                         break;
                     }
@@ -117,6 +318,9 @@ public final class RaftHttpServer implements Closeable {
                         break;
                 }
                 baseRequest.setHandled(true);
+            } catch (RequestTooLargeException e) {
+                writeBytes(response, 413, ("error:" + e.getMessage()).getBytes(StandardCharsets.UTF_8));
+                baseRequest.setHandled(true);
             } catch (Exception e) {
                 LOGGER.error("Request handling failed", e);
                 response.setStatus(500);
@@ -125,15 +329,44 @@ public final class RaftHttpServer implements Closeable {
         }
     }
 
-    private void handleWrite(HttpServletResponse response, KeyValueCommand command) throws IOException {
+    private void handleWrite(HttpServletResponse response, KeyValueCommand command, ProposalTrace trace) throws IOException {
         try {
-            CompletableFuture<byte[]> future = node.submitCommand(mapper.writeValueAsBytes(command));
-            byte[] result = future.get(CLIENT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            byte[] payload = mapper.writeValueAsBytes(command);
+            if (trace != null) {
+                trace.mark(ProposalTrace.Stage.DECODED);
+            }
+            CompletableFuture<byte[]> future = node.submitCommand(payload, trace);
+            byte[] result = future.get(writeWaitMillis, TimeUnit.MILLISECONDS);
+            if (trace != null) {
+                traces.finish(trace);
+                if (traces.isServerTiming()) {
+                    response.setHeader("Server-Timing", trace.serverTiming());
+                }
+            }
             writeBytes(response, 200, result);
         } catch (NotLeaderException nle) {
-            Map<String, String> payload = new HashMap<>();
-            payload.put("leader", nle.getLeaderHint());
-            writeJson(response, 409, payload);
+            writeNotLeader(response, nle);
+        } catch (OverloadedException overloaded) {
+            writeOverloaded(response, overloaded);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof NotLeaderException) {
+                writeNotLeader(response, (NotLeaderException) e.getCause()); // лидер сменился или команда отклонена лидером
+                return;
+            }
+            if (e.getCause() instanceof OverloadedException) {
+                writeOverloaded(response, (OverloadedException) e.getCause()); // пересланную команду отклонил перегруженный лидер
+                return;
+            }
+            if (e.getCause() instanceof TimeoutException) {
+                writeBytes(response, 504, ("error:" + e.getCause().getMessage()).getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            LOGGER.error("write failed", e);
+            String message = e.getMessage();
+            writeBytes(response, 500, ("error:" + (message != null ? message : "null")).getBytes(StandardCharsets.UTF_8));
+        } catch (TimeoutException e) {
+            // обычно раньше срабатывает дедлайн предложения; сюда попадаем, если пересылка лидеру зависла
+            writeBytes(response, 504, "error:write was not committed in time".getBytes(StandardCharsets.UTF_8));
         } catch (Exception e) {
             LOGGER.error("write failed", e);
             String message = e.getMessage();
@@ -141,6 +374,183 @@ public final class RaftHttpServer implements Closeable {
         }
     }
 
+    // Записи пакета попадают в лог все или ни одной: если лидер отказал или перегружен, ответ 409/429 относится
+    // ко всему пакету и его можно повторить. После записи в лог исход у каждого элемента свой — ошибка отдельной
+    // записи (лидер сменился, таймаут коммита) приходит элементом с success=false, а не статусом всего ответа
+    private void handleBatch(HttpServletResponse response, KeyValueCommand[] commands) throws IOException {
+        try {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(writeWaitMillis);
+            long now = System.currentTimeMillis();
+            List<byte[]> payloads = new ArrayList<>(commands.length);
+            List<byte[]> writes = new ArrayList<>(commands.length);
+            boolean readsAfterWrite = false;
+            for (KeyValueCommand command : commands) {
+                byte[] payload = mapper.writeValueAsBytes(command.withTypeAndTimestamp(command.getType(), now));
+                payloads.add(payload);
+                if (command.getType() != KeyValueCommand.Type.GET) {
+                    writes.add(payload);
+                } else if (!writes.isEmpty()) {
+                    readsAfterWrite = true;
+                }
+            }
+            // чтение идет в локальную state machine: на фолловере пересланная запись должна сначала примениться здесь
+            List<CompletableFuture<byte[]>> written = writes.isEmpty() ? List.of()
+                    : node.submitCommands(writes, readsAfterWrite).get(writeWaitMillis, TimeUnit.MILLISECONDS);
+            List<CompletableFuture<byte[]>> results = new ArrayList<>(commands.length);
+            CompletableFuture<byte[]> lastWrite = CompletableFuture.completedFuture(null);
+            int nextWrite = 0;
+            for (int i = 0; i < commands.length; i++) {
+                if (commands[i].getType() == KeyValueCommand.Type.GET) {
+                    byte[] payload = payloads.get(i);
+                    // чтение должно видеть предыдущие записи пакета: записи применяются по порядку, ждем последнюю
+                    results.add(lastWrite.handle((value, error) -> null).thenApply(ignored -> node.readFromStateMachine(payload)));
+                } else {
+                    lastWrite = written.get(nextWrite++);
+                    results.add(lastWrite);
+                }
+            }
+            try {
+                CompletableFuture.allOf(results.toArray(new CompletableFuture[0]))
+                        .get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (ExecutionException | TimeoutException e) {
+                // исход каждого элемента пишется в его результат
+            }
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            body.write('[');
+            for (int i = 0; i < results.size(); i++) {
+                if (i > 0) {
+                    body.write(',');
+                }
+                body.write(batchItem(results.get(i)));
+            }
+            body.write(']');
+            writeBytes(response, 200, body.toByteArray());
+        } catch (NotLeaderException nle) {
+            writeNotLeader(response, nle);
+        } catch (OverloadedException overloaded) {
+            writeOverloaded(response, overloaded);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof NotLeaderException) {
+                writeNotLeader(response, (NotLeaderException) e.getCause());
+                return;
+            }
+            if (e.getCause() instanceof OverloadedException) {
+                writeOverloaded(response, (OverloadedException) e.getCause());
+                return;
+            }
+            LOGGER.error("batch failed", e);
+            String message = e.getMessage();
+            writeBytes(response, 500, ("error:" + (message != null ? message : "null")).getBytes(StandardCharsets.UTF_8));
+        } catch (TimeoutException e) {
+            writeBytes(response, 504, "error:batch was not accepted in time".getBytes(StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            LOGGER.error("batch failed", e);
+            String message = e.getMessage();
+            writeBytes(response, 500, ("error:" + (message != null ? message : "null")).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    // Результат элемента пакета в JSON; ошибка применения или коммита — KeyValueResult с success=false
+    private byte[] batchItem(CompletableFuture<byte[]> result) throws IOException {
+        String message;
+        if (!result.isDone()) {
+            message = "Not committed in time";
+        } else if (result.isCompletedExceptionally()) {
+            Throwable cause = result.handle((value, error) -> error instanceof CompletionException ? error.getCause() : error).join();
+            if (cause instanceof NotLeaderException) {
+                String hint = ((NotLeaderException) cause).getLeaderHint();
+                message = "Leader changed" + (hint != null ? ", leader " + hint : "") + ": outcome unknown";
+            } else if (cause instanceof TimeoutException) {
+                message = "Not committed in time";
+            } else {
+                message = String.valueOf(cause.getMessage());
+            }
+        } else {
+            byte[] value = result.join();
+            if (value.length > 0 && value[0] == '{') {
+                return value; // результат state machine уже в JSON
+            }
+            message = new String(value, StandardCharsets.UTF_8);
+        }
+        return mapper.writeValueAsBytes(new KeyValueResult(false, null, message));
+    }
+
+    private void handleMembershipChange(HttpServletResponse response, Supplier<CompletableFuture<byte[]>> change) throws IOException {
+        try {
+            byte[] members = change.get().get(CLIENT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            writeBytes(response, 200, members);
+        } catch (NotLeaderException nle) {
+            writeNotLeader(response, nle);
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            writeBytes(response, 400, ("error:" + e.getMessage()).getBytes(StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            LOGGER.error("membership change failed", e);
+            String message = e.getMessage();
+            writeBytes(response, 500, ("error:" + (message != null ? message : "null")).getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private void handleTransferLeadership(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        JsonNode body = mapper.readTree(request.getInputStream());
+        String target = body != null && body.hasNonNull("target") ? body.get("target").asText() : null;
+        try {
+            String newLeader = node.transferLeadership(target).get(CLIENT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            Map<String, String> payload = new HashMap<>();
+            payload.put("leader", newLeader);
+            writeJson(response, 200, payload);
+        } catch (NotLeaderException nle) {
+            writeNotLeader(response, nle);
+        } catch (IllegalArgumentException e) {
+            writeBytes(response, 400, ("error:" + e.getMessage()).getBytes(StandardCharsets.UTF_8));
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof NotLeaderException) {
+                writeNotLeader(response, (NotLeaderException) e.getCause()); // лидером стала не цель, а другая нода
+                return;
+            }
+            writeBytes(response, 504, ("error:leadership transfer timed out").getBytes(StandardCharsets.UTF_8));
+        } catch (TimeoutException e) {
+            writeBytes(response, 504, ("error:leadership transfer timed out").getBytes(StandardCharsets.UTF_8));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            writeBytes(response, 500, "error:interrupted".getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    // Чтение отдается локально, только если отставание ноды в заданных границах: иначе после ожидания
+    // догона клиент получает 409 с подсказкой лидера, как для записей. Отставание пишется в заголовки ответа
+    private boolean checkFreshness(HttpServletResponse response) throws IOException {
+        ReadFreshness freshness;
+        if (options.isBoundedStaleness()) {
+            try {
+                freshness = node.awaitFreshness(options.getReadMaxLag(), options.getReadMaxStalenessMillis(),
+                        options.getStaleReadWait()).get(CLIENT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (ExecutionException | TimeoutException e) {
+                freshness = node.readFreshness();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                writeBytes(response, 500, "error:interrupted".getBytes(StandardCharsets.UTF_8));
+                return false;
+            }
+        } else {
+            freshness = node.readFreshness();
+        }
+        response.setHeader("X-Raft-Read-Lag", Long.toString(freshness.getLag()));
+        response.setHeader("X-Raft-Read-Staleness-Millis", Long.toString(freshness.getStalenessMillis()));
+        if (options.isBoundedStaleness()
+                && !freshness.within(options.getReadMaxLag(), options.getReadMaxStalenessMillis())) {
+            String leaderId = freshness.getLeaderId();
+            if (leaderId == null || leaderId.equals(node.getLocalId())) {
+                // перенаправлять некуда: это лидер, давно не слышавший кворум, или лидер неизвестен.
+                // Повторить стоит через heartbeat — к этому времени лидер снова услышит кворум или сменится
+                writeUnavailable(response, Math.max(1, node.getHeartbeatMillis()));
+            } else {
+                writeNotLeader(response, new NotLeaderException(leaderId));
+            }
+            return false;
+        }
+        return true;
+    }
+
     private void handleRead(HttpServletResponse response, KeyValueCommand command) throws IOException {
         try {
             byte[] result = node.readFromStateMachine(mapper.writeValueAsBytes(command));
@@ -151,8 +561,163 @@ public final class RaftHttpServer implements Closeable {
         }
     }
 
+    // Значение с версией ключа на индексе index, индекс — в X-Raft-Read-Index
+    private void handleVersionedGet(HttpServletResponse response, String key, String index) throws IOException {
+        List<byte[]> values = readVersioned(response, List.of(key), index);
+        if (values != null) {
+            writeBytes(response, 200, values.get(0));
+        }
+    }
+
+    private void handleMultiGet(HttpServletResponse response, String[] keys, String index) throws IOException {
+        List<byte[]> values;
+        if (versions != null || index != null) {
+            values = readVersioned(response, List.of(keys), index);
+            if (values == null) {
+                return;
+            }
+        } else if (reads != null) {
+            values = new ArrayList<>(keys.length);
+            for (byte[] value : reads.queryAll(List.of(keys))) {
+                values.add(KeyValueResult.encodeGet(value));
+            }
+        } else {
+            values = new ArrayList<>(keys.length);
+            for (String key : keys) {
+                byte[] result = node.readFromStateMachine(mapper.writeValueAsBytes(new KeyValueCommand(KeyValueCommand.Type.GET, key, null)));
+                values.add(result);
+            }
+        }
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.write('[');
+        for (int i = 0; i < values.size(); i++) {
+            if (i > 0) {
+                body.write(',');
+            }
+            body.write(values.get(i));
+        }
+        body.write(']');
+        writeBytes(response, 200, body.toByteArray());
+    }
+
+    // Результаты GET с версиями для всех ключей на одном индексе; null — ответ с ошибкой уже записан
+    private List<byte[]> readVersioned(HttpServletResponse response, List<String> keys, String index) throws IOException {
+        if (versions == null) {
+            writeBytes(response, 400, "error:reads at index are not supported".getBytes(StandardCharsets.UTF_8));
+            return null;
+        }
+        long at;
+        try {
+            at = index != null ? Long.parseLong(index) : versions.appliedIndex();
+        } catch (NumberFormatException e) {
+            writeBytes(response, 400, ("error:" + e.getMessage()).getBytes(StandardCharsets.UTF_8));
+            return null;
+        }
+        while (true) {
+            try {
+                List<byte[]> values = versions.queryAllAt(keys, at);
+                List<byte[]> results = new ArrayList<>(keys.size());
+                for (int i = 0; i < keys.size(); i++) {
+                    results.add(KeyValueResult.encodeGet(values.get(i), values.get(i) != null ? versions.versionAt(keys.get(i), at) : 0));
+                }
+                response.setHeader("X-Raft-Read-Index", Long.toString(at));
+                return results;
+            } catch (IllegalArgumentException e) {
+                if (index != null) {
+                    writeBytes(response, 400, ("error:" + e.getMessage()).getBytes(StandardCharsets.UTF_8));
+                    return null;
+                }
+                at = versions.appliedIndex(); // текущий индекс успел выйти из истории: берем новый
+            }
+        }
+    }
+
+    // Ответ {"index": N, "entries": [{"key": k, "value": v}, ...], "next": ключ следующей страницы или null};
+    // значения уже закодированы JSON-строками и пишутся как есть
+    private void handleScan(HttpServletResponse response, String query) throws IOException {
+        if (versions == null) {
+            writeBytes(response, 400, "error:scan is not supported".getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+        String index = queryParam(query, "index");
+        long at;
+        int limit;
+        try {
+            limit = Integer.parseInt(defaultIfNull(queryParam(query, "limit"), "1000"));
+            at = index != null ? Long.parseLong(index) : versions.appliedIndex();
+        } catch (NumberFormatException e) {
+            writeBytes(response, 400, ("error:" + e.getMessage()).getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+        if (limit < 1 || limit > MAX_SCAN_LIMIT) {
+            writeBytes(response, 400, ("error:limit must be in [1, " + MAX_SCAN_LIMIT + "]").getBytes(StandardCharsets.UTF_8));
+            return;
+        }
+        List<Map.Entry<String, byte[]>> entries;
+        while (true) {
+            try {
+                entries = versions.scan(queryParam(query, "from"), queryParam(query, "to"), limit, at);
+                break;
+            } catch (IllegalArgumentException e) {
+                if (index != null) {
+                    writeBytes(response, 400, ("error:" + e.getMessage()).getBytes(StandardCharsets.UTF_8));
+                    return;
+                }
+                at = versions.appliedIndex(); // текущий индекс успел выйти из истории: берем новый
+            }
+        }
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.write(("{\"index\":" + at + ",\"entries\":[").getBytes(StandardCharsets.UTF_8));
+        for (int i = 0; i < entries.size(); i++) {
+            if (i > 0) {
+                body.write(',');
+            }
+            body.write("{\"key\":".getBytes(StandardCharsets.UTF_8));
+            body.write(mapper.writeValueAsBytes(entries.get(i).getKey()));
+            body.write(",\"value\":".getBytes(StandardCharsets.UTF_8));
+            body.write(entries.get(i).getValue());
+            body.write('}');
+        }
+        // следующая страница начинается сразу после последнего ключа: "\u0000" — наименьший суффикс
+        String next = entries.size() == limit ? entries.get(entries.size() - 1).getKey() + "\u0000" : null;
+        body.write(("],\"next\":").getBytes(StandardCharsets.UTF_8));
+        body.write(mapper.writeValueAsBytes(next));
+        body.write('}');
+        response.setHeader("X-Raft-Read-Index", Long.toString(at));
+        writeBytes(response, 200, body.toByteArray());
+    }
+
+    private void writeNotLeader(HttpServletResponse response, NotLeaderException nle) throws IOException {
+        Map<String, String> payload = new HashMap<>();
+        payload.put("leader", nle.getLeaderHint());
+        writeJson(response, 409, payload);
+    }
+
+    // Быстрый отказ при перегрузке: Retry-After в секундах по HTTP, точное значение — в теле
+    private void writeOverloaded(HttpServletResponse response, OverloadedException overloaded) throws IOException {
+        long retryAfterMillis = overloaded.getRetryAfterMillis();
+        response.setHeader("Retry-After", Long.toString(Math.max(1, (retryAfterMillis + 999) / 1000)));
+        Map<String, Long> payload = new HashMap<>();
+        payload.put("retryAfterMillis", retryAfterMillis);
+        writeJson(response, 429, payload);
+    }
+
+    // Нода сейчас не может ответить и перенаправить тоже некуда: 503 с Retry-After, как при перегрузке
+    private void writeUnavailable(HttpServletResponse response, long retryAfterMillis) throws IOException {
+        response.setHeader("Retry-After", Long.toString(Math.max(1, (retryAfterMillis + 999) / 1000)));
+        Map<String, Long> payload = new HashMap<>();
+        payload.put("retryAfterMillis", retryAfterMillis);
+        writeJson(response, 503, payload);
+    }
+
+    // Тело /kv/* ограничено maxRequestBodyBytes: по Content-Length сразу, для chunked — по мере чтения.
+    // RPC /raft/* не ограничиваются: размер пакетов записей задает лидер
     private <T> T readJson(HttpServletRequest request, Class<T> type) throws IOException {
-        try (InputStream body = request.getInputStream()) {
+        long limit = request.getRequestURI().startsWith("/kv/") ? options.getMaxRequestBodyBytes() : -1;
+        if (limit >= 0 && request.getContentLengthLong() > limit) {
+            throw new RequestTooLargeException(limit);
+        }
+        try (InputStream body = limit >= 0 ? new LimitedInputStream(request.getInputStream(), limit) : request.getInputStream()) {
             return mapper.readValue(body, type);
         }
     }
@@ -170,20 +735,63 @@ public final class RaftHttpServer implements Closeable {
         response.getOutputStream().flush();
     }
 
-    private String extractKeyFromQuery(String query) {
+    // Значение параметра name из строки запроса; null — параметра нет
+    private static String queryParam(String query, String name) {
         if (query == null || query.isEmpty()) {
-            return "";
+            return null;
         }
-        // Извлекаем значение параметра key (ожидаем формат: key=value)
-        String keyPrefix = "key=";
-        int keyIndex = query.indexOf(keyPrefix);
-        if (keyIndex == -1) {
-            return "";
+        for (String pair : query.split("&")) {
+            int eq = pair.indexOf('=');
+            String param = eq >= 0 ? pair.substring(0, eq) : pair;
+            if (param.equals(name)) {
+                return URLDecoder.decode(eq >= 0 ? pair.substring(eq + 1) : "", StandardCharsets.UTF_8);
+            }
         }
-        String encodedValue = query.substring(keyIndex + keyPrefix.length());
-        return URLDecoder.decode(encodedValue, StandardCharsets.UTF_8);
+        return null;
     }
 
-}
+    private static String defaultIfNull(String value, String defaultValue) {
+        return value != null ? value : defaultValue;
+    }
+
+    private static final class RequestTooLargeException extends IOException {
+        RequestTooLargeException(long limit) {
+            super("request body exceeds " + limit + " bytes");
+        }
+    }
 
+    private static final class LimitedInputStream extends FilterInputStream {
+        private final long limit;
+        private long read;
 
+        LimitedInputStream(InputStream in, long limit) {
+            super(in);
+            this.limit = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) {
+                count(n);
+            }
+            return n;
+        }
+
+        private void count(int n) throws IOException {
+            read += n;
+            if (read > limit) {
+                throw new RequestTooLargeException(limit);
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package org.example.server;
+
+import org.example.raft.ProposalTrace;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Выборка трасс записей: каждая N-я попадает в кольцевой буфер последних трасс.
+ * Если включен Server-Timing, трасса заводится на каждую запись, но в буфер попадают только выбранные.
+ */
+final class TraceSampler {
+    private final int sampleRate;
+    private final boolean serverTiming;
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong finished = new AtomicLong();
+    private final AtomicReferenceArray<ProposalTrace> ring;
+
+    TraceSampler(HttpServerOptions options) {
+        this.sampleRate = options.getTraceSampleRate();
+        this.serverTiming = options.isServerTiming();
+        this.ring = new AtomicReferenceArray<>(Math.max(1, options.getTraceBufferSize()));
+    }
+
+    // null — запрос не трассируется
+    ProposalTrace start(long requestTimestampMillis) {
+        boolean sampled = sampleRate > 0 && requests.incrementAndGet() % sampleRate == 0;
+        if (!sampled && !serverTiming) {
+            return null;
+        }
+        long queueMillis = Math.max(0, System.currentTimeMillis() - requestTimestampMillis);
+        return new ProposalTrace(queueMillis, sampled);
+    }
+
+    boolean isServerTiming() {
+        return serverTiming;
+    }
+
+    void finish(ProposalTrace trace) {
+        trace.mark(ProposalTrace.Stage.RESPONDED);
+        if (trace.isSampled()) {
+            ring.set((int) (finished.getAndIncrement() % ring.length()), trace);
+        }
+    }
+
+    // Последние трассы, от новых к старым
+    List<Map<String, Object>> recent() {
+        List<Map<String, Object>> traces = new ArrayList<>();
+        long last = finished.get();
+        for (long i = last - 1; i >= 0 && i >= last - ring.length(); i--) {
+            ProposalTrace trace = ring.get((int) (i % ring.length()));
+            if (trace != null) {
+                traces.add(trace.toMap());
+            }
+        }
+        return traces;
+    }
+}
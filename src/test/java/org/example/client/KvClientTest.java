@@ -0,0 +1,215 @@
+package org.example.client;
+
+import org.example.kv.KeyValueCommand;
+import org.example.kv.KeyValueResult;
+import org.example.kv.KeyValueStateMachine;
+import org.example.raft.RaftNode;
+import org.example.raft.RaftOptions;
+import org.example.raft.StateMachine;
+import org.example.raft.TestCluster;
+import org.example.raft.transport.FaultInjector;
+import org.example.raft.util.Json;
+import org.example.server.HttpServerOptions;
+import org.example.server.RaftHttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// KvClient против RaftHttpServer на каждой ноде кластера поверх LoopbackNetwork
+public class KvClientTest {
+    private final TestCluster cluster = new TestCluster(Duration.ofSeconds(2));
+    private final FaultInjector faults = cluster.getFaults();
+    private final List<RaftNode> nodes = cluster.getNodes();
+    private final List<RaftHttpServer> servers = new ArrayList<>();
+    private final List<URI> uris = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() throws IOException {
+        for (RaftHttpServer server : servers) {
+            server.close();
+        }
+        cluster.close();
+    }
+
+    @Test
+    void cachesLeaderAndFollowsHintAfterLeadershipChange() throws Exception {
+        startCluster(new RaftOptions());
+        RaftNode leader = cluster.awaitLeader();
+        try (KvClient client = new KvClient(uris)) {
+            assertTrue(client.put("a", "1").get(5, TimeUnit.SECONDS).isSuccess());
+            assertEquals(uriOf(leader), client.getLeader());
+            assertEquals(0, client.getRedirectCount());
+
+            RaftNode target = nodes.stream().filter(n -> n != leader).findFirst().orElseThrow();
+            leader.transferLeadership(target.getLocalId()).get(5, TimeUnit.SECONDS);
+            // кэш указывает на старого лидера: он отвечает 409 с подсказкой, запрос уходит новому
+            assertTrue(client.put("b", "2").get(5, TimeUnit.SECONDS).isSuccess());
+            assertEquals(uriOf(target), client.getLeader());
+            assertEquals(1, client.getRedirectCount());
+            assertEquals("2", client.get("b").get(5, TimeUnit.SECONDS).getValue());
+        }
+    }
+
+    @Test
+    void overloadedBatchIsRejectedWholeAndRetried() throws Exception {
+        startCluster(new RaftOptions().setMaxPendingProposals(2));
+        RaftNode leader = cluster.awaitLeader();
+        try (KvClient client = new KvClient(uris)) {
+            client.put("warmup", "0").get(5, TimeUnit.SECONDS);
+            // лидер без кворума ничего не коммитит: одно предложение занимает место, пакету из трех его не хватит
+            cluster.isolate(leader);
+            byte[] filler = Json.mapper().writeValueAsBytes(new KeyValueCommand(KeyValueCommand.Type.PUT, "filler", "0"));
+            leader.submitCommand(filler);
+            List<KeyValueCommand> batch = List.of(
+                    new KeyValueCommand(KeyValueCommand.Type.PUT, "x", "1"),
+                    new KeyValueCommand(KeyValueCommand.Type.PUT, "y", "2"),
+                    new KeyValueCommand(KeyValueCommand.Type.PUT, "z", "3"));
+            ExecutionException error = assertThrows(ExecutionException.class, () -> client.batch(batch).get(5, TimeUnit.SECONDS));
+            assertEquals(429, ((KvClientException) error.getCause()).getStatus());
+            assertEquals(5L, leader.getAdmission().get("rejected")); // каждая попытка клиента
+            assertEquals(1, leader.getPendingProposals()); // ни одна запись пакета не попала в лог
+
+            // после восстановления связи заполнитель коммитится или отменяется сменой лидера;
+            // клиент найдет актуального лидера по 409
+            faults.heal();
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (leader.getPendingProposals() > 0 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+            List<KeyValueResult> results = client.batch(batch).get(5, TimeUnit.SECONDS);
+            assertEquals(3, results.size());
+            assertTrue(results.stream().allMatch(KeyValueResult::isSuccess), results.toString());
+        }
+    }
+
+    @Test
+    void retriesTimedOutWriteWithoutApplyingItTwice() throws Exception {
+        startCluster(new RaftOptions());
+        RaftNode leader = cluster.awaitLeader();
+        try (KvClient client = new KvClient(uris, Duration.ofMillis(300), 16)) {
+            client.put("warmup", "0").get(5, TimeUnit.SECONDS);
+            // репликация до фолловеров дольше таймаута клиента: команда закоммитится,
+            // но ответ на первую попытку клиент не дождется и повторит ее
+            for (RaftNode node : nodes) {
+                if (node != leader) {
+                    faults.delay(leader.getLocalId(), node.getLocalId(), Duration.ofMillis(500));
+                }
+            }
+            CompletableFuture<KeyValueResult> increment = client.increment("counter", 1);
+            Thread.sleep(350);
+            faults.heal();
+
+            assertEquals("1", increment.get(5, TimeUnit.SECONDS).getValue());
+            assertEquals("1", client.get("counter").get(5, TimeUnit.SECONDS).getValue());
+            long attempts = machineOf(leader).applied.stream().filter(command -> "counter".equals(command.getKey())).count();
+            assertTrue(attempts >= 2, "attempts " + attempts);
+        }
+    }
+
+    @Test
+    void acknowledgesSequencesThatGotResponses() throws Exception {
+        startCluster(new RaftOptions());
+        RaftNode leader = cluster.awaitLeader();
+        try (KvClient client = new KvClient(uris)) {
+            client.put("a", "1").get(5, TimeUnit.SECONDS);
+            client.put("b", "2").get(5, TimeUnit.SECONDS);
+            // пока запись 3 без ответа, 4 и 5 подтверждают только 2
+            List<CompletableFuture<KeyValueResult>> concurrent = List.of(
+                    client.put("c", "3"), client.put("d", "4"), client.put("e", "5"));
+            for (CompletableFuture<KeyValueResult> result : concurrent) {
+                result.get(5, TimeUnit.SECONDS);
+            }
+            client.put("f", "6").get(5, TimeUnit.SECONDS);
+
+            List<KeyValueCommand> applied = machineOf(leader).applied;
+            assertEquals(6, applied.size());
+            for (KeyValueCommand command : applied) {
+                long expected = command.getSequence() <= 2 || command.getSequence() == 6 ? command.getSequence() - 1 : 2;
+                assertEquals(expected, command.getAckedSequence(), "sequence " + command.getSequence());
+            }
+        }
+    }
+
+    @Test
+    void multiplexesRequestsOverH2c() throws Exception {
+        startCluster(new RaftOptions(), new HttpServerOptions().setH2c(true));
+        cluster.awaitLeader();
+        try (KvClient client = new KvClient(uris, Duration.ofSeconds(10), 64, HttpClient.Version.HTTP_2)) {
+            List<CompletableFuture<KeyValueResult>> writes = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                writes.add(client.put("k" + i, Integer.toString(i)));
+            }
+            for (CompletableFuture<KeyValueResult> write : writes) {
+                assertTrue(write.get(5, TimeUnit.SECONDS).isSuccess());
+            }
+            assertEquals("31", client.get("k31").get(5, TimeUnit.SECONDS).getValue());
+        }
+    }
+
+    private void startCluster(RaftOptions options) throws Exception {
+        startCluster(options, new HttpServerOptions());
+    }
+
+    // На каждой ноде — HTTP-сервер; uris в том же порядке, что и ноды кластера
+    private void startCluster(RaftOptions options, HttpServerOptions serverOptions) throws Exception {
+        for (RaftNode node : cluster.start(3, options, RecordingStateMachine::new)) {
+            RecordingStateMachine machine = cluster.machineOf(node);
+            RaftHttpServer server = new RaftHttpServer(0, node, machine.delegate, serverOptions);
+            server.start();
+            servers.add(server);
+            uris.add(URI.create("http://127.0.0.1:" + server.getPort()));
+        }
+    }
+
+    private URI uriOf(RaftNode node) {
+        return uris.get(nodes.indexOf(node));
+    }
+
+    private RecordingStateMachine machineOf(RaftNode node) {
+        return cluster.machineOf(node);
+    }
+
+    // Запоминает примененные команды записи: по ним видно sequence и ackedSequence, отправленные клиентом
+    private static final class RecordingStateMachine implements StateMachine {
+        private final KeyValueStateMachine delegate = new KeyValueStateMachine();
+        private final List<KeyValueCommand> applied = new CopyOnWriteArrayList<>();
+
+        @Override
+        public byte[] apply(byte[] command) {
+            record(command);
+            return delegate.apply(command);
+        }
+
+        @Override
+        public List<byte[]> applyBatch(long firstIndex, List<byte[]> commands) {
+            commands.forEach(this::record);
+            return delegate.applyBatch(firstIndex, commands);
+        }
+
+        private void record(byte[] command) {
+            try {
+                KeyValueCommand decoded = Json.mapper().readValue(command, KeyValueCommand.class);
+                if (decoded.getClientId() != null && !"warmup".equals(decoded.getKey())) {
+                    applied.add(decoded);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
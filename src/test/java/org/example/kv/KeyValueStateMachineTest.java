@@ -2,7 +2,14 @@ package org.example.kv;
 
 import org.junit.jupiter.api.Test;
 
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 public class KeyValueStateMachineTest {
 
@@ -16,6 +23,157 @@ public class KeyValueStateMachineTest {
         assertEquals(new String(putResult), new String(getResult));
     }
 
+    @Test
+    void queryReturnsEncodedValueMatchingApplyResult() {
+        KeyValueStateMachine machine = new KeyValueStateMachine();
+        machine.apply(JsonSupport.toBytes(new KeyValueCommand(KeyValueCommand.Type.PUT, "a", "{\"x\": \"\u00e9\"}")));
+        byte[] get = machine.apply(JsonSupport.toBytes(new KeyValueCommand(KeyValueCommand.Type.GET, "a", null)));
+        assertEquals(new String(JsonSupport.toBytes(new KeyValueResult(true, "{\"x\": \"\u00e9\"}", "OK", 1))), new String(get));
+        assertEquals(new String(get), new String(KeyValueResult.encodeGet(machine.query("a"), machine.versionAt("a", machine.appliedIndex()))));
+
+        List<byte[]> values = machine.queryAll(List.of("a", "missing"));
+        assertEquals("{\"x\": \"\u00e9\"}", JsonSupport.result(KeyValueResult.encodeGet(values.get(0))).getValue());
+        assertEquals(null, values.get(1));
+        assertEquals("Key missing", JsonSupport.result(KeyValueResult.encodeGet(values.get(1))).getMessage());
+    }
+
+    @Test
+    void applyBatchMatchesSequentialApply() {
+        List<byte[]> commands = List.of(
+                JsonSupport.toBytes(new KeyValueCommand(KeyValueCommand.Type.PUT, "a", "1")),
+                JsonSupport.toBytes(new KeyValueCommand(KeyValueCommand.Type.PUT, "b", "\"quoted\"")),
+                JsonSupport.toBytes(new KeyValueCommand(KeyValueCommand.Type.GET, "a", null)),
+                JsonSupport.toBytes(new KeyValueCommand(KeyValueCommand.Type.DELETE, "a", null, "c1", 1, 0, 1000)),
+                JsonSupport.toBytes(new KeyValueCommand(KeyValueCommand.Type.DELETE, "a", null, "c1", 1, 0, 1000)),
+                JsonSupport.toBytes(new KeyValueCommand(KeyValueCommand.Type.GET, "a", null)),
+                JsonSupport.toBytes(new KeyValueCommand(KeyValueCommand.Type.DELETE, "b", null)),
+                JsonSupport.toBytes(new KeyValueCommand(KeyValueCommand.Type.PUT, "b", "2")),
+                "not json".getBytes());
+        KeyValueStateMachine sequential = new KeyValueStateMachine();
+        KeyValueStateMachine batched = new KeyValueStateMachine();
+        List<byte[]> results = batched.applyBatch(commands);
+        for (int i = 0; i < commands.size(); i++) {
+            // каждая команда — отдельная запись лога со своим индексом, как в пакете
+            byte[] result = sequential.applyBatch(i + 1, List.of(commands.get(i))).get(0);
+            assertEquals(new String(result), new String(results.get(i)), "command " + i);
+        }
+        assertEquals("Key missing", JsonSupport.result(results.get(5)).getMessage());
+        assertEquals("\"quoted\"", JsonSupport.result(results.get(6)).getValue());
+        assertEquals(null, batched.query("a"));
+        assertEquals(new String(sequential.query("b")), new String(batched.query("b")));
+    }
+
+    @Test
+    void duplicateSessionCommandReturnsCachedResult() {
+        KeyValueStateMachine machine = new KeyValueStateMachine();
+        byte[] first = machine.apply(JsonSupport.toBytes(
+                new KeyValueCommand(KeyValueCommand.Type.DELETE, "a", null, "c1", 1, 0, 1000)));
+        machine.apply(JsonSupport.toBytes(new KeyValueCommand(KeyValueCommand.Type.PUT, "a", "1")));
+        byte[] retry = machine.apply(JsonSupport.toBytes(
+                new KeyValueCommand(KeyValueCommand.Type.DELETE, "a", null, "c1", 1, 0, 2000)));
+        assertEquals(new String(first), new String(retry));
+        byte[] get = machine.apply(JsonSupport.toBytes(new KeyValueCommand(KeyValueCommand.Type.GET, "a", null)));
+        assertEquals("1", JsonSupport.result(get).getValue());
+
+        machine.apply(JsonSupport.toBytes(new KeyValueCommand(KeyValueCommand.Type.PUT, "b", "2", "c1", 2, 1, 3000)));
+        byte[] stale = machine.apply(JsonSupport.toBytes(
+                new KeyValueCommand(KeyValueCommand.Type.DELETE, "a", null, "c1", 1, 0, 4000)));
+        assertEquals("Stale sequence", JsonSupport.result(stale).getMessage());
+    }
+
+    @Test
+    void idleSessionsExpire() {
+        KeyValueStateMachine machine = new KeyValueStateMachine(Duration.ofSeconds(10));
+        machine.apply(JsonSupport.toBytes(new KeyValueCommand(KeyValueCommand.Type.PUT, "a", "1", "c1", 1, 0, 1_000)));
+        machine.apply(JsonSupport.toBytes(new KeyValueCommand(KeyValueCommand.Type.PUT, "b", "2", "c2", 1, 0, 5_000)));
+        assertEquals(2, machine.sessionCount());
+        machine.apply(JsonSupport.toBytes(new KeyValueCommand(KeyValueCommand.Type.PUT, "b", "3", "c2", 2, 1, 12_000)));
+        assertEquals(1, machine.sessionCount());
+    }
+
+    @Test
+    void versionedReadsSeeStateAtIndexAndSnapshotsPinHistory() {
+        KeyValueStateMachine machine = new KeyValueStateMachine(Duration.ofSeconds(10), 2);
+        machine.applyBatch(1, List.of(
+                JsonSupport.toBytes(new KeyValueCommand(KeyValueCommand.Type.PUT, "a", "1")),
+                JsonSupport.toBytes(new KeyValueCommand(KeyValueCommand.Type.PUT, "b", "1"))));
+        machine.applyBatch(3, List.of(
+                JsonSupport.toBytes(new KeyValueCommand(KeyValueCommand.Type.PUT, "a", "2")),
+                JsonSupport.toBytes(new KeyValueCommand(KeyValueCommand.Type.DELETE, "b", null))));
+        assertEquals(4, machine.appliedIndex());
+        assertEquals("\"1\"", new String(machine.queryAt("a", 2)));
+        assertEquals("\"1\"", new String(machine.queryAt("b", 2)));
+        assertNull(machine.queryAt("b", 4));
+        assertEquals(3L, machine.queryLatest("a").getKey());
+        assertEquals("\"2\"", new String(machine.queryLatest("a").getValue()));
+        assertNull(machine.queryLatest("b"));
+        assertEquals(List.of("a", "b"), keys(machine.scan(null, null, 10, 2)));
+        assertEquals(List.of("a"), keys(machine.scan(null, null, 10, 4)));
+        assertEquals(List.of("b"), keys(machine.scan("a\u0000", "c", 10, 2)));
+
+        try (VersionedStore.Snapshot snapshot = machine.snapshot()) {
+            machine.applyBatch(5, List.of(
+                    JsonSupport.toBytes(new KeyValueCommand(KeyValueCommand.Type.PUT, "a", "3")),
+                    JsonSupport.toBytes(new KeyValueCommand(KeyValueCommand.Type.PUT, "a", "4")),
+                    JsonSupport.toBytes(new KeyValueCommand(KeyValueCommand.Type.PUT, "a", "5"))));
+            assertEquals("\"2\"", new String(snapshot.get("a")));
+            assertEquals("\"2\"", new String(machine.queryAt("a", 4)));
+            assertEquals("\"5\"", new String(machine.query("a")));
+            assertThrows(IllegalArgumentException.class, () -> machine.queryAt("a", 3));
+        }
+        machine.applyBatch(8, List.of(JsonSupport.toBytes(new KeyValueCommand(KeyValueCommand.Type.PUT, "c", "1"))));
+        assertThrows(IllegalArgumentException.class, () -> machine.queryAt("a", 4));
+        assertThrows(IllegalArgumentException.class, () -> machine.queryAt("a", 9));
+        assertEquals("\"4\"", new String(machine.queryAt("a", 6)));
+    }
+
+    @Test
+    void conditionalWritesCompareAndSetAtomically() {
+        KeyValueStateMachine machine = new KeyValueStateMachine();
+        KeyValueResult created = JsonSupport.result(machine.applyBatch(1, List.of(
+                JsonSupport.toBytes(KeyValueCommand.putIfAbsent("lock", "owner-1")))).get(0));
+        assertEquals(true, created.isSuccess());
+        assertEquals(1, created.getVersion());
+        KeyValueResult exists = JsonSupport.result(machine.applyBatch(2, List.of(
+                JsonSupport.toBytes(KeyValueCommand.putIfAbsent("lock", "owner-2")))).get(0));
+        assertEquals(false, exists.isSuccess());
+        assertEquals("owner-1", exists.getValue());
+        assertEquals(1, exists.getVersion());
+
+        // устаревшая версия: отказ с текущими значением и версией, по ним можно сразу повторить
+        List<byte[]> cas = machine.applyBatch(3, List.of(
+                JsonSupport.toBytes(KeyValueCommand.compareAndSet("lock", null, 1L, "owner-2")),
+                JsonSupport.toBytes(KeyValueCommand.compareAndSet("lock", null, 1L, "owner-3")),
+                JsonSupport.toBytes(KeyValueCommand.compareAndSet("lock", "owner-2", null, "owner-3")),
+                JsonSupport.toBytes(KeyValueCommand.compareAndSet("missing", null, 0L, "x"))));
+        assertEquals(true, JsonSupport.result(cas.get(0)).isSuccess());
+        KeyValueResult stale = JsonSupport.result(cas.get(1));
+        assertEquals(false, stale.isSuccess());
+        assertEquals("owner-2", stale.getValue());
+        assertEquals(3, stale.getVersion());
+        assertEquals(true, JsonSupport.result(cas.get(2)).isSuccess());
+        assertEquals(6, JsonSupport.result(cas.get(3)).getVersion());
+        assertEquals("\"owner-3\"", new String(machine.query("lock")));
+
+        List<byte[]> increments = machine.applyBatch(7, List.of(
+                JsonSupport.toBytes(KeyValueCommand.increment("counter", 5)),
+                JsonSupport.toBytes(KeyValueCommand.increment("counter", -2)),
+                JsonSupport.toBytes(KeyValueCommand.increment("lock", 1)),
+                JsonSupport.toBytes(new KeyValueCommand(KeyValueCommand.Type.INCREMENT, "counter", "1", "c1", 1, 0, 1000)),
+                JsonSupport.toBytes(new KeyValueCommand(KeyValueCommand.Type.INCREMENT, "counter", "1", "c1", 1, 0, 1000))));
+        assertEquals("5", JsonSupport.result(increments.get(0)).getValue());
+        assertEquals("3", JsonSupport.result(increments.get(1)).getValue());
+        assertEquals("Value is not an integer", JsonSupport.result(increments.get(2)).getMessage());
+        assertEquals("4", JsonSupport.result(increments.get(3)).getValue());
+        assertEquals(new String(increments.get(3)), new String(increments.get(4))); // повтор в сессии не прибавляет
+        assertEquals("\"4\"", new String(machine.query("counter")));
+        assertEquals(10, machine.versionAt("counter", machine.appliedIndex()));
+    }
+
+    private static List<String> keys(List<Map.Entry<String, byte[]>> entries) {
+        return entries.stream().map(Map.Entry::getKey).collect(Collectors.toList());
+    }
+
     private static final class JsonSupport {
         private static final com.fasterxml.jackson.databind.ObjectMapper MAPPER = org.example.raft.util.Json.mapper();
 
@@ -26,6 +184,14 @@ public class KeyValueStateMachineTest {
                 throw new RuntimeException(e);
             }
         }
+
+        static KeyValueResult result(byte[] bytes) {
+            try {
+                return MAPPER.readValue(bytes, KeyValueResult.class);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
     }
 }
 
@@ -0,0 +1,88 @@
+package org.example.loadgen;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class KeyGeneratorTest {
+    private static final int DRAWS = 100_000;
+
+    @Test
+    void uniformCoversEveryKeyEvenly() {
+        int[] counts = histogram(KeyGenerator.create("uniform", 10, 0.99, 0.2, 0.8), new Random(1));
+        for (int count : counts) {
+            assertTrue(Math.abs(count - DRAWS / 10) < DRAWS / 100, Arrays.toString(counts));
+        }
+    }
+
+    @Test
+    void zipfianStaysInRangeAndSkewsToFewKeys() {
+        int[] counts = histogram(KeyGenerator.create("zipfian", 1000, 0.99, 0.2, 0.8), new Random(1));
+        int[] sorted = counts.clone();
+        Arrays.sort(sorted);
+        // самый популярный ключ при theta = 0.99 получает около 13% операций, при равномерном — 0.1%
+        assertTrue(sorted[sorted.length - 1] > DRAWS / 10, "top " + sorted[sorted.length - 1]);
+        int top10 = 0;
+        for (int i = sorted.length - 10; i < sorted.length; i++) {
+            top10 += sorted[i];
+        }
+        assertTrue(top10 > DRAWS * 3 / 10, "top10 " + top10);
+    }
+
+    @Test
+    void hotspotSendsConfiguredShareToHotKeys() {
+        int[] counts = histogram(KeyGenerator.create("hotspot", 100, 0.99, 0.2, 0.8), new Random(1));
+        int hot = Arrays.stream(counts, 0, 20).sum();
+        assertTrue(Math.abs(hot - DRAWS * 8 / 10) < DRAWS / 100, "hot " + hot);
+        assertTrue(Arrays.stream(counts, 20, 100).allMatch(count -> count > 0));
+
+        // все ключи горячие — распределение вырождается в равномерное по всему диапазону
+        int[] all = histogram(KeyGenerator.create("hotspot", 10, 0.99, 1.0, 0.5), new Random(1));
+        assertTrue(Arrays.stream(all).allMatch(count -> count > 0), Arrays.toString(all));
+    }
+
+    @Test
+    void sameSeedRepeatsKeySequence() {
+        for (String distribution : new String[]{"uniform", "zipfian", "hotspot"}) {
+            KeyGenerator generator = KeyGenerator.create(distribution, 1000, 0.99, 0.2, 0.8);
+            int[] first = sequence(generator, new Random(42));
+            assertArrayEquals(first, sequence(generator, new Random(42)), distribution);
+            assertArrayEquals(first, sequence(KeyGenerator.create(distribution, 1000, 0.99, 0.2, 0.8), new Random(42)), distribution);
+            assertFalse(Arrays.equals(first, sequence(generator, new Random(43))), distribution);
+        }
+        assertEquals("key" + KeyGenerator.create("uniform", 1000, 0, 0, 0).nextIndex(new Random(7)),
+                KeyGenerator.create("uniform", 1000, 0, 0, 0).nextKey(new Random(7)));
+    }
+
+    @Test
+    void rejectsUnknownDistributionAndEmptyKeySpace() {
+        assertThrows(IllegalArgumentException.class, () -> KeyGenerator.create("gaussian", 10, 0.99, 0.2, 0.8));
+        assertThrows(IllegalArgumentException.class, () -> KeyGenerator.create("uniform", 0, 0.99, 0.2, 0.8));
+    }
+
+    // Число выпадений каждого ключа; каждый номер должен попасть в [0, keyCount)
+    private static int[] histogram(KeyGenerator generator, Random random) {
+        int[] counts = new int[generator.keyCount];
+        for (int i = 0; i < DRAWS; i++) {
+            int index = generator.nextIndex(random);
+            assertTrue(index >= 0 && index < generator.keyCount, "index " + index);
+            counts[index]++;
+        }
+        return counts;
+    }
+
+    private static int[] sequence(KeyGenerator generator, Random random) {
+        int[] indices = new int[1000];
+        for (int i = 0; i < indices.length; i++) {
+            indices[i] = generator.nextIndex(random);
+        }
+        return indices;
+    }
+}
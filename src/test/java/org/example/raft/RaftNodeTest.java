@@ -0,0 +1,506 @@
+package org.example.raft;
+
+import org.example.kv.KeyValueCommand;
+import org.example.kv.KeyValueStateMachine;
+import org.example.raft.cluster.ClusterConfig;
+import org.example.raft.cluster.PeerEndpoint;
+import org.example.raft.log.LogEntry;
+import org.example.raft.protocol.AppendEntriesRequest;
+import org.example.raft.protocol.ForwardRequest;
+import org.example.raft.protocol.ForwardResponse;
+import org.example.raft.protocol.RequestVoteRequest;
+import org.example.raft.transport.FaultInjector;
+import org.example.raft.transport.FaultScenario;
+import org.example.raft.transport.LinkProfile;
+import org.example.raft.transport.LoopbackNetwork;
+import org.example.raft.util.Json;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RaftNodeTest {
+    private final TestCluster cluster = new TestCluster();
+    private final LoopbackNetwork network = cluster.getNetwork();
+    private final FaultInjector faults = cluster.getFaults();
+    private final List<RaftNode> nodes = cluster.getNodes();
+
+    @AfterEach
+    void tearDown() {
+        cluster.close();
+    }
+
+    @Test
+    void electsLeaderAndReplicatesCommand() throws Exception {
+        cluster.start(3, new RaftOptions());
+        RaftNode leader = cluster.awaitLeader();
+        byte[] put = Json.mapper().writeValueAsBytes(new KeyValueCommand(KeyValueCommand.Type.PUT, "a", "1"));
+        leader.submitCommand(put).get(5, TimeUnit.SECONDS);
+        assertEquals(2, leader.getCommitIndex()); // пустая запись избрания и команда
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline && !nodes.stream().allMatch(n -> n.getLastApplied() >= 2)) {
+            Thread.sleep(10);
+        }
+        for (RaftNode node : nodes) {
+            assertEquals(2, node.getLastApplied(), "node " + node.getLocalId());
+            assertEquals(leader.getLocalId(), node.getCurrentLeader());
+        }
+        assertTrue(nodes.stream().filter(n -> n.getState() == RaftState.LEADER).count() == 1);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void tracesProposalStagesAndPeerRpcs() throws Exception {
+        cluster.start(3, new RaftOptions());
+        RaftNode leader = cluster.awaitLeader();
+        ProposalTrace trace = new ProposalTrace(0, true);
+        byte[] put = Json.mapper().writeValueAsBytes(new KeyValueCommand(KeyValueCommand.Type.PUT, "a", "1"));
+        leader.submitCommand(put, trace).get(5, TimeUnit.SECONDS);
+
+        Map<String, Object> stages = (Map<String, Object>) trace.toMap().get("stagesMicros");
+        assertTrue(stages.keySet().containsAll(List.of("locked", "appended", "committed", "applied")), stages.toString());
+        Map<String, Object> peers = (Map<String, Object>) trace.toMap().get("peersMicros");
+        assertEquals(2, peers.size());
+        assertTrue(trace.serverTiming().contains("committed;dur="));
+    }
+
+    @Test
+    void followerForwardsWritesToLeader() throws Exception {
+        cluster.start(3, new RaftOptions().setForwardProposals(true));
+        RaftNode leader = cluster.awaitLeader();
+        RaftNode follower = nodes.stream().filter(n -> n != leader).findFirst().orElseThrow();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline && follower.getCurrentLeader() == null) {
+            Thread.sleep(10);
+        }
+        byte[] put = Json.mapper().writeValueAsBytes(new KeyValueCommand(KeyValueCommand.Type.PUT, "a", "1"));
+        byte[] result = follower.submitCommand(put).get(5, TimeUnit.SECONDS);
+        assertTrue(new String(result).contains("PUT applied"));
+        assertTrue(leader.getCommitIndex() >= 1);
+    }
+
+    @Test
+    void forwardedBatchCompletesAfterFollowerAppliesIt() throws Exception {
+        cluster.start(3, new RaftOptions().setForwardProposals(true));
+        RaftNode leader = cluster.awaitLeader();
+        RaftNode follower = nodes.stream().filter(n -> n != leader).findFirst().orElseThrow();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline && follower.getCurrentLeader() == null) {
+            Thread.sleep(10);
+        }
+        byte[] put = Json.mapper().writeValueAsBytes(new KeyValueCommand(KeyValueCommand.Type.PUT, "a", "1"));
+        List<CompletableFuture<byte[]>> results = follower.submitCommands(List.of(put, put), true).get(5, TimeUnit.SECONDS);
+        for (CompletableFuture<byte[]> result : results) {
+            assertTrue(new String(result.get(5, TimeUnit.SECONDS)).contains("PUT applied"));
+        }
+        // других записей нет: лидер применил ровно пакет, и фолловер уже дошел до него
+        assertTrue(follower.getLastApplied() >= leader.getLastApplied());
+    }
+
+    @Test
+    void forwardingToStaleLeaderIsRedirectedOnce() throws Exception {
+        cluster.start(3, new RaftOptions().setForwardProposals(true));
+        RaftNode leader = cluster.awaitLeader();
+        List<RaftNode> followers = new ArrayList<>(nodes);
+        followers.remove(leader);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline && followers.get(1).getCurrentLeader() == null) {
+            Thread.sleep(10);
+        }
+        // первый фолловер считает лидером второго: тот отказывает с подсказкой, команда уходит настоящему лидеру
+        ProposalForwarder forwarder = new ProposalForwarder(followers.get(0).getLocalId(),
+                network.transportFor(followers.get(0).getLocalId()));
+        byte[] put = Json.mapper().writeValueAsBytes(new KeyValueCommand(KeyValueCommand.Type.PUT, "a", "1"));
+        byte[] result = forwarder.forward(followers.get(1).getLocalId(), put).get(5, TimeUnit.SECONDS);
+        assertTrue(new String(result).contains("PUT applied"));
+    }
+
+    @Test
+    void replicatesCompressedEntriesToPeersThatAcceptThem() throws Exception {
+        cluster.start(3, new RaftOptions().setCompressEntries(true).setCompressionThreshold(0));
+        RaftNode leader = cluster.awaitLeader();
+        // пиры сообщают о поддержке сжатия в ответах на heartbeat
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline && !nodes.stream().filter(n -> n != leader).allMatch(n -> leader.acceptsCompression(n.getLocalId()))) {
+            Thread.sleep(10);
+        }
+        for (int i = 1; i <= 20; i++) {
+            byte[] put = Json.mapper().writeValueAsBytes(new KeyValueCommand(KeyValueCommand.Type.PUT, "key" + i, "{\"value\":" + i + "}"));
+            leader.submitCommand(put).get(5, TimeUnit.SECONDS);
+        }
+        deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline && !nodes.stream().allMatch(n -> n.getLastApplied() >= 21)) {
+            Thread.sleep(10);
+        }
+        byte[] get = Json.mapper().writeValueAsBytes(new KeyValueCommand(KeyValueCommand.Type.GET, "key7", null));
+        for (RaftNode node : nodes) {
+            assertEquals(21, node.getLastApplied(), "node " + node.getLocalId());
+            assertTrue(new String(node.readFromStateMachine(get)).contains("value\\\":7"));
+        }
+        assertTrue((long) leader.getCompressionMetrics().snapshot().get("compressedBatches") > 0);
+    }
+
+    @Test
+    void learnerReplicatesWithoutVoting() throws Exception {
+        List<PeerEndpoint> endpoints = new ArrayList<>(TestCluster.endpoints(3));
+        endpoints.add(new PeerEndpoint("learner", "127.0.0.1", 9004, true));
+        cluster.start(endpoints, new RaftOptions());
+        RaftNode learner = nodes.get(3);
+        // learner недоступен: коммит все равно проходит по кворуму из голосующих нод
+        network.unregister(learner.getLocalId());
+        RaftNode leader = cluster.awaitLeader();
+        byte[] put = Json.mapper().writeValueAsBytes(new KeyValueCommand(KeyValueCommand.Type.PUT, "a", "1"));
+        leader.submitCommand(put).get(5, TimeUnit.SECONDS);
+
+        network.register(learner);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline && learner.getLastApplied() < leader.getCommitIndex()) {
+            Thread.sleep(10);
+        }
+        assertEquals(leader.getCommitIndex(), learner.getLastApplied());
+        assertEquals(RaftState.FOLLOWER, learner.getState());
+        assertEquals(leader.getLocalId(), learner.getCurrentLeader());
+    }
+
+    @Test
+    void isolatedFollowerDoesNotRaiseTermWithPreVote() throws Exception {
+        cluster.start(3, new RaftOptions().setPreVote(true).setCheckQuorum(true));
+        RaftNode leader = cluster.awaitLeader();
+        RaftNode isolated = nodes.stream().filter(n -> n != leader).findFirst().orElseThrow();
+        long term = leader.getCurrentTerm();
+        isolate(isolated, true);
+        // несколько election timeout (до 800 мс) без лидера: пробные раунды проваливаются, терм не растет
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (System.nanoTime() < deadline && stalenessMillis(isolated) < 2000) {
+            assertEquals(term, isolated.getCurrentTerm());
+            Thread.sleep(10);
+        }
+        assertTrue(stalenessMillis(isolated) >= 2000, "staleness " + stalenessMillis(isolated));
+        assertEquals(term, isolated.getCurrentTerm());
+        isolate(isolated, false);
+        ReadFreshness fresh = isolated.awaitFreshness(-1, 200, Duration.ofSeconds(5)).get(10, TimeUnit.SECONDS);
+        assertTrue(fresh.within(-1, 200), "staleness " + fresh.getStalenessMillis());
+        assertEquals(leader.getLocalId(), isolated.getCurrentLeader());
+        assertEquals(RaftState.LEADER, leader.getState());
+        assertEquals(term, leader.getCurrentTerm());
+    }
+
+    @Test
+    void slowDataLaneDoesNotDelayHeartbeats() throws Exception {
+        cluster.start(3, new RaftOptions());
+        RaftNode leader = cluster.awaitLeader();
+        RaftNode slow = nodes.stream().filter(n -> n != leader).findFirst().orElseThrow();
+        long term = leader.getCurrentTerm();
+        // пакет записей идет к фолловеру дольше election timeout; heartbeat и голоса — по управляющей полосе
+        network.setDataLinkProfile(leader.getLocalId(), slow.getLocalId(), new LinkProfile(Duration.ofMillis(900), 0, 0.0));
+
+        byte[] put = Json.mapper().writeValueAsBytes(new KeyValueCommand(KeyValueCommand.Type.PUT, "a", "1"));
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(3);
+        while (System.nanoTime() < end) {
+            leader.submitCommand(put).get(5, TimeUnit.SECONDS); // коммит кворумом с быстрым фолловером
+            Thread.sleep(20);
+        }
+        assertEquals(RaftState.LEADER, leader.getState());
+        for (RaftNode node : nodes) {
+            assertEquals(term, node.getCurrentTerm(), "node " + node.getLocalId());
+        }
+        assertEquals(leader.getLocalId(), slow.getCurrentLeader());
+    }
+
+    @Test
+    void leaderWithoutQuorumStepsDown() throws Exception {
+        cluster.start(3, new RaftOptions().setPreVote(true).setCheckQuorum(true));
+        RaftNode leader = cluster.awaitLeader();
+        isolate(leader, true);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(3);
+        while (System.nanoTime() < deadline && leader.getState() == RaftState.LEADER) {
+            Thread.sleep(10);
+        }
+        assertEquals(RaftState.FOLLOWER, leader.getState());
+    }
+
+    @Test
+    void pausedLeaderIsReplacedAndFollowsAfterResume() throws Exception {
+        cluster.start(3, new RaftOptions().setPreVote(true));
+        RaftNode leader = cluster.awaitLeader();
+        long term = leader.getCurrentTerm();
+        new FaultScenario()
+                .at(Duration.ZERO, "pause", injector -> injector.pause(leader.getLocalId()))
+                .at(Duration.ofMillis(1500), "resume", FaultInjector::heal)
+                .play(faults)
+                .get(5, TimeUnit.SECONDS);
+
+        // сразу после heal старый лидер еще может считать себя лидером: ищем среди остальных
+        RaftNode newLeader = nodes.stream().filter(n -> n != leader && n.getState() == RaftState.LEADER).findFirst().orElseThrow();
+        assertTrue(newLeader.getCurrentTerm() > term);
+        // задержанные RPC доставлены, старый лидер узнает о новом терме и становится фолловером
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline && !newLeader.getLocalId().equals(leader.getCurrentLeader())) {
+            Thread.sleep(10);
+        }
+        assertEquals(RaftState.FOLLOWER, leader.getState());
+        assertEquals(newLeader.getLocalId(), leader.getCurrentLeader());
+    }
+
+    @Test
+    void followerReportsStalenessAndWaitsToCatchUp() throws Exception {
+        cluster.start(3, new RaftOptions());
+        RaftNode leader = cluster.awaitLeader();
+        RaftNode follower = nodes.stream().filter(n -> n != leader).findFirst().orElseThrow();
+        byte[] put = Json.mapper().writeValueAsBytes(new KeyValueCommand(KeyValueCommand.Type.PUT, "a", "1"));
+        leader.submitCommand(put).get(5, TimeUnit.SECONDS);
+        ReadFreshness fresh = follower.awaitFreshness(0, 200, Duration.ofSeconds(2)).get(5, TimeUnit.SECONDS);
+        assertTrue(fresh.within(0, 200), "lag " + fresh.getLag() + " staleness " + fresh.getStalenessMillis());
+
+        // отрезанный фолловер не знает о новых записях, но видит, что его состояние стареет
+        faults.isolate(follower.getLocalId(), List.of("node1", "node2", "node3"));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline && stalenessMillis(follower) < 400) {
+            Thread.sleep(10);
+        }
+        ReadFreshness stale = follower.awaitFreshness(-1, 200, Duration.ofMillis(50)).get(5, TimeUnit.SECONDS);
+        assertTrue(stale.getStalenessMillis() >= 400, "staleness " + stale.getStalenessMillis());
+        assertTrue(!stale.within(-1, 200));
+
+        faults.heal();
+        fresh = follower.awaitFreshness(0, 200, Duration.ofSeconds(2)).get(5, TimeUnit.SECONDS);
+        assertTrue(fresh.within(0, 200), "lag " + fresh.getLag() + " staleness " + fresh.getStalenessMillis());
+    }
+
+    @Test
+    void adaptiveTimeoutsFollowMeasuredRtt() throws Exception {
+        cluster.start(3, new RaftOptions().setAdaptiveTimeouts(true).setPreVote(true).setCheckQuorum(true)
+                .setMinElectionTimeout(Duration.ofMillis(60)));
+        RaftNode leader = cluster.awaitLeader();
+        // RTT по loopback — единицы миллисекунд, но первые замеры на холодной JVM дольше: ждем, пока оценка сойдется
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        for (RaftNode node : nodes) {
+            long timeout = (Long) node.getTimeouts().get("electionTimeoutMillis");
+            while (timeout >= 150 && System.nanoTime() < deadline) {
+                Thread.sleep(20);
+                timeout = (Long) node.getTimeouts().get("electionTimeoutMillis");
+            }
+            assertTrue(timeout >= 60 && timeout < 150, "node " + node.getLocalId() + " timeout " + timeout);
+        }
+
+        isolate(leader, true);
+        long started = System.nanoTime();
+        RaftNode newLeader = null;
+        while (newLeader == null && System.nanoTime() - started < TimeUnit.SECONDS.toNanos(5)) {
+            newLeader = nodes.stream().filter(n -> n != leader && n.getState() == RaftState.LEADER).findFirst().orElse(null);
+            Thread.sleep(5);
+        }
+        assertTrue(newLeader != null, "no new leader");
+        // с постоянными таймаутами таймер выборов не срабатывает раньше 400 мс
+        assertTrue(System.nanoTime() - started < TimeUnit.MILLISECONDS.toNanos(400));
+    }
+
+    @Test
+    void pendingProposalsFailFastWhenLeaderStepsDown() throws Exception {
+        cluster.start(3, new RaftOptions().setPreVote(true).setCheckQuorum(true));
+        RaftNode leader = cluster.awaitLeader();
+        isolate(leader, true);
+        byte[] put = Json.mapper().writeValueAsBytes(new KeyValueCommand(KeyValueCommand.Type.PUT, "a", "1"));
+        CompletableFuture<byte[]> result = leader.submitCommand(put);
+        long started = System.nanoTime();
+        ExecutionException error = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+        assertTrue(error.getCause() instanceof NotLeaderException, String.valueOf(error.getCause()));
+        // check-quorum снимает лидерство за election timeout, а не за таймаут предложения
+        assertTrue(System.nanoTime() - started < TimeUnit.SECONDS.toNanos(2));
+        assertEquals(0, leader.getPendingProposals());
+    }
+
+    @Test
+    void rejectsProposalsOverInFlightLimit() throws Exception {
+        cluster.start(3, new RaftOptions().setMaxPendingProposals(2));
+        RaftNode leader = cluster.awaitLeader();
+        isolate(leader, true); // без check-quorum лидер остается лидером, но ничего не коммитит
+        byte[] put = Json.mapper().writeValueAsBytes(new KeyValueCommand(KeyValueCommand.Type.PUT, "a", "1"));
+        CompletableFuture<byte[]> first = leader.submitCommand(put);
+        CompletableFuture<byte[]> second = leader.submitCommand(put);
+        assertThrows(OverloadedException.class, () -> leader.submitCommand(put));
+
+        isolate(leader, false);
+        first.get(5, TimeUnit.SECONDS);
+        second.get(5, TimeUnit.SECONDS);
+        leader.submitCommand(put).get(5, TimeUnit.SECONDS); // место освободилось
+    }
+
+    @Test
+    void pausedLeaderFreezesUntilResumed() throws Exception {
+        cluster.start(3, new RaftOptions().setPreVote(true).setCheckQuorum(true));
+        nodes.forEach(node -> faults.attach(node.getLocalId(), node::pause, node::resume));
+        RaftNode leader = cluster.awaitLeader();
+        long term = leader.getCurrentTerm();
+        faults.pause(leader.getLocalId());
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (System.nanoTime() < deadline && nodes.stream().noneMatch(n -> n != leader && n.getState() == RaftState.LEADER)) {
+            Thread.sleep(10);
+        }
+        // с check-quorum работающий лидер без кворума за два election timeout (до 800 мс) ушел бы в FOLLOWER;
+        // замороженный этого сделать не может: проверяем его состояние на всем этом отрезке
+        long frozenUntil = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(2 * 800);
+        while (System.nanoTime() < frozenUntil) {
+            assertEquals(RaftState.LEADER, leader.getState());
+            assertEquals(term, leader.getCurrentTerm());
+            Thread.sleep(10);
+        }
+
+        faults.heal();
+        deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        // после паузы лидер уступает: по сообщению нового лидера или по check-quorum, а затем узнает новый терм
+        while (System.nanoTime() < deadline && (leader.getState() == RaftState.LEADER || leader.getCurrentTerm() == term)) {
+            Thread.sleep(10);
+        }
+        assertEquals(RaftState.FOLLOWER, leader.getState());
+        assertTrue(leader.getCurrentTerm() > term);
+    }
+
+    @Test
+    void transfersLeadershipToChosenFollower() throws Exception {
+        cluster.start(3, new RaftOptions().setPreVote(true).setCheckQuorum(true));
+        RaftNode leader = cluster.awaitLeader();
+        RaftNode target = nodes.stream().filter(n -> n != leader).findFirst().orElseThrow();
+        byte[] put = Json.mapper().writeValueAsBytes(new KeyValueCommand(KeyValueCommand.Type.PUT, "a", "1"));
+        leader.submitCommand(put).get(5, TimeUnit.SECONDS);
+
+        assertEquals(target.getLocalId(), leader.transferLeadership(target.getLocalId()).get(5, TimeUnit.SECONDS));
+        assertEquals(target, cluster.awaitLeader());
+        assertEquals(RaftState.FOLLOWER, leader.getState());
+        target.submitCommand(put).get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void changesMembershipThroughLog() throws Exception {
+        cluster.start(1, new RaftOptions());
+        RaftNode leader = cluster.awaitLeader(); // единственная нода избирается сама
+        byte[] put = Json.mapper().writeValueAsBytes(new KeyValueCommand(KeyValueCommand.Type.PUT, "a", "1"));
+        leader.submitCommand(put).get(5, TimeUnit.SECONDS);
+
+        // новая нода стартует learner'ом, догоняет лог и затем становится голосующей
+        PeerEndpoint joining = new PeerEndpoint("node2", "127.0.0.1", 9002, true);
+        KeyValueStateMachine machine = new KeyValueStateMachine();
+        RaftNode node2 = cluster.add(new RaftNode(new ClusterConfig("node2", joining, List.of(joining)),
+                network.transportFor("node2"), machine), machine);
+        network.register(node2);
+        node2.start();
+        leader.changeMember(joining).get(5, TimeUnit.SECONDS);
+        leader.changeMember(new PeerEndpoint("node2", "127.0.0.1", 9002, false)).get(5, TimeUnit.SECONDS);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline && node2.getLastApplied() < leader.getCommitIndex()) {
+            Thread.sleep(10);
+        }
+        assertEquals(leader.getCommitIndex(), node2.getLastApplied());
+        assertEquals(2, node2.getMembers().size());
+        assertTrue(!node2.isLearner());
+
+        // лидер исключает себя: после коммита уступает, выборы выигрывает оставшаяся нода
+        leader.removeMember(leader.getLocalId()).get(5, TimeUnit.SECONDS);
+        deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline && node2.getState() != RaftState.LEADER) {
+            Thread.sleep(10);
+        }
+        assertEquals(RaftState.LEADER, node2.getState());
+        assertEquals(1, node2.getMembers().size());
+        node2.submitCommand(put).get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void newLeaderChangesMembershipOnlyAfterCommittingInItsTerm() throws Exception {
+        RaftNode node = standaloneNode();
+        byte[] put = Json.mapper().writeValueAsBytes(new KeyValueCommand(KeyValueCommand.Type.PUT, "a", "1"));
+        node.handleAppendEntries(new AppendEntriesRequest(1, "node2", 0, 0, List.of(new LogEntry(1, 1, put)), 1));
+        node.handleAppendEntries(new AppendEntriesRequest(2, "node2", 1, 1, List.of(), 1));
+        synchronized (node) {
+            node.becomeLeader(); // лидерство сменилось, пустая запись терма 2 еще не закоммичена
+        }
+        PeerEndpoint joining = new PeerEndpoint("node4", "127.0.0.1", 9004, true);
+        assertThrows(IllegalStateException.class, () -> node.changeMember(joining));
+
+        synchronized (node) {
+            node.recordReplicationSuccess("node2", 2);
+        }
+        assertEquals(2, node.getCommitIndex());
+        node.changeMember(joining);
+        assertEquals(4, node.getMembers().size());
+    }
+
+    @Test
+    void transferFailsWhenAnotherNodeWins() throws Exception {
+        RaftNode node = standaloneNode();
+        node.handleAppendEntries(new AppendEntriesRequest(1, "node2", 0, 0, List.of(), 0));
+        synchronized (node) {
+            node.becomeLeader();
+        }
+        CompletableFuture<String> transfer = node.transferLeadership("node2");
+
+        // лидер уходит из-за чужих выборов: кто выиграет, еще неизвестно
+        node.handleRequestVote(new RequestVoteRequest(2, "node3", 1, 1));
+        assertEquals(RaftState.FOLLOWER, node.getState());
+        assertFalse(transfer.isDone());
+
+        node.handleAppendEntries(new AppendEntriesRequest(2, "node3", 1, 1, List.of(), 0));
+        ExecutionException error = assertThrows(ExecutionException.class, () -> transfer.get(5, TimeUnit.SECONDS));
+        assertEquals("node3", ((NotLeaderException) error.getCause()).getLeaderHint());
+    }
+
+    @Test
+    void forwardedBatchReportsOutcomePerCommand() throws Exception {
+        RaftNode node = standaloneNode();
+        node.handleAppendEntries(new AppendEntriesRequest(1, "node2", 0, 0, List.of(), 0));
+        synchronized (node) {
+            node.becomeLeader(); // пустая запись — индекс 1
+        }
+        byte[] first = Json.mapper().writeValueAsBytes(new KeyValueCommand(KeyValueCommand.Type.PUT, "a", "1"));
+        byte[] second = Json.mapper().writeValueAsBytes(new KeyValueCommand(KeyValueCommand.Type.PUT, "b", "2"));
+        CompletableFuture<ForwardResponse> response = node.handleForward(new ForwardRequest("node3", List.of(first, second)));
+        synchronized (node) {
+            node.recordReplicationSuccess("node2", 2); // закоммичена только первая команда
+        }
+        node.handleAppendEntries(new AppendEntriesRequest(2, "node3", 0, 0, List.of(), 0)); // лидер сменился
+
+        ForwardResponse forwarded = response.get(5, TimeUnit.SECONDS);
+        assertTrue(forwarded.isSuccess());
+        assertTrue(new String(forwarded.getResults().get(0)).contains("PUT applied"));
+        assertEquals(null, forwarded.errorAt(0));
+        assertEquals(ForwardResponse.NOT_LEADER, forwarded.errorAt(1));
+        assertEquals("node3", forwarded.getLeaderHint());
+    }
+
+    // Все сообщения между нодой и остальными теряются в обе стороны
+    private void isolate(RaftNode node, boolean isolated) {
+        LinkProfile profile = isolated ? new LinkProfile(Duration.ofMillis(1), 0, 1.0) : new LinkProfile(Duration.ofMillis(1), 0, 0.0);
+        for (RaftNode other : nodes) {
+            if (other != node) {
+                network.setLinkProfile(node.getLocalId(), other.getLocalId(), profile);
+                network.setLinkProfile(other.getLocalId(), node.getLocalId(), profile);
+            }
+        }
+    }
+
+    // node1 из кластера трех нод, пиры которой не зарегистрированы в сети: RPC от них и ответы им подставляет тест
+    private RaftNode standaloneNode() {
+        List<PeerEndpoint> endpoints = TestCluster.endpoints(3);
+        KeyValueStateMachine machine = new KeyValueStateMachine();
+        return cluster.add(new RaftNode(new ClusterConfig("node1", endpoints.get(0), endpoints),
+                network.transportFor("node1"), machine), machine);
+    }
+
+    // Сколько нода живет без вестей от лидера; UNKNOWN — еще не слышала его
+    private static long stalenessMillis(RaftNode node) throws Exception {
+        return node.awaitFreshness(-1, -1, Duration.ZERO).get(5, TimeUnit.SECONDS).getStalenessMillis();
+    }
+}
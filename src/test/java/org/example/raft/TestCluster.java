@@ -0,0 +1,126 @@
+package org.example.raft;
+
+import org.example.kv.KeyValueStateMachine;
+import org.example.raft.cluster.ClusterConfig;
+import org.example.raft.cluster.PeerEndpoint;
+import org.example.raft.transport.FaultInjector;
+import org.example.raft.transport.LinkProfile;
+import org.example.raft.transport.LoopbackNetwork;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Кластер нод в одной JVM для тестов: LoopbackNetwork с задержкой 1 мс, транспорт каждой ноды обернут
+ * FaultInjector'ом. Ноды и сеть закрываются вместе с кластером.
+ */
+public final class TestCluster implements AutoCloseable {
+    private final LoopbackNetwork network = new LoopbackNetwork(
+            new LinkProfile(Duration.ofMillis(1), 0, 0.0), Duration.ofSeconds(1));
+    private final FaultInjector faults;
+    private final List<RaftNode> nodes = new ArrayList<>();
+    private final Map<RaftNode, StateMachine> machines = new HashMap<>();
+
+    public TestCluster() {
+        this(Duration.ofSeconds(1));
+    }
+
+    // faultTimeout — через сколько задержанный или потерянный по сценарию запрос завершается ошибкой
+    public TestCluster(Duration faultTimeout) {
+        this.faults = new FaultInjector(faultTimeout);
+    }
+
+    // node1..nodeN на портах 9001..
+    public static List<PeerEndpoint> endpoints(int size) {
+        List<PeerEndpoint> endpoints = new ArrayList<>(size);
+        for (int i = 1; i <= size; i++) {
+            endpoints.add(new PeerEndpoint("node" + i, "127.0.0.1", 9000 + i));
+        }
+        return endpoints;
+    }
+
+    public List<RaftNode> start(int size, RaftOptions options) {
+        return start(endpoints(size), options, KeyValueStateMachine::new);
+    }
+
+    public List<RaftNode> start(int size, RaftOptions options, Supplier<? extends StateMachine> machine) {
+        return start(endpoints(size), options, machine);
+    }
+
+    public List<RaftNode> start(List<PeerEndpoint> endpoints, RaftOptions options) {
+        return start(endpoints, options, KeyValueStateMachine::new);
+    }
+
+    // Ноды запускаются, когда все зарегистрированы в сети: первые RPC не теряются
+    public List<RaftNode> start(List<PeerEndpoint> endpoints, RaftOptions options, Supplier<? extends StateMachine> machine) {
+        List<RaftNode> started = new ArrayList<>(endpoints.size());
+        for (PeerEndpoint endpoint : endpoints) {
+            StateMachine stateMachine = machine.get();
+            RaftNode node = new RaftNode(new ClusterConfig(endpoint.getId(), endpoint, endpoints),
+                    faults.wrap(endpoint.getId(), network.transportFor(endpoint.getId())), stateMachine, options);
+            network.register(node);
+            add(node, stateMachine);
+            started.add(node);
+        }
+        started.forEach(RaftNode::start);
+        return started;
+    }
+
+    // Нода, собранная тестом: закрывается вместе с кластером; регистрирует и запускает ее сам тест
+    public RaftNode add(RaftNode node, StateMachine machine) {
+        nodes.add(node);
+        machines.put(node, machine);
+        return node;
+    }
+
+    public RaftNode awaitLeader() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (System.nanoTime() < deadline) {
+            for (RaftNode node : nodes) {
+                if (node.getState() == RaftState.LEADER) {
+                    return node;
+                }
+            }
+            Thread.sleep(10);
+        }
+        return fail("no leader elected");
+    }
+
+    // Все сообщения между нодой и остальными теряются в обе стороны, пока не вызван faults.heal()
+    public void isolate(RaftNode node) {
+        List<String> ids = new ArrayList<>(nodes.size());
+        nodes.forEach(n -> ids.add(n.getLocalId()));
+        faults.isolate(node.getLocalId(), ids);
+    }
+
+    public List<RaftNode> getNodes() {
+        return Collections.unmodifiableList(nodes);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <M extends StateMachine> M machineOf(RaftNode node) {
+        return (M) machines.get(node);
+    }
+
+    public LoopbackNetwork getNetwork() {
+        return network;
+    }
+
+    public FaultInjector getFaults() {
+        return faults;
+    }
+
+    @Override
+    public void close() {
+        nodes.forEach(RaftNode::close);
+        network.close();
+    }
+}
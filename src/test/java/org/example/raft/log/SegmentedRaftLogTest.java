@@ -0,0 +1,51 @@
+package org.example.raft.log;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class SegmentedRaftLogTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void reopensLogAcrossSegments() throws Exception {
+        try (SegmentedRaftLog log = new SegmentedRaftLog(directory, 4, 1 << 20)) {
+            for (int i = 1; i <= 10; i++) {
+                log.append(entry(i <= 6 ? 1 : 2, i));
+            }
+            log.truncateFrom(8);
+            log.append(entry(3, 8));
+            log.saveTermAndVote(3, "n2");
+            log.saveCommitIndex(7);
+        }
+        try (SegmentedRaftLog log = new SegmentedRaftLog(directory, 4, 1 << 20)) {
+            assertEquals(8, log.lastIndex());
+            assertEquals(2, log.segmentCount());
+            assertEquals(1, log.termAt(6));
+            assertEquals(3, log.termAt(8));
+            assertEquals("cmd-5", new String(log.get(5).getCommand(), StandardCharsets.UTF_8));
+            HardState state = log.loadHardState();
+            assertEquals(3, state.getTerm());
+            assertEquals("n2", state.getVotedFor());
+            assertEquals(7, state.getCommitIndex());
+
+            List<LogEntry> replayed = new ArrayList<>();
+            log.replay(2, 7, replayed::addAll);
+            assertEquals(6, replayed.size());
+            assertEquals(7, replayed.get(5).getIndex());
+            assertEquals("cmd-7", new String(replayed.get(5).getCommand(), StandardCharsets.UTF_8));
+        }
+    }
+
+    private static LogEntry entry(long term, int index) {
+        return new LogEntry(term, index, ("cmd-" + index).getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,88 @@
+package org.example.raft.protocol;
+
+import org.example.raft.log.LogEntry;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DeflaterOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class EntryBatchCodecTest {
+
+    @Test
+    void roundTripsEntries() {
+        List<LogEntry> entries = List.of(
+                new LogEntry(1, 1, new byte[0], false),
+                new LogEntry(2, 2, "cmd".getBytes(StandardCharsets.UTF_8), false),
+                new LogEntry(2, 3, "config".getBytes(StandardCharsets.UTF_8), true));
+        List<LogEntry> decoded = EntryBatchCodec.decompress(EntryBatchCodec.compress(entries));
+        assertEquals(3, decoded.size());
+        for (int i = 0; i < entries.size(); i++) {
+            assertEquals(entries.get(i).getTerm(), decoded.get(i).getTerm());
+            assertEquals(entries.get(i).getIndex(), decoded.get(i).getIndex());
+            assertEquals(entries.get(i).isConfiguration(), decoded.get(i).isConfiguration());
+            assertArrayEquals(entries.get(i).getCommand(), decoded.get(i).getCommand());
+        }
+    }
+
+    @Test
+    void rejectsCountThatDoesNotFitInBatch() throws IOException {
+        assertCorrupted(deflate(output -> output.writeInt(Integer.MAX_VALUE)));
+        assertCorrupted(deflate(output -> output.writeInt(-1)));
+    }
+
+    @Test
+    void rejectsCommandLengthOutsideBatch() throws IOException {
+        assertCorrupted(deflate(output -> entryHeader(output, -5)));
+        assertCorrupted(deflate(output -> {
+            entryHeader(output, Integer.MAX_VALUE);
+            output.write(new byte[16]);
+        }));
+    }
+
+    @Test
+    void rejectsTruncatedAndTrailingData() throws IOException {
+        byte[] compressed = EntryBatchCodec.compress(List.of(new LogEntry(1, 1, new byte[100], false)));
+        assertCorrupted(Arrays.copyOf(compressed, compressed.length / 2));
+        assertCorrupted(deflate(output -> {
+            entryHeader(output, 0);
+            output.writeLong(42);
+        }));
+    }
+
+    // Одна запись с заданной длиной команды; сама команда не пишется
+    private static void entryHeader(DataOutputStream output, int length) throws IOException {
+        output.writeInt(1);
+        output.writeLong(1);
+        output.writeInt(1);
+        output.writeBoolean(false);
+        output.writeInt(length);
+    }
+
+    private static void assertCorrupted(byte[] compressed) {
+        UncheckedIOException error = assertThrows(UncheckedIOException.class, () -> EntryBatchCodec.decompress(compressed));
+        assertTrue(error.getMessage().contains("Corrupted"), error.getMessage());
+    }
+
+    private static byte[] deflate(Writer writer) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (DataOutputStream output = new DataOutputStream(new DeflaterOutputStream(buffer))) {
+            writer.write(output);
+        }
+        return buffer.toByteArray();
+    }
+
+    private interface Writer {
+        void write(DataOutputStream output) throws IOException;
+    }
+}
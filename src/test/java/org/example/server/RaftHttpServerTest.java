@@ -0,0 +1,106 @@
+package org.example.server;
+
+import org.example.kv.KeyValueStateMachine;
+import org.example.raft.RaftNode;
+import org.example.raft.RaftOptions;
+import org.example.raft.TestCluster;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RaftHttpServerTest {
+    private final TestCluster cluster = new TestCluster();
+    private final List<RaftHttpServer> servers = new ArrayList<>();
+    private final HttpClient http = HttpClient.newHttpClient();
+
+    @AfterEach
+    void tearDown() throws Exception {
+        for (RaftHttpServer server : servers) {
+            server.close();
+        }
+        cluster.close();
+    }
+
+    @Test
+    void staleLeaderAnswersUnavailableInsteadOfRedirectingToItself() throws Exception {
+        cluster.start(3, new RaftOptions());
+        RaftNode leader = cluster.awaitLeader();
+        URI base = start(leader, new HttpServerOptions().setReadMaxStalenessMillis(200));
+        assertEquals(200, get(base, "/kv/get?key=a").statusCode());
+
+        // без check-quorum отрезанный лидер остается лидером, но его состояние устаревает
+        cluster.isolate(leader);
+        HttpResponse<String> response = get(base, "/kv/get?key=a");
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (System.nanoTime() < deadline && response.statusCode() == 200) {
+            Thread.sleep(20);
+            response = get(base, "/kv/get?key=a");
+        }
+        assertEquals(503, response.statusCode());
+        assertTrue(response.headers().firstValue("Retry-After").isPresent());
+        assertTrue(response.body().contains("retryAfterMillis"), response.body());
+    }
+
+    @Test
+    void uncommittedWriteTimesOutWith504() throws Exception {
+        cluster.start(3, new RaftOptions());
+        RaftNode leader = cluster.awaitLeader();
+        URI base = start(leader, new HttpServerOptions());
+        cluster.isolate(leader);
+
+        // сервер ждет дольше дедлайна предложения: таймаут приходит от ноды как 504, а не как ошибка сервера
+        HttpResponse<String> put = http.send(HttpRequest.newBuilder(base.resolve("/kv/put"))
+                .timeout(Duration.ofSeconds(10))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString("{\"key\":\"a\",\"value\":\"1\"}"))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        assertEquals(504, put.statusCode(), put.body());
+    }
+
+    @Test
+    void servesH2cAndRejectsOversizedBody() throws Exception {
+        cluster.start(3, new RaftOptions());
+        RaftNode leader = cluster.awaitLeader();
+        URI base = start(leader, new HttpServerOptions().setH2c(true).setMaxRequestBodyBytes(1024));
+        HttpClient h2 = HttpClient.newBuilder().version(HttpClient.Version.HTTP_2).build();
+
+        // первый запрос поднимает соединение до h2c через Upgrade
+        HttpResponse<String> status = h2.send(HttpRequest.newBuilder(base.resolve("/raft/status")).GET().build(),
+                HttpResponse.BodyHandlers.ofString());
+        assertEquals(200, status.statusCode());
+        assertEquals(HttpClient.Version.HTTP_2, status.version());
+
+        String oversized = "{\"type\":\"PUT\",\"key\":\"a\",\"value\":\"" + "v".repeat(2048) + "\"}";
+        HttpResponse<String> put = h2.send(HttpRequest.newBuilder(base.resolve("/kv/put"))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(oversized))
+                .build(), HttpResponse.BodyHandlers.ofString());
+        assertEquals(413, put.statusCode());
+        assertEquals(HttpClient.Version.HTTP_2, put.version());
+        assertEquals(0, leader.getPendingProposals());
+    }
+
+    private URI start(RaftNode node, HttpServerOptions options) throws Exception {
+        KeyValueStateMachine machine = cluster.machineOf(node);
+        RaftHttpServer server = new RaftHttpServer(0, node, machine, options);
+        server.start();
+        servers.add(server);
+        return URI.create("http://127.0.0.1:" + server.getPort());
+    }
+
+    private HttpResponse<String> get(URI base, String path) throws Exception {
+        return http.send(HttpRequest.newBuilder(base.resolve(path)).timeout(Duration.ofSeconds(5)).GET().build(),
+                HttpResponse.BodyHandlers.ofString());
+    }
+}